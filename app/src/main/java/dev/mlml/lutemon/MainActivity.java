@@ -11,6 +11,7 @@ import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
 import dev.mlml.lutemon.databinding.ActivityMainBinding;
+import dev.mlml.lutemon.game.lutemon.PersistenceManager;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -19,6 +20,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        PersistenceManager.getInstance().initialize(this);
 
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
@@ -35,4 +37,11 @@ public class MainActivity extends AppCompatActivity {
         NavigationUI.setupWithNavController(binding.navView, navController);
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Nothing may stay in the write-behind queue once the app leaves the foreground
+        PersistenceManager.getInstance().flushNow();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package dev.mlml.lutemon.game.lutemon;
+
+/**
+ * Caller-owned result of Lutemon.attack. One holder is reused for every attack of a battle
+ * or simulation, so resolving an attack allocates nothing. Not thread-safe.
+ */
+public final class AttackOutcome {
+    private int damage;
+    private boolean critical;
+    private boolean typeAdvantage;
+
+    void set(int damage, boolean critical, boolean typeAdvantage) {
+        this.damage = damage;
+        this.critical = critical;
+        this.typeAdvantage = typeAdvantage;
+    }
+
+    /**
+     * @return Damage rolled by the last attack, before the target's defense
+     */
+    public int getDamage() {
+        return damage;
+    }
+
+    public boolean isCritical() {
+        return critical;
+    }
+
+    public boolean hasTypeAdvantage() {
+        return typeAdvantage;
+    }
+}
@@ -0,0 +1,307 @@
+package dev.mlml.lutemon.game.lutemon;
+
+/**
+ * Rules and state of one battle between a player and an AI Lutemon, in plain Java.
+ * <p>
+ * Each battle gets its own engine and random stream, so any number of battles can run
+ * side by side, on any thread. The engine only changes the two Lutemons' health, what
+ * happens is reported to a Listener as BattleActions and a final Outcome. Applying
+ * rewards, updating stats and saving is up to the caller, see BattleManager. Not
+ * thread-safe, drive each engine from one thread at a time.
+ */
+public final class BattleEngine {
+    static final int MAX_TURNS = 20; // Max battle turns before a draw
+    private static final int AI_DECISION_ATTACK_WEIGHT = 70; // 70% chance to attack
+    private static final int AI_DECISION_DEFEND_WEIGHT = 30; // 30% chance to defend
+
+    /**
+     * How a battle ended, from the player's side
+     */
+    public enum Outcome {
+        VICTORY,
+        DEFEAT,
+        DRAW
+    }
+
+    /**
+     * Receives what happens in a battle, on the thread driving the engine
+     */
+    public interface Listener {
+        /**
+         * @param action Start message, attack, defend or end message
+         */
+        void onAction(BattleManager.BattleAction action);
+
+        /**
+         * @param outcome How the battle ended
+         * @param experienceReward Experience the player earned, 0 unless victorious
+         */
+        void onBattleEnded(Outcome outcome, int experienceReward);
+    }
+
+    private final Lutemon playerLutemon;
+    private final Lutemon aiLutemon;
+    private final RandomSource random;
+    private final Listener listener;
+    // Reused for every attack
+    private final AttackOutcome attackOutcome = new AttackOutcome();
+
+    private boolean active = true;
+    private Outcome outcome;
+    private int turnCount;
+    private boolean playerTurn;
+    private int playerDefenseBonus;
+    private int aiDefenseBonus;
+
+    /**
+     * Start a battle, both Lutemons are healed and the faster one goes first
+     * @param playerLutemon The player's Lutemon
+     * @param aiLutemon The AI's Lutemon
+     * @param random Random stream of the battle, a stream with the same seed replays it
+     * @param listener Listener for the battle's actions, null if nobody is interested
+     */
+    public BattleEngine(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random, Listener listener) {
+        this(playerLutemon, aiLutemon, random, listener, 0, true, 0, 0);
+
+        playerLutemon.heal();
+        aiLutemon.heal();
+
+        playerTurn = playerLutemon.getSpeed() >= aiLutemon.getSpeed();
+        if (playerLutemon.getSpeed() == aiLutemon.getSpeed()) {
+            playerTurn = random.nextBoolean();
+        }
+
+        if (listener != null) {
+            String startMessage = "Battle started between " + playerLutemon.getName() +
+                    " and " + aiLutemon.getName() + "!\n" +
+                    (playerTurn ? playerLutemon.getName() : aiLutemon.getName()) +
+                    " goes first!";
+            listener.onAction(new BattleManager.BattleAction(BattleManager.BattleActionType.INFO, startMessage));
+        }
+    }
+
+    private BattleEngine(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random, Listener listener,
+                         int turnCount, boolean playerTurn, int playerDefenseBonus, int aiDefenseBonus) {
+        this.playerLutemon = playerLutemon;
+        this.aiLutemon = aiLutemon;
+        this.random = random;
+        this.listener = listener;
+        this.turnCount = turnCount;
+        this.playerTurn = playerTurn;
+        this.playerDefenseBonus = playerDefenseBonus;
+        this.aiDefenseBonus = aiDefenseBonus;
+    }
+
+    /**
+     * Continue a saved battle where it left off, the Lutemons keep their current health
+     * @return The engine of the resumed battle
+     */
+    static BattleEngine resume(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random, Listener listener,
+                               int turnCount, boolean playerTurn, int playerDefenseBonus, int aiDefenseBonus) {
+        return new BattleEngine(playerLutemon, aiLutemon, random, listener,
+                turnCount, playerTurn, playerDefenseBonus, aiDefenseBonus);
+    }
+
+    /**
+     * Attack the AI's Lutemon
+     * @return false if it is not the player's turn or the battle is over
+     */
+    public boolean playerAttack() {
+        if (!active || !playerTurn) {
+            return false;
+        }
+        if (attack(playerLutemon, aiLutemon, aiDefenseBonus, BattleManager.BattleActionType.PLAYER_ATTACK)) {
+            aiDefenseBonus = 0;
+            nextTurn();
+        }
+        return true;
+    }
+
+    /**
+     * Defend, halving the player's defense again on top for the AI's next attack
+     * @return false if it is not the player's turn or the battle is over
+     */
+    public boolean playerDefend() {
+        if (!active || !playerTurn) {
+            return false;
+        }
+        playerDefenseBonus = defend(playerLutemon, BattleManager.BattleActionType.PLAYER_DEFEND);
+        nextTurn();
+        return true;
+    }
+
+    /**
+     * Let the AI attack or defend
+     * @return false if it is not the AI's turn or the battle is over
+     */
+    public boolean aiTurn() {
+        if (!active || playerTurn) {
+            return false;
+        }
+        if (shouldAttack()) {
+            if (!attack(aiLutemon, playerLutemon, playerDefenseBonus, BattleManager.BattleActionType.AI_ATTACK)) {
+                return true;
+            }
+            playerDefenseBonus = 0;
+        } else {
+            aiDefenseBonus = defend(aiLutemon, BattleManager.BattleActionType.AI_DEFEND);
+        }
+        nextTurn();
+        return true;
+    }
+
+    /**
+     * Play the current turn with the AI's strategy, whichever side is on turn
+     */
+    public void autoTurn() {
+        if (playerTurn && active) {
+            if (shouldAttack()) {
+                playerAttack();
+            } else {
+                playerDefend();
+            }
+        } else {
+            aiTurn();
+        }
+    }
+
+    /**
+     * Play both sides with the AI's strategy until the battle ends
+     * @return How the battle ended
+     */
+    public Outcome runToEnd() {
+        while (active) {
+            autoTurn();
+        }
+        return outcome;
+    }
+
+    /**
+     * End the battle without an outcome, e.g. when the player leaves it
+     */
+    public void abandon() {
+        active = false;
+    }
+
+    /**
+     * @return true to attack, false to defend
+     */
+    private boolean shouldAttack() {
+        return random.nextInt(100) < AI_DECISION_ATTACK_WEIGHT;
+    }
+
+    /**
+     * @return true if the target survived
+     */
+    private boolean attack(Lutemon attacker, Lutemon target, int targetDefenseBonus,
+                           BattleManager.BattleActionType type) {
+        attacker.attack(target, random, attackOutcome);
+        int damage = Math.max(1, attackOutcome.getDamage() - targetDefenseBonus);
+        boolean isAlive = target.takeDamage(damage);
+
+        if (listener != null) {
+            listener.onAction(BattleManager.BattleAction.attack(type, attacker, target, damage, attackOutcome));
+        }
+        if (!isAlive) {
+            boolean victory = attacker == playerLutemon;
+            if (listener != null) {
+                listener.onAction(new BattleManager.BattleAction(
+                        victory ? BattleManager.BattleActionType.VICTORY : BattleManager.BattleActionType.DEFEAT,
+                        attacker.getName() + " defeated " + target.getName() + "!"));
+            }
+            end(victory ? Outcome.VICTORY : Outcome.DEFEAT);
+        }
+        return isAlive;
+    }
+
+    /**
+     * @return The defense bonus gained
+     */
+    private int defend(Lutemon defender, BattleManager.BattleActionType type) {
+        int bonus = defender.getDefense() / 2;
+        if (listener != null) {
+            listener.onAction(BattleManager.BattleAction.defend(type, defender, bonus));
+        }
+        return bonus;
+    }
+
+    private void nextTurn() {
+        turnCount++;
+        playerTurn = !playerTurn;
+
+        if (turnCount >= MAX_TURNS) {
+            if (listener != null) {
+                listener.onAction(new BattleManager.BattleAction(BattleManager.BattleActionType.DRAW,
+                        "Battle ended in a draw after " + MAX_TURNS + " turns!"));
+            }
+            end(Outcome.DRAW);
+        }
+    }
+
+    private void end(Outcome outcome) {
+        active = false;
+        this.outcome = outcome;
+        int experienceReward = outcome == Outcome.VICTORY ? calculateExperienceReward(aiLutemon) : 0;
+        if (listener != null) {
+            listener.onBattleEnded(outcome, experienceReward);
+        }
+    }
+
+    /**
+     * Calculate experience reward from defeating an opponent
+     * @param opponent The defeated Lutemon
+     * @return Experience points
+     */
+    private int calculateExperienceReward(Lutemon opponent) {
+        int baseReward = opponent.getLevel() * 20;
+
+        int statBonus = (opponent.getAttack() + opponent.getDefense() +
+                opponent.getMaxHealth() / 10 + opponent.getSpeed()) / 2;
+
+        int randomFactor = random.nextInt(baseReward / 5) - (baseReward / 10);
+
+        return Math.max(10, baseReward + statBonus + randomFactor);
+    }
+
+    public Lutemon getPlayerLutemon() {
+        return playerLutemon;
+    }
+
+    public Lutemon getAiLutemon() {
+        return aiLutemon;
+    }
+
+    /**
+     * @return Seed of the battle's random stream
+     */
+    public long getSeed() {
+        return random.getSeed();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return How the battle ended, null while it runs or if it was abandoned
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public int getTurnCount() {
+        return turnCount;
+    }
+
+    public boolean isPlayerTurn() {
+        return playerTurn;
+    }
+
+    public int getPlayerDefenseBonus() {
+        return playerDefenseBonus;
+    }
+
+    public int getAiDefenseBonus() {
+        return aiDefenseBonus;
+    }
+}
@@ -1,37 +1,48 @@
 package dev.mlml.lutemon.game.lutemon;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
 public class BattleManager {
     private static final String TAG = "BattleManager";
-    private static final String PREFS_NAME = "battle_prefs";
     private static final String KEY_CURRENT_BATTLE = "current_battle";
     
-    private static final int MAX_TURNS = 20; // Max battle turns before a draw
-    private static final int AI_DECISION_ATTACK_WEIGHT = 70; // 70% chance to attack
-    private static final int AI_DECISION_DEFEND_WEIGHT = 30; // 30% chance to defend
-    
     private static BattleManager instance = null;
-    private final Random random = new Random();
-    
-    private Lutemon playerLutemon;
-    private Lutemon aiLutemon;
-    private boolean isBattleActive = false;
-    private int turnCount = 0;
-    private boolean isPlayerTurn = true;
-    private List<BattleAction> battleLog = new ArrayList<>();
+    // Opponent generation and the seeds of new battles
+    private final RandomSource sessionRandom = new RandomSource();
+    // Current or last battle, null before the first one
+    private BattleEngine engine;
+    // Synchronized since saves run on the persistence thread
+    private final List<BattleAction> battleLog = Collections.synchronizedList(new ArrayList<>());
+    // Attack or defend action of the turn being played
+    private BattleAction turnAction;
+    // Set when the turn being played ended the battle
+    private BattleResult endResult;
     
-    private int playerDefenseBonus = 0;
-    private int aiDefenseBonus = 0;
+    private final BattleEngine.Listener engineListener = new BattleEngine.Listener() {
+        @Override
+        public void onAction(BattleAction action) {
+            battleLog.add(action);
+            if (action.isTurn()) {
+                turnAction = action;
+            }
+        }
+        
+        @Override
+        public void onBattleEnded(BattleEngine.Outcome outcome, int experienceReward) {
+            endResult = endBattle(outcome, experienceReward);
+        }
+    };
     
     private BattleManager() {
     }
@@ -50,37 +61,35 @@ public class BattleManager {
      * @return True if battle started successfully
      */
     public boolean startBattle(Lutemon playerLutemon, Lutemon aiLutemon) {
+        return startBattle(playerLutemon, aiLutemon, sessionRandom.split());
+    }
+    
+    /**
+     * Start a new battle whose turns, AI decisions and rewards are drawn from a given stream
+     * @param playerLutemon The player's Lutemon
+     * @param aiLutemon The AI's Lutemon
+     * @param random Random stream of the battle, a stream with the same seed replays it
+     * @return True if battle started successfully
+     */
+    public boolean startBattle(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random) {
         if (playerLutemon == null || aiLutemon == null) {
             return false;
         }
         
-        this.playerLutemon = playerLutemon;
-        this.aiLutemon = aiLutemon;
-        
-        playerLutemon.heal();
-        aiLutemon.heal();
-        
-        isBattleActive = true;
-        turnCount = 0;
         battleLog.clear();
-        
-        isPlayerTurn = playerLutemon.getSpeed() >= aiLutemon.getSpeed();
-        if (playerLutemon.getSpeed() == aiLutemon.getSpeed()) {
-            isPlayerTurn = random.nextBoolean();
-        }
-        
-        playerDefenseBonus = 0;
-        aiDefenseBonus = 0;
-        
-        String startMessage = "Battle started between " + playerLutemon.getName() + 
-                " and " + aiLutemon.getName() + "!\n" +
-                (isPlayerTurn ? playerLutemon.getName() : aiLutemon.getName()) + 
-                " goes first!";
-        battleLog.add(new BattleAction(BattleActionType.INFO, startMessage));
+        engine = new BattleEngine(playerLutemon, aiLutemon, random, engineListener);
+        Log.d(TAG, "Battle seed: " + random.getSeed());
         
         return true;
     }
     
+    /**
+     * @return Seed of the current battle's random stream, 0 before the first battle
+     */
+    public long getBattleSeed() {
+        return engine != null ? engine.getSeed() : 0;
+    }
+    
     /**
      * Generate a random AI opponent
      * @param context Application context
@@ -88,35 +97,44 @@ public class BattleManager {
      * @return A randomly generated AI Lutemon
      */
     public Lutemon generateAiOpponent(Context context, int playerLevel) {
-        LutemonStorage storage = LutemonStorage.getInstance();
-        List<Lutemon> schemas = storage.loadLutemonSchemas(context);
+        return generateAiOpponent(context, playerLevel, sessionRandom);
+    }
+    
+    /**
+     * Generate a random AI opponent from a given stream
+     * @param context Application context
+     * @param playerLevel Player's Lutemon level to match against
+     * @param random Random stream to draw the opponent from
+     * @return A randomly generated AI Lutemon
+     */
+    public Lutemon generateAiOpponent(Context context, int playerLevel, RandomSource random) {
+        Species template = SpeciesRegistry.getInstance(context).getRandom(random);
         
-        if (schemas.isEmpty()) {
-            return createBasicOpponent(playerLevel);
+        if (template == null) {
+            return createBasicOpponent(playerLevel, random);
         }
         
-        Lutemon template = schemas.get(random.nextInt(schemas.size()));
-        
         int levelFactor = Math.max(1, playerLevel - 1);
         int scaledAttack = template.getAttack() + (levelFactor * 2);
         int scaledDefense = template.getDefense() + (levelFactor);
-        int scaledHealth = template.getMaxHealth() + (levelFactor * 5);
+        int scaledHealth = template.getHealth() + (levelFactor * 5);
         int scaledSpeed = template.getSpeed() + (levelFactor);
         
         String aiId = "ai_" + System.currentTimeMillis();
         
         int aiXp = calculateXpForLevel(playerLevel);
         
-        return new Lutemon(aiId, "AI " + template.getName(), template.getColor(), 
+        return new Lutemon(aiId, template.getId(), "AI " + template.getName(), template.getColor(), 
                 scaledAttack, scaledDefense, scaledHealth, scaledSpeed, aiXp);
     }
     
     /**
      * Create a basic opponent if no schemas are available
      * @param playerLevel Player's Lutemon level to match against
+     * @param random Random stream to draw the opponent from
      * @return A basic AI Lutemon
      */
-    private Lutemon createBasicOpponent(int playerLevel) {
+    private Lutemon createBasicOpponent(int playerLevel, RandomSource random) {
         String aiId = "ai_" + System.currentTimeMillis();
         String[] colors = {"Red", "Blue", "Green", "Yellow", "Purple"};
         String color = colors[random.nextInt(colors.length)];
@@ -134,7 +152,7 @@ public class BattleManager {
         
         int aiXp = calculateXpForLevel(playerLevel);
         
-        return new Lutemon(aiId, "AI Lutemon", color, 
+        return new Lutemon(aiId, null, "AI Lutemon", color, 
                 scaledAttack, scaledDefense, scaledHealth, scaledSpeed, aiXp);
     }
     
@@ -144,17 +162,7 @@ public class BattleManager {
      * @return XP amount
      */
     private int calculateXpForLevel(int level) {
-        if (level <= 1) return 0;
-        
-        int totalXp = 0;
-        double threshold = Lutemon.BASE_EXPERIENCE_THRESHOLD;
-        
-        for (int i = 1; i < level; i++) {
-            totalXp += threshold;
-            threshold = Lutemon.BASE_EXPERIENCE_THRESHOLD * Math.pow(Lutemon.EXPERIENCE_GROWTH_FACTOR, i);
-        }
-        
-        return totalXp;
+        return ExperienceCurve.totalExperienceForLevel(level);
     }
     
     /**
@@ -162,46 +170,11 @@ public class BattleManager {
      * @return BattleResult with action outcome
      */
     public BattleResult playerAttack() {
-        if (!isBattleActive || !isPlayerTurn) {
+        beginTurn();
+        if (engine == null || !engine.playerAttack()) {
             return new BattleResult(false, "Not your turn!");
         }
-        
-        Lutemon.AttackResult attackResult = playerLutemon.attack(aiLutemon);
-        int damage = attackResult.getDamage();
-        
-        damage = Math.max(1, damage - aiDefenseBonus);
-        boolean isAlive = aiLutemon.takeDamage(damage);
-        aiDefenseBonus = 0; 
-        
-        String attackMessage = playerLutemon.getName() + " attacks " + aiLutemon.getName() + 
-                " for " + damage + " damage";
-        if (attackResult.isCritical()) {
-            attackMessage += " (Critical hit!)";
-        }
-        if (attackResult.hasTypeAdvantage()) {
-            attackMessage += " (Type advantage!)";
-        }
-        
-        battleLog.add(new BattleAction(BattleActionType.PLAYER_ATTACK, attackMessage));
-        
-        BattleResult result;
-        if (!isAlive) {
-            battleLog.add(new BattleAction(BattleActionType.VICTORY, 
-                    playerLutemon.getName() + " defeated " + aiLutemon.getName() + "!"));
-            result = endBattle(true);
-        } else {
-            turnCount++;
-            isPlayerTurn = false;
-            result = new BattleResult(true, attackMessage);
-            
-            if (turnCount >= MAX_TURNS) {
-                battleLog.add(new BattleAction(BattleActionType.DRAW, 
-                        "Battle ended in a draw after " + MAX_TURNS + " turns!"));
-                result = endBattle(false);
-            }
-        }
-        
-        return result;
+        return turnResult();
     }
     
     /**
@@ -209,26 +182,11 @@ public class BattleManager {
      * @return BattleResult with action outcome
      */
     public BattleResult playerDefend() {
-        if (!isBattleActive || !isPlayerTurn) {
+        beginTurn();
+        if (engine == null || !engine.playerDefend()) {
             return new BattleResult(false, "Not your turn!");
         }
-        
-        playerDefenseBonus = playerLutemon.getDefense() / 2;
-        
-        String defendMessage = playerLutemon.getName() + " defends, gaining " + 
-                playerDefenseBonus + " bonus defense for the next attack";
-        battleLog.add(new BattleAction(BattleActionType.PLAYER_DEFEND, defendMessage));
-        
-        turnCount++;
-        isPlayerTurn = false;
-        
-        if (turnCount >= MAX_TURNS) {
-            battleLog.add(new BattleAction(BattleActionType.DRAW, 
-                    "Battle ended in a draw after " + MAX_TURNS + " turns!"));
-            return endBattle(false);
-        }
-        
-        return new BattleResult(true, defendMessage);
+        return turnResult();
     }
     
     /**
@@ -236,92 +194,82 @@ public class BattleManager {
      * @return BattleResult with action outcome
      */
     public BattleResult executeAiTurn() {
-        if (!isBattleActive || isPlayerTurn) {
+        beginTurn();
+        if (engine == null || !engine.aiTurn()) {
             return new BattleResult(false, "Not AI's turn!");
         }
-        
-        boolean shouldAttack = makeAiDecision();
-        
-        BattleResult result;
-        if (shouldAttack) {
-            Lutemon.AttackResult attackResult = aiLutemon.attack(playerLutemon);
-            int damage = attackResult.getDamage();
-            
-            damage = Math.max(1, damage - playerDefenseBonus);
-            boolean isAlive = playerLutemon.takeDamage(damage);
-            playerDefenseBonus = 0; 
-            
-            String attackMessage = aiLutemon.getName() + " attacks " + playerLutemon.getName() + 
-                    " for " + damage + " damage";
-            if (attackResult.isCritical()) {
-                attackMessage += " (Critical hit!)";
-            }
-            if (attackResult.hasTypeAdvantage()) {
-                attackMessage += " (Type advantage!)";
-            }
-            
-            battleLog.add(new BattleAction(BattleActionType.AI_ATTACK, attackMessage));
-            
-            if (!isAlive) {
-                battleLog.add(new BattleAction(BattleActionType.DEFEAT, 
-                        aiLutemon.getName() + " defeated " + playerLutemon.getName() + "!"));
-                result = endBattle(false);
-            } else {
-                result = new BattleResult(true, attackMessage);
-            }
-        } else {
-            aiDefenseBonus = aiLutemon.getDefense() / 2;
-            
-            String defendMessage = aiLutemon.getName() + " defends, gaining " + 
-                    aiDefenseBonus + " bonus defense for the next attack";
-            battleLog.add(new BattleAction(BattleActionType.AI_DEFEND, defendMessage));
-            
-            result = new BattleResult(true, defendMessage);
-        }
-        
-        turnCount++;
-        isPlayerTurn = true;
-        
-        if (turnCount >= MAX_TURNS) {
-            battleLog.add(new BattleAction(BattleActionType.DRAW, 
-                    "Battle ended in a draw after " + MAX_TURNS + " turns!"));
-            return endBattle(false);
+        return turnResult();
+    }
+    
+    private void beginTurn() {
+        turnAction = null;
+        endResult = null;
+    }
+    
+    /**
+     * @return The end result if the turn ended the battle, the turn's action otherwise
+     */
+    private BattleResult turnResult() {
+        return endResult != null ? endResult : new BattleResult(true, turnAction);
+    }
+    
+    /**
+     * Preview the player's next attack against the AI's current defense
+     * @return Distribution of the damage the attack would deal, null without a battle
+     */
+    public DamageDistribution previewPlayerAttack() {
+        if (engine == null) {
+            return null;
         }
-        
-        return result;
+        return DamageDistribution.of(engine.getPlayerLutemon(), engine.getAiLutemon(), engine.getAiDefenseBonus());
     }
     
     /**
-     * AI decision making - whether to attack or defend
-     * @return true for attack, false for defend
+     * Preview the AI's next attack against the player's current defense
+     * @return Distribution of the damage the attack would deal, null without a battle
      */
-    private boolean makeAiDecision() {
-        int decision = random.nextInt(100);
-        
-        return decision < AI_DECISION_ATTACK_WEIGHT;
+    public DamageDistribution previewAiAttack() {
+        if (engine == null) {
+            return null;
+        }
+        return DamageDistribution.of(engine.getAiLutemon(), engine.getPlayerLutemon(), engine.getPlayerDefenseBonus());
     }
     
     /**
-     * End the battle and calculate rewards
-     * @param playerVictory true if player won
+     * Apply the rewards of a finished battle and record it in the stats and the ratings
+     * @param outcome How the battle ended
+     * @param experienceReward Experience the player earned
      * @return BattleResult with outcome
      */
-    private BattleResult endBattle(boolean playerVictory) {
-        isBattleActive = false;
-        
+    private BattleResult endBattle(BattleEngine.Outcome outcome, int experienceReward) {
+        // Rewards, stats and the end of the battle are saved together
+        PersistenceManager persistenceManager = PersistenceManager.getInstance();
+        persistenceManager.beginAction();
+        try {
+            return finishBattle(outcome, experienceReward);
+        } finally {
+            persistenceManager.endAction(PersistenceManager.Component.BATTLE);
+        }
+    }
+    
+    private BattleResult finishBattle(BattleEngine.Outcome outcome, int experienceReward) {
+        Lutemon playerLutemon = engine.getPlayerLutemon();
+        boolean playerVictory = outcome == BattleEngine.Outcome.VICTORY;
         String resultMessage;
         
+        // AI opponents have no rating of their own, rate them by how the matchup favors them
+        RatingLadder ratingLadder = RatingLadder.getInstance();
+        ratingLadder.recordBattle(playerLutemon,
+                ratingLadder.estimateOpponentRating(playerLutemon, engine.getAiLutemon()), outcome);
+        
         if (playerVictory) {
-            int experienceGained = calculateExperienceReward(aiLutemon);
-            
-            playerLutemon.addExperience(experienceGained);
+            playerLutemon.addExperience(experienceReward);
             
             resultMessage = "Victory! " + playerLutemon.getName() + " gained " + 
-                    experienceGained + " experience!";
+                    experienceReward + " experience!";
             
             StatsManager.getInstance().incrementBattlesWon();
         } else {
-            int lostExp = playerLutemon.getExperience();
             playerLutemon.setExperience(0);
             
             playerLutemon.heal();
@@ -333,75 +281,104 @@ public class BattleManager {
         
         StatsManager.getInstance().incrementTotalBattles();
         
-        return new BattleResult(true, resultMessage, battleLog, playerVictory);
+        return new BattleResult(true, resultMessage, getBattleLog(), playerVictory);
     }
     
     /**
-     * Calculate experience reward from defeating an opponent
-     * @param opponent The defeated Lutemon
-     * @return Experience points
+     * Save current battle state to the game state store right away
+     * @param context Application context
      */
-    private int calculateExperienceReward(Lutemon opponent) {
-        int baseReward = opponent.getLevel() * 20;
-        
-        int statBonus = (opponent.getAttack() + opponent.getDefense() + 
-                opponent.getMaxHealth() / 10 + opponent.getSpeed()) / 2;
-        
-        int randomFactor = random.nextInt(baseReward / 5) - (baseReward / 10);
-        
-        return Math.max(10, baseReward + statBonus + randomFactor);
+    public void saveBattleState(Context context) {
+        GameStateStore.Transaction transaction = GameStateStore.getInstance(context).edit();
+        writeBattleState(transaction);
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving battle state: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
     
     /**
-     * Save current battle state to preferences
-     * @param context Application context
+     * Add the current battle state to a game state transaction, an ended battle is removed
+     * @param transaction Transaction to write to
      */
-    public void saveBattleState(Context context) {
-        if (!isBattleActive) return;
+    void writeBattleState(GameStateStore.Transaction transaction) {
+        BattleEngine current = engine;
+        if (current == null || !current.isActive()) {
+            transaction.remove(KEY_CURRENT_BATTLE);
+            return;
+        }
         
         try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            SharedPreferences.Editor editor = prefs.edit();
-            
             JSONObject battleState = new JSONObject();
-            battleState.put("is_active", isBattleActive);
-            battleState.put("turn_count", turnCount);
-            battleState.put("is_player_turn", isPlayerTurn);
-            battleState.put("player_defense_bonus", playerDefenseBonus);
-            battleState.put("ai_defense_bonus", aiDefenseBonus);
+            battleState.put("is_active", true);
+            battleState.put("turn_count", current.getTurnCount());
+            battleState.put("is_player_turn", current.isPlayerTurn());
+            battleState.put("player_defense_bonus", current.getPlayerDefenseBonus());
+            battleState.put("ai_defense_bonus", current.getAiDefenseBonus());
             
+            Lutemon playerLutemon = current.getPlayerLutemon();
+            Lutemon aiLutemon = current.getAiLutemon();
             if (playerLutemon != null) {
                 battleState.put("player_lutemon", playerLutemon.toJson());
+                battleState.put("player_health", playerLutemon.getCurrentHealth());
             }
             
             if (aiLutemon != null) {
                 battleState.put("ai_lutemon", aiLutemon.toJson());
+                battleState.put("ai_health", aiLutemon.getCurrentHealth());
             }
             
             JSONArray logArray = new JSONArray();
-            for (BattleAction action : battleLog) {
+            for (BattleAction action : getBattleLog()) {
                 JSONObject actionJson = new JSONObject();
                 actionJson.put("type", action.type.toString());
-                actionJson.put("message", action.message);
+                actionJson.put("message", action.getMessage());
                 logArray.put(actionJson);
             }
             battleState.put("battle_log", logArray);
             
-            editor.putString(KEY_CURRENT_BATTLE, battleState.toString());
-            editor.apply();
+            transaction.putString(KEY_CURRENT_BATTLE, battleState.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Point the saved battle at the player's Lutemon again after it got a new instance ID.
+     * Without a new ID the battle resumes with the saved copy, as for a removed Lutemon.
+     * @param store Game state holding the saved battle
+     * @param transaction Transaction to write the updated battle to
+     * @param newIds New instance ID by old ID
+     */
+    void remapSavedIds(GameStateStore store, GameStateStore.Transaction transaction, Map<String, String> newIds) {
+        String battleStateJson = store.getString(KEY_CURRENT_BATTLE, null);
+        if (battleStateJson == null) {
+            return;
+        }
+        
+        try {
+            JSONObject battleState = new JSONObject(battleStateJson);
+            JSONObject playerLutemonJson = battleState.optJSONObject("player_lutemon");
+            String id = playerLutemonJson != null ? newIds.get(playerLutemonJson.optString("id", null)) : null;
+            if (id == null) {
+                return;
+            }
+            playerLutemonJson.put("id", id);
+            transaction.putString(KEY_CURRENT_BATTLE, battleState.toString());
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
     
     /**
-     * Load battle state from preferences
+     * Load battle state from the game state store
      * @param context Application context
      * @return true if a battle was loaded
      */
     public boolean loadBattleState(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String battleStateJson = prefs.getString(KEY_CURRENT_BATTLE, null);
+        String battleStateJson = GameStateStore.getInstance(context).getString(KEY_CURRENT_BATTLE, null);
         
         if (battleStateJson == null) {
             return false;
@@ -410,26 +387,47 @@ public class BattleManager {
         try {
             JSONObject battleState = new JSONObject(battleStateJson);
             
-            isBattleActive = battleState.getBoolean("is_active");
-            if (!isBattleActive) {
+            if (!battleState.getBoolean("is_active")) {
                 return false;
             }
             
-            turnCount = battleState.getInt("turn_count");
-            isPlayerTurn = battleState.getBoolean("is_player_turn");
-            playerDefenseBonus = battleState.getInt("player_defense_bonus");
-            aiDefenseBonus = battleState.getInt("ai_defense_bonus");
+            int turnCount = battleState.getInt("turn_count");
+            boolean isPlayerTurn = battleState.getBoolean("is_player_turn");
+            int playerDefenseBonus = battleState.getInt("player_defense_bonus");
+            int aiDefenseBonus = battleState.getInt("ai_defense_bonus");
             
+            Lutemon playerLutemon = null;
+            Lutemon aiLutemon = null;
             if (battleState.has("player_lutemon")) {
                 JSONObject playerLutemonJson = battleState.getJSONObject("player_lutemon");
-                playerLutemon = Lutemon.fromJson(playerLutemonJson);
+                Lutemon savedLutemon = Lutemon.fromJson(playerLutemonJson);
+                
+                // Battle against the roster instance so rewards land on the stored Lutemon
+                Lutemon rosterLutemon = savedLutemon != null
+                        ? LutemonStorage.getInstance().getLutemonById(savedLutemon.getId())
+                        : null;
+                if (rosterLutemon != null) {
+                    rosterLutemon.setCurrentHealth(battleState.optInt("player_health", rosterLutemon.getMaxHealth()));
+                    playerLutemon = rosterLutemon;
+                } else {
+                    playerLutemon = savedLutemon;
+                }
             }
             
             if (battleState.has("ai_lutemon")) {
                 JSONObject aiLutemonJson = battleState.getJSONObject("ai_lutemon");
                 aiLutemon = Lutemon.fromJson(aiLutemonJson);
+                if (aiLutemon != null) {
+                    aiLutemon.setCurrentHealth(battleState.optInt("ai_health", aiLutemon.getMaxHealth()));
+                }
+            }
+            if (playerLutemon == null || aiLutemon == null) {
+                return false;
             }
             
+            // The stream position is not saved, a resumed battle continues on a new stream
+            engine = BattleEngine.resume(playerLutemon, aiLutemon, sessionRandom.split(), engineListener,
+                    turnCount, isPlayerTurn, playerDefenseBonus, aiDefenseBonus);
             battleLog.clear();
             JSONArray logArray = battleState.getJSONArray("battle_log");
             for (int i = 0; i < logArray.length(); i++) {
@@ -447,58 +445,75 @@ public class BattleManager {
     }
     
     /**
-     * Clear any saved battle state
+     * Clear any saved battle state, removed with the next write-behind save
      * @param context Application context
      */
     public void clearBattleState(Context context) {
-        isBattleActive = false;
-        
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.remove(KEY_CURRENT_BATTLE);
-        editor.apply();
+        if (engine != null) {
+            engine.abandon();
+        }
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.BATTLE);
     }
     
     // Getters
     public Lutemon getPlayerLutemon() {
-        return playerLutemon;
+        return engine != null ? engine.getPlayerLutemon() : null;
     }
     
     public Lutemon getAiLutemon() {
-        return aiLutemon;
+        return engine != null ? engine.getAiLutemon() : null;
     }
     
     public boolean isBattleActive() {
-        return isBattleActive;
+        return engine != null && engine.isActive();
     }
     
     public int getTurnCount() {
-        return turnCount;
+        return engine != null ? engine.getTurnCount() : 0;
     }
     
     public boolean isPlayerTurn() {
-        return isPlayerTurn;
+        return engine == null || engine.isPlayerTurn();
     }
     
     public List<BattleAction> getBattleLog() {
-        return new ArrayList<>(battleLog);
+        synchronized (battleLog) {
+            return new ArrayList<>(battleLog);
+        }
     }
     
     // Inner classes for battle results
     public static class BattleResult {
         private final boolean success;
         private final String message;
+        // Source of the message for turn results, formatted on first getMessage
+        private final BattleAction action;
         private final List<BattleAction> battleLog;
         private final boolean playerVictory;
         private final boolean battleEnded;
         
         public BattleResult(boolean success, String message) {
-            this(success, message, new ArrayList<>(), false);
+            this(success, message, null, Collections.<BattleAction>emptyList(), false);
+        }
+        
+        /**
+         * Result of a turn, its message is the action's message
+         * @param success true if the action was taken
+         * @param action The action taken this turn
+         */
+        public BattleResult(boolean success, BattleAction action) {
+            this(success, null, action, Collections.<BattleAction>emptyList(), false);
         }
         
         public BattleResult(boolean success, String message, List<BattleAction> battleLog, boolean playerVictory) {
+            this(success, message, null, battleLog, playerVictory);
+        }
+        
+        private BattleResult(boolean success, String message, BattleAction action,
+                             List<BattleAction> battleLog, boolean playerVictory) {
             this.success = success;
             this.message = message;
+            this.action = action;
             this.battleLog = battleLog;
             this.playerVictory = playerVictory;
             this.battleEnded = !battleLog.isEmpty();
@@ -509,7 +524,7 @@ public class BattleManager {
         }
         
         public String getMessage() {
-            return message;
+            return message != null ? message : action.getMessage();
         }
         
         public List<BattleAction> getBattleLog() {
@@ -525,21 +540,95 @@ public class BattleManager {
         }
     }
     
+    /**
+     * Entry of the battle log. Attack and defend entries keep what happened and only
+     * format their message when it is first asked for, usually when the log is shown.
+     */
     public static class BattleAction {
         private final BattleActionType type;
-        private final String message;
+        private final String actorName;
+        private final String targetName;
+        private final int amount;
+        private final boolean critical;
+        private final boolean typeAdvantage;
+        // Formatted message, racy caching is fine since formatting is repeatable
+        private String message;
         
         public BattleAction(BattleActionType type, String message) {
-            this.type = type;
+            this(type, null, null, 0, false, false);
             this.message = message;
         }
         
+        private BattleAction(BattleActionType type, String actorName, String targetName, int amount,
+                             boolean critical, boolean typeAdvantage) {
+            this.type = type;
+            this.actorName = actorName;
+            this.targetName = targetName;
+            this.amount = amount;
+            this.critical = critical;
+            this.typeAdvantage = typeAdvantage;
+        }
+        
+        /**
+         * @param type PLAYER_ATTACK or AI_ATTACK
+         * @param attacker The attacking Lutemon
+         * @param target The attacked Lutemon
+         * @param damage Damage dealt after defense bonuses
+         * @param outcome Outcome of the attack roll
+         * @return The log entry
+         */
+        static BattleAction attack(BattleActionType type, Lutemon attacker, Lutemon target, int damage,
+                                   AttackOutcome outcome) {
+            return new BattleAction(type, attacker.getName(), target.getName(), damage,
+                    outcome.isCritical(), outcome.hasTypeAdvantage());
+        }
+        
+        /**
+         * @param type PLAYER_DEFEND or AI_DEFEND
+         * @param defender The defending Lutemon
+         * @param bonus Defense bonus gained
+         * @return The log entry
+         */
+        static BattleAction defend(BattleActionType type, Lutemon defender, int bonus) {
+            return new BattleAction(type, defender.getName(), null, bonus, false, false);
+        }
+        
         public BattleActionType getType() {
             return type;
         }
         
+        /**
+         * @return true for attack and defend entries, which are a turn's action
+         */
+        boolean isTurn() {
+            return actorName != null;
+        }
+        
         public String getMessage() {
-            return message;
+            String formatted = message;
+            if (formatted == null) {
+                formatted = format();
+                message = formatted;
+            }
+            return formatted;
+        }
+        
+        private String format() {
+            StringBuilder builder = new StringBuilder();
+            if (targetName != null) {
+                builder.append(actorName).append(" attacks ").append(targetName)
+                        .append(" for ").append(amount).append(" damage");
+                if (critical) {
+                    builder.append(" (Critical hit!)");
+                }
+                if (typeAdvantage) {
+                    builder.append(" (Type advantage!)");
+                }
+            } else {
+                builder.append(actorName).append(" defends, gaining ").append(amount)
+                        .append(" bonus defense for the next attack");
+            }
+            return builder.toString();
         }
     }
     
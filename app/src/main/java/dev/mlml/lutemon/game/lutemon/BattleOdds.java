@@ -0,0 +1,71 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Estimated chances of a matchup, counted from simulated battles, see BattleOddsEstimator
+ */
+public final class BattleOdds {
+    // z for a 95% confidence interval
+    private static final double Z_95 = 1.96;
+
+    private final int wins;
+    private final int draws;
+    private final int losses;
+
+    BattleOdds(int wins, int draws, int losses) {
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    /**
+     * @return Number of battles simulated
+     */
+    public int getSimulations() {
+        return wins + draws + losses;
+    }
+
+    public double getWinProbability() {
+        return share(wins);
+    }
+
+    public double getDrawProbability() {
+        return share(draws);
+    }
+
+    public double getLossProbability() {
+        return share(losses);
+    }
+
+    /**
+     * @return Half-width of the 95% confidence interval of the least certain of the three
+     * probabilities, 1 without simulations
+     */
+    public double getMargin() {
+        int simulations = getSimulations();
+        if (simulations == 0) {
+            return 1;
+        }
+        double widest = 0;
+        for (int count : new int[]{wins, draws, losses}) {
+            double p = (double) count / simulations;
+            widest = Math.max(widest, p * (1 - p));
+        }
+        return Z_95 * Math.sqrt(widest / simulations);
+    }
+
+    private double share(int count) {
+        int simulations = getSimulations();
+        return simulations == 0 ? 0 : (double) count / simulations;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Win %.0f%%, draw %.0f%%, loss %.0f%%",
+                getWinProbability() * 100, getDrawProbability() * 100, getLossProbability() * 100);
+    }
+}
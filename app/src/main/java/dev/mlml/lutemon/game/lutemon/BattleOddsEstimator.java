@@ -0,0 +1,181 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates win, draw and loss chances of a matchup by simulating it on the fork-join pool.
+ * <p>
+ * Every simulation is a full BattleEngine battle on copies of the two Lutemons, so the
+ * turn limit, the AI's attack/defend split and defend bonuses all count. The player's
+ * side is played with the AI's strategy. Battles run in rounds split across the pool,
+ * and the estimate stops as soon as its 95% confidence interval is within TARGET_MARGIN
+ * or the time budget is used up, whichever comes first.
+ */
+public final class BattleOddsEstimator {
+    /**
+     * Default time budget, short enough to show the odds right away
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+    // Stop once every probability is known to within one percentage point
+    private static final double TARGET_MARGIN = 0.01;
+    // A few rounds before trusting the margin, it is 0 when a side never won yet
+    private static final int MIN_SIMULATIONS = 2000;
+    private static final int MAX_SIMULATIONS = 100000;
+    // Battles one task runs without splitting further
+    private static final int LEAF_BATTLES = 256;
+    // Battles between two looks at the clock
+    private static final int DEADLINE_CHECK_INTERVAL = 32;
+    // Slots of the outcome counts
+    private static final int WINS = 0;
+    private static final int DRAWS = 1;
+    private static final int LOSSES = 2;
+
+    /**
+     * Receives the estimate, on a pool thread
+     */
+    public interface Callback {
+        void onEstimated(BattleOdds odds);
+    }
+
+    private BattleOddsEstimator() {
+    }
+
+    /**
+     * Estimate the odds and wait for them, never call this on the main thread
+     * @param playerLutemon The player's Lutemon
+     * @param aiLutemon The AI's Lutemon
+     * @param random Random stream to split the simulations' streams from
+     * @param budgetMillis Time budget, the estimate returns within it
+     * @return The odds
+     */
+    public static BattleOdds estimate(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random,
+                                      long budgetMillis) {
+        return ForkJoinPool.commonPool().invoke(
+                new EstimateTask(playerLutemon.copy(), aiLutemon.copy(), random, budgetMillis, null));
+    }
+
+    /**
+     * Estimate the odds in the background with the default budget
+     * @param playerLutemon The player's Lutemon
+     * @param aiLutemon The AI's Lutemon
+     * @param callback Called with the odds unless the task was cancelled first
+     * @return The running task, cancel it when the odds are no longer wanted
+     */
+    public static ForkJoinTask<BattleOdds> estimateAsync(Lutemon playerLutemon, Lutemon aiLutemon,
+                                                         Callback callback) {
+        // Copied on the caller's thread, the originals may change while the estimate runs
+        EstimateTask task = new EstimateTask(playerLutemon.copy(), aiLutemon.copy(), new RandomSource(),
+                DEFAULT_BUDGET_MILLIS, callback);
+        ForkJoinPool.commonPool().execute(task);
+        return task;
+    }
+
+    /**
+     * Runs rounds of simulations until the odds are tight enough or time is up
+     */
+    private static final class EstimateTask extends RecursiveTask<BattleOdds> {
+        private final Lutemon playerLutemon;
+        private final Lutemon aiLutemon;
+        private final RandomSource random;
+        private final long budgetMillis;
+        private final Callback callback;
+
+        EstimateTask(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random, long budgetMillis,
+                     Callback callback) {
+            this.playerLutemon = playerLutemon;
+            this.aiLutemon = aiLutemon;
+            this.random = random;
+            this.budgetMillis = budgetMillis;
+            this.callback = callback;
+        }
+
+        @Override
+        protected BattleOdds compute() {
+            long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+            int roundBattles = LEAF_BATTLES * 2 * ForkJoinPool.getCommonPoolParallelism();
+            int[] counts = new int[3];
+            BattleOdds odds = new BattleOdds(0, 0, 0);
+
+            while (!isCancelled() && System.nanoTime() < deadline) {
+                int battles = Math.min(roundBattles, MAX_SIMULATIONS - odds.getSimulations());
+                int[] round = new SimulationTask(playerLutemon, aiLutemon, random.split(), battles, deadline).invoke();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += round[i];
+                }
+                odds = new BattleOdds(counts[WINS], counts[DRAWS], counts[LOSSES]);
+                if (odds.getSimulations() >= MAX_SIMULATIONS
+                        || (odds.getSimulations() >= MIN_SIMULATIONS && odds.getMargin() <= TARGET_MARGIN)) {
+                    break;
+                }
+            }
+
+            if (callback != null && !isCancelled()) {
+                callback.onEstimated(odds);
+            }
+            return odds;
+        }
+    }
+
+    /**
+     * Simulates a number of battles, splitting them across the pool
+     */
+    private static final class SimulationTask extends RecursiveTask<int[]> {
+        private final Lutemon playerLutemon;
+        private final Lutemon aiLutemon;
+        private final RandomSource random;
+        private final int battles;
+        private final long deadline;
+
+        SimulationTask(Lutemon playerLutemon, Lutemon aiLutemon, RandomSource random, int battles, long deadline) {
+            this.playerLutemon = playerLutemon;
+            this.aiLutemon = aiLutemon;
+            this.random = random;
+            this.battles = battles;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return Wins, draws and losses of the player
+         */
+        @Override
+        protected int[] compute() {
+            if (battles > LEAF_BATTLES) {
+                int half = battles / 2;
+                SimulationTask left = new SimulationTask(playerLutemon, aiLutemon, random.split(), half, deadline);
+                SimulationTask right = new SimulationTask(playerLutemon, aiLutemon, random.split(),
+                        battles - half, deadline);
+                left.fork();
+                int[] counts = right.compute();
+                int[] leftCounts = left.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += leftCounts[i];
+                }
+                return counts;
+            }
+
+            // Each leaf fights with its own copies, a battle heals both at the start
+            Lutemon player = playerLutemon.copy();
+            Lutemon ai = aiLutemon.copy();
+            int[] counts = new int[3];
+            for (int i = 0; i < battles; i++) {
+                if (i % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) {
+                    break;
+                }
+                switch (new BattleEngine(player, ai, random, null).runToEnd()) {
+                    case VICTORY:
+                        counts[WINS]++;
+                        break;
+                    case DRAW:
+                        counts[DRAWS]++;
+                        break;
+                    default:
+                        counts[LOSSES]++;
+                        break;
+                }
+            }
+            return counts;
+        }
+    }
+}
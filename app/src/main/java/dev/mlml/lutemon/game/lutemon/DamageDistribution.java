@@ -0,0 +1,239 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exact distribution of the health one attack takes from a defender.
+ * <p>
+ * Lutemon.attack rolls a uniform variation of the attacker's attack and then a critical
+ * hit, rounds, and the defender subtracts a defend bonus and its defense. Each outcome is
+ * a whole number, so the chance of every one can be worked out from the width of the
+ * variation interval that rounds to it, no sampling needed. Distributions depend only on
+ * the attacker's attack and experience, the type matchup, the defender's defense and the
+ * defend bonus, and are memoized on those.
+ */
+public final class DamageDistribution {
+    private static final int CACHE_SIZE = 256;
+    private static final Map<Key, DamageDistribution> cache = new LinkedHashMap<Key, DamageDistribution>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, DamageDistribution> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int minDamage;
+    // probabilities[i] is the chance of exactly minDamage + i damage
+    private final double[] probabilities;
+    private final double expectedDamage;
+    // expectedAttacks[h] is the expected number of attacks to take h health, filled on demand
+    private double[] expectedAttacks = {0};
+
+    private DamageDistribution(int minDamage, double[] probabilities) {
+        this.minDamage = minDamage;
+        this.probabilities = probabilities;
+        double expected = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            expected += (minDamage + i) * probabilities[i];
+        }
+        this.expectedDamage = expected;
+    }
+
+    /**
+     * @param attacker The attacking Lutemon
+     * @param defender The defending Lutemon
+     * @param defenseBonus Bonus the defender gained by defending, 0 if it did not
+     * @return Distribution of the health the attack takes from the defender
+     */
+    public static DamageDistribution of(Lutemon attacker, Lutemon defender, int defenseBonus) {
+        TypeChart chart = TypeChart.getCurrent();
+        int attackerType = attacker.getSpecies().getTypeId(chart);
+        int defenderType = defender.getSpecies().getTypeId(chart);
+        int matchup = 0;
+        if (chart.hasAdvantage(attackerType, defenderType)) {
+            matchup = 1;
+        } else if (chart.hasAdvantage(defenderType, attackerType)) {
+            matchup = -1;
+        }
+
+        Key key = new Key(attacker.getAttack(), attacker.getExperience(), matchup,
+                defender.getDefense(), defenseBonus);
+        synchronized (cache) {
+            DamageDistribution distribution = cache.get(key);
+            if (distribution == null) {
+                distribution = compute(key);
+                cache.put(key, distribution);
+            }
+            return distribution;
+        }
+    }
+
+    private static DamageDistribution compute(Key key) {
+        // Damage before the variation, in the same order of operations as Lutemon.attack
+        double base = key.attack;
+        base += key.attack * (key.experience * Lutemon.EXPERIENCE_MULTIPLIER);
+        if (key.matchup > 0) {
+            base += key.attack * Lutemon.TYPE_ADVANTAGE_MULTIPLIER;
+        } else if (key.matchup < 0) {
+            base -= key.attack * Lutemon.TYPE_ADVANTAGE_MULTIPLIER;
+        }
+        double low = base - key.attack * Lutemon.ATTACK_VARIATION;
+        double high = base + key.attack * Lutemon.ATTACK_VARIATION;
+
+        double critical = Lutemon.CRITICAL_HIT_CHANCE;
+        Map<Integer, Double> rolled = new LinkedHashMap<>();
+        addRounded(rolled, low, high, 1 - critical);
+        addRounded(rolled, low * Lutemon.CRITICAL_HIT_MULTIPLIER, high * Lutemon.CRITICAL_HIT_MULTIPLIER, critical);
+
+        // Rolled damage to health lost, see BattleManager and Lutemon.takeDamage
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int[] lost = new int[rolled.size()];
+        double[] chances = new double[rolled.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> entry : rolled.entrySet()) {
+            int damage = Math.max(1, entry.getKey());
+            damage = Math.max(1, damage - key.defenseBonus);
+            lost[i] = Math.max(1, damage - key.defense);
+            chances[i] = entry.getValue();
+            min = Math.min(min, lost[i]);
+            max = Math.max(max, lost[i]);
+            i++;
+        }
+        double[] probabilities = new double[max - min + 1];
+        for (i = 0; i < lost.length; i++) {
+            probabilities[lost[i] - min] += chances[i];
+        }
+        return new DamageDistribution(min, probabilities);
+    }
+
+    /**
+     * Spread a uniform value on [low, high) over the integers it rounds to
+     * @param weight Total probability to spread
+     */
+    private static void addRounded(Map<Integer, Double> rolled, double low, double high, double weight) {
+        if (low > high) {
+            double swap = low;
+            low = high;
+            high = swap;
+        }
+        double width = high - low;
+        if (width <= 0) {
+            rolled.merge((int) Math.round(low), weight, Double::sum);
+            return;
+        }
+        // Math.round maps [k - 0.5, k + 0.5) to k
+        long first = (long) Math.floor(low + 0.5);
+        long last = (long) Math.floor(high + 0.5);
+        for (long k = first; k <= last; k++) {
+            double overlap = Math.min(high, k + 0.5) - Math.max(low, k - 0.5);
+            if (overlap > 0) {
+                rolled.merge((int) k, weight * overlap / width, Double::sum);
+            }
+        }
+    }
+
+    /**
+     * @return Smallest possible health loss, at least 1
+     */
+    public int getMinDamage() {
+        return minDamage;
+    }
+
+    public int getMaxDamage() {
+        return minDamage + probabilities.length - 1;
+    }
+
+    /**
+     * @param damage Health loss
+     * @return Chance the attack takes exactly this much health
+     */
+    public double getProbability(int damage) {
+        int index = damage - minDamage;
+        return index >= 0 && index < probabilities.length ? probabilities[index] : 0;
+    }
+
+    public double getExpectedDamage() {
+        return expectedDamage;
+    }
+
+    /**
+     * @param health Defender's current health
+     * @return Chance this attack knocks the defender out
+     */
+    public double getKillProbability(int health) {
+        if (health <= minDamage) {
+            return 1;
+        }
+        double chance = 0;
+        for (int i = Math.max(0, health - minDamage); i < probabilities.length; i++) {
+            chance += probabilities[i];
+        }
+        return Math.min(1, chance);
+    }
+
+    /**
+     * Expected number of these attacks until the defender is knocked out, with nothing in
+     * between, e.g. no healing or defending
+     * @param health Defender's current health
+     * @return Expected attacks, 0 if the defender is already out
+     */
+    public synchronized double getExpectedTurnsToKo(int health) {
+        if (health <= 0) {
+            return 0;
+        }
+        if (health >= expectedAttacks.length) {
+            int filled = expectedAttacks.length;
+            expectedAttacks = Arrays.copyOf(expectedAttacks, Math.max(health + 1, filled * 2));
+            // E[h] = 1 + sum of P(d) * E[h - d], where E of zero or less health is 0
+            for (int h = filled; h < expectedAttacks.length; h++) {
+                double expected = 1;
+                for (int i = 0; i < probabilities.length && minDamage + i < h; i++) {
+                    expected += probabilities[i] * expectedAttacks[h - minDamage - i];
+                }
+                expectedAttacks[h] = expected;
+            }
+        }
+        return expectedAttacks[health];
+    }
+
+    /**
+     * Everything the damage of an attack depends on
+     */
+    private static final class Key {
+        final int attack;
+        final int experience;
+        // 1 attacker has the type advantage, -1 the defender has it, 0 neither
+        final int matchup;
+        final int defense;
+        final int defenseBonus;
+
+        Key(int attack, int experience, int matchup, int defense, int defenseBonus) {
+            this.attack = attack;
+            this.experience = experience;
+            this.matchup = matchup;
+            this.defense = defense;
+            this.defenseBonus = defenseBonus;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return attack == other.attack && experience == other.experience && matchup == other.matchup
+                    && defense == other.defense && defenseBonus == other.defenseBonus;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = attack;
+            hash = 31 * hash + experience;
+            hash = 31 * hash + matchup;
+            hash = 31 * hash + defense;
+            return 31 * hash + defenseBonus;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.Arrays;
+
+/**
+ * Level curve shared by all Lutemons: level n takes
+ * BASE_EXPERIENCE_THRESHOLD * EXPERIENCE_GROWTH_FACTOR^(n - 1) experience.
+ * <p>
+ * Every level's thresholds are precomputed once, so lookups are a binary search or a table
+ * read instead of walking the curve with Math.pow. The tables reproduce the original
+ * walk exactly, including its truncation of the running total to int.
+ */
+final class ExperienceCurve {
+    // Indexed by level, index 0 is unused
+    private static final double[] LEVEL_THRESHOLDS;
+    // Running total as the level walk kept it, truncated to int after every level
+    private static final int[] LEVEL_STARTS;
+    // Running total summed as doubles, used for progress within a level
+    private static final double[] EXACT_LEVEL_STARTS;
+    // LEVEL_UPS[i] is the least experience that reaches level i + 2
+    private static final int[] LEVEL_UPS;
+    // Highest level int experience can reach
+    static final int MAX_LEVEL;
+
+    static {
+        double[] thresholds = new double[64];
+        int[] starts = new int[64];
+        double[] exactStarts = new double[64];
+        int[] levelUps = new int[64];
+
+        int level = 1;
+        int start = 0;
+        double exactStart = 0;
+        while (true) {
+            double threshold = Lutemon.BASE_EXPERIENCE_THRESHOLD * Math.pow(Lutemon.EXPERIENCE_GROWTH_FACTOR, level - 1);
+            if (level == thresholds.length) {
+                thresholds = Arrays.copyOf(thresholds, level * 2);
+                starts = Arrays.copyOf(starts, level * 2);
+                exactStarts = Arrays.copyOf(exactStarts, level * 2);
+                levelUps = Arrays.copyOf(levelUps, level * 2);
+            }
+            thresholds[level] = threshold;
+            starts[level] = start;
+            exactStarts[level] = exactStart;
+
+            // The walk levels up once start + threshold <= experience
+            double next = start + threshold;
+            if (next > Integer.MAX_VALUE) {
+                break;
+            }
+            levelUps[level - 1] = (int) Math.ceil(next);
+            start = (int) next;
+            exactStart += threshold;
+            level++;
+        }
+
+        MAX_LEVEL = level;
+        LEVEL_THRESHOLDS = Arrays.copyOf(thresholds, level + 1);
+        LEVEL_STARTS = Arrays.copyOf(starts, level + 1);
+        EXACT_LEVEL_STARTS = Arrays.copyOf(exactStarts, level + 1);
+        LEVEL_UPS = Arrays.copyOf(levelUps, level - 1);
+    }
+
+    private ExperienceCurve() {
+    }
+
+    /**
+     * @param experience Total experience
+     * @return The level reached with this much experience, starting from 1
+     */
+    static int levelFor(int experience) {
+        int index = Arrays.binarySearch(LEVEL_UPS, experience);
+        // Exact hits reach the next level, misses return -(insertion point) - 1
+        return index >= 0 ? index + 2 : -index;
+    }
+
+    /**
+     * @param level Level, 1 to MAX_LEVEL
+     * @return Experience needed to complete this level
+     */
+    static double levelThreshold(int level) {
+        return LEVEL_THRESHOLDS[level];
+    }
+
+    /**
+     * @param level Level, 1 to MAX_LEVEL
+     * @return Total experience of all levels below this one, not truncated
+     */
+    static double experienceBeforeLevel(int level) {
+        return EXACT_LEVEL_STARTS[level];
+    }
+
+    /**
+     * Total experience given to a Lutemon generated at a level, each level's share is
+     * truncated to int as it is added up
+     * @param level The target level
+     * @return Experience amount, 0 for level 1 and below
+     */
+    static int totalExperienceForLevel(int level) {
+        if (level <= 1) {
+            return 0;
+        }
+        if (level > MAX_LEVEL) {
+            return Integer.MAX_VALUE;
+        }
+        return LEVEL_STARTS[level];
+    }
+}
@@ -0,0 +1,75 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Process-wide owner of the loaded game state.
+ * ViewModels call refresh when they are created or resumed instead of reloading the saves
+ * themselves. The saves are read once per process and only read again when the saved roster
+ * was changed on disk by something other than this process.
+ */
+public class GameRepository {
+    private static final String TAG = "GameRepository";
+
+    private static GameRepository instance = null;
+
+    // Bumped on every load, 0 until the first one
+    private int generation = 0;
+    private boolean loaded = false;
+
+    private GameRepository() {
+    }
+
+    public static synchronized GameRepository getInstance() {
+        if (instance == null) {
+            instance = new GameRepository();
+        }
+        return instance;
+    }
+
+    /**
+     * Load the game state on first use and whenever the saved roster changed on disk,
+     * otherwise keep serving what is in memory
+     * @param context Application context
+     * @return Generation of the state now in memory
+     */
+    public synchronized int refresh(Context context) {
+        if (loaded && !LutemonStorage.getInstance().isModifiedOnDisk(context)) {
+            return generation;
+        }
+
+        // Unsaved changes must reach disk before they are reloaded
+        PersistenceManager.getInstance().flushNow();
+
+        // Loaded first so the loaded Lutemons share the schema's species
+        SpeciesRegistry.getInstance(context);
+        LutemonStorage.getInstance().loadSavedLutemons(context);
+        // Needs the roster to drop ratings of Lutemons that left it
+        RatingLadder.getInstance().load(context);
+        StatsManager.getInstance().loadStats(context);
+        TrainingManager.getInstance().loadTrainingState(context);
+        LootBoxManager.getInstance().initialize(context);
+        // Rebinds an ongoing battle to the freshly loaded roster
+        BattleManager.getInstance().loadBattleState(context);
+
+        loaded = true;
+        generation++;
+        Log.d(TAG, "Loaded game state, generation " + generation);
+        return generation;
+    }
+
+    /**
+     * @return Generation of the state in memory, 0 if nothing was loaded yet
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Force the next refresh to reload everything from disk
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+}
@@ -0,0 +1,428 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Key/value store for all game state besides the roster: stats, training, the current
+ * battle, the player's currency and the rating ladder. It also carries the record of the
+ * last roster save, see LutemonStorage.saveLutemons.
+ * <p>
+ * Changes are made through a Transaction and committed as one frame of an append-only log
+ * (same framing as the roster journal) with one sync, so everything one game action
+ * changed lands on disk together or not at all. The log is rewritten as a single frame once
+ * it has grown to twice its size after the last rewrite, so rewrites stay rare however large
+ * the live state is. On first use the SharedPreferences files the managers used before are
+ * migrated into the store and deleted.
+ */
+public final class GameStateStore {
+    private static final String TAG = "GameStateStore";
+    private static final String LOG_FILENAME = "game_state.log";
+    private static final String COMPACTED_FILENAME = "game_state.log.compact";
+
+    // SharedPreferences files written by older versions of the app
+    private static final String[] LEGACY_PREFS_NAMES = {
+            "battle_prefs", "training_prefs", "stats_prefs", "LutemonPrefs"
+    };
+
+    // Set by the commit that migrated the SharedPreferences files
+    private static final String MIGRATED_KEY = "prefs_migrated";
+
+    // Smallest log size at which it is rewritten with only the current values
+    private static final long COMPACTION_THRESHOLD_BYTES = 64 * 1024;
+    // The log is rewritten once it is this many times its size after the last rewrite
+    private static final int COMPACTION_GROWTH_FACTOR = 2;
+
+    private static final byte TYPE_REMOVED = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_BYTES = 5;
+
+    // Marks a removal in a transaction
+    private static final Object REMOVED = new Object();
+
+    private static GameStateStore instance = null;
+
+    private final File logFile;
+    private final File compactedFile;
+    // Guarded by this
+    private final Map<String, Object> values = new HashMap<>();
+    private FileOutputStream outputStream;
+    private FileChannel channel;
+    // Size of the current values as one frame, as of the last load or rewrite
+    private long compactedSize = 0;
+
+    private GameStateStore(File filesDir) {
+        logFile = new File(filesDir, LOG_FILENAME);
+        compactedFile = new File(filesDir, COMPACTED_FILENAME);
+    }
+
+    /**
+     * Load a store from a directory without migrating old saves, for tests
+     * @param filesDir Directory holding the log
+     * @return The loaded store
+     */
+    @VisibleForTesting
+    static GameStateStore open(File filesDir) {
+        GameStateStore store = new GameStateStore(filesDir);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Get the store, loading it and migrating old saves on first use
+     * @param context Any context, only used for the first load
+     * @return The game state store
+     */
+    public static synchronized GameStateStore getInstance(Context context) {
+        if (instance == null) {
+            GameStateStore store = new GameStateStore(context.getFilesDir());
+            store.load();
+            // Marked by the migration commit itself, a failed one is retried
+            if (!store.contains(MIGRATED_KEY)) {
+                store.migrateSharedPreferences(context);
+            }
+            instance = store;
+        }
+        return instance;
+    }
+
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public synchronized int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public synchronized long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public synchronized String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    /**
+     * @param key Key
+     * @return Copy of the value, or null if there is no byte array value for the key
+     */
+    public synchronized byte[] getBytes(String key) {
+        Object value = values.get(key);
+        return value instanceof byte[] ? ((byte[]) value).clone() : null;
+    }
+
+    /**
+     * Get every long value whose key starts with a prefix, e.g. one value per Lutemon
+     * @param prefix Key prefix
+     * @return Values by key, empty if there are none
+     */
+    public synchronized Map<String, Long> getLongs(String prefix) {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof Long) {
+                result.put(entry.getKey(), (Long) entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Start collecting changes, nothing is visible or written until commit
+     * @return A new transaction
+     */
+    public Transaction edit() {
+        return new Transaction();
+    }
+
+    private synchronized void commit(Map<String, Object> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        if (channel == null) {
+            outputStream = new FileOutputStream(logFile, true);
+            channel = outputStream.getChannel();
+        }
+        long committedSize = channel.size();
+        try {
+            RosterJournal.writeFrame(channel, encode(changes));
+        } catch (IOException e) {
+            // A torn frame would hide every later commit on replay
+            try {
+                channel.truncate(committedSize);
+            } catch (IOException ignored) {
+            }
+            closeLog();
+            throw e;
+        }
+
+        // Only visible once it is on disk
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == REMOVED) {
+                values.remove(change.getKey());
+            } else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+
+        if (logFile.length() > Math.max(COMPACTION_THRESHOLD_BYTES, compactedSize * COMPACTION_GROWTH_FACTOR)) {
+            compact();
+        }
+    }
+
+    /**
+     * Replace the log with a single frame holding the current values
+     */
+    private void compact() {
+        try {
+            try (FileOutputStream compactedStream = new FileOutputStream(compactedFile)) {
+                RosterJournal.writeFrame(compactedStream.getChannel(), encode(values));
+            }
+            closeLog();
+            if (!compactedFile.renameTo(logFile)) {
+                throw new IOException("Could not replace " + logFile);
+            }
+            compactedSize = logFile.length();
+            Log.d(TAG, "Compacted game state to " + compactedSize + " bytes");
+        } catch (IOException e) {
+            // The log is still complete, compaction is retried after the next commit
+            Log.e(TAG, "Error compacting game state: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void load() {
+        try {
+            int records = RosterJournal.readFrames(logFile, this::applyFrame);
+            compactedSize = RosterJournal.FRAME_HEADER_SIZE + encode(values).remaining();
+            Log.d(TAG, "Loaded " + values.size() + " values from " + records + " records");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error loading game state: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private int applyFrame(ByteBuffer buffer, int frameEnd) throws IOException {
+        int records = 0;
+        while (buffer.position() < frameEnd) {
+            byte type = buffer.get();
+            String key = readString(buffer, buffer.getShort() & 0xFFFF);
+            switch (type) {
+                case TYPE_REMOVED:
+                    values.remove(key);
+                    break;
+                case TYPE_INT:
+                    values.put(key, buffer.getInt());
+                    break;
+                case TYPE_LONG:
+                    values.put(key, buffer.getLong());
+                    break;
+                case TYPE_STRING:
+                    values.put(key, readString(buffer, buffer.getInt()));
+                    break;
+                case TYPE_BOOLEAN:
+                    values.put(key, buffer.get() != 0);
+                    break;
+                case TYPE_BYTES: {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    values.put(key, bytes);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown game state value type: " + type);
+            }
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Copy the old SharedPreferences files into the store in one commit that also marks
+     * the migration done, then delete them
+     */
+    private void migrateSharedPreferences(Context context) {
+        Transaction transaction = edit();
+        transaction.putBoolean(MIGRATED_KEY, true);
+        for (String name : LEGACY_PREFS_NAMES) {
+            SharedPreferences prefs = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Integer || value instanceof Long
+                        || value instanceof String || value instanceof Boolean) {
+                    transaction.changes.put(entry.getKey(), value);
+                } else {
+                    Log.w(TAG, "Not migrating " + name + "/" + entry.getKey() + " of unsupported type");
+                }
+            }
+        }
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            // Keep the old files, migration runs again on the next start
+            Log.e(TAG, "Error migrating preferences: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        for (String name : LEGACY_PREFS_NAMES) {
+            context.deleteSharedPreferences(name);
+        }
+        Log.d(TAG, "Migrated " + (transaction.changes.size() - 1) + " preferences");
+    }
+
+    @VisibleForTesting
+    void closeLog() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        outputStream = null;
+    }
+
+    private static ByteBuffer encode(Map<String, Object> changes) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            byte[] key = change.getKey().getBytes(StandardCharsets.UTF_8);
+            Object value = change.getValue();
+            byte[] data = value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8)
+                    : value instanceof byte[] ? (byte[]) value : null;
+
+            buffer = ensureCapacity(buffer, 1 + 2 + key.length + 8 + (data != null ? data.length : 0));
+            if (value == REMOVED) {
+                buffer.put(TYPE_REMOVED);
+            } else if (value instanceof Integer) {
+                buffer.put(TYPE_INT);
+            } else if (value instanceof Long) {
+                buffer.put(TYPE_LONG);
+            } else if (value instanceof String) {
+                buffer.put(TYPE_STRING);
+            } else if (value instanceof byte[]) {
+                buffer.put(TYPE_BYTES);
+            } else {
+                buffer.put(TYPE_BOOLEAN);
+            }
+            buffer.putShort((short) key.length).put(key);
+
+            if (value instanceof Integer) {
+                buffer.putInt((Integer) value);
+            } else if (value instanceof Long) {
+                buffer.putLong((Long) value);
+            } else if (data != null) {
+                buffer.putInt(data.length).put(data);
+            } else if (value instanceof Boolean) {
+                buffer.put((byte) ((Boolean) value ? 1 : 0));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Changes committed to the store as one atomic write. Later changes to a key replace
+     * earlier ones in the same transaction. Not thread-safe.
+     */
+    public final class Transaction {
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+
+        private Transaction() {
+        }
+
+        public Transaction putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        public Transaction putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        public Transaction putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * @param key Key
+         * @param value Value, null removes the key
+         */
+        public Transaction putString(String key, String value) {
+            changes.put(key, value != null ? value : REMOVED);
+            return this;
+        }
+
+        /**
+         * @param key Key
+         * @param value Value, kept by the transaction and the store, null removes the key
+         */
+        public Transaction putBytes(String key, byte[] value) {
+            changes.put(key, value != null ? value : REMOVED);
+            return this;
+        }
+
+        public Transaction remove(String key) {
+            changes.put(key, REMOVED);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        /**
+         * Write every change as one frame and sync it, then make the changes visible
+         * @throws IOException if the changes could not be written, none of them are applied
+         */
+        public void commit() throws IOException {
+            GameStateStore.this.commit(changes);
+        }
+    }
+}
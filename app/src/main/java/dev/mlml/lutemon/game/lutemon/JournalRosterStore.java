@@ -0,0 +1,205 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Default roster backend: a binary snapshot plus an append-only journal of changes.
+ * Once the journal grows past a threshold it is rotated and folded into a new snapshot
+ * on a background thread.
+ */
+final class JournalRosterStore implements RosterStore {
+    private static final String TAG = "JournalRosterStore";
+    private static final String SNAPSHOT_FILENAME = "lutemons.bin";
+    private static final String JOURNAL_FILENAME = "lutemons.journal";
+    private static final String COMPACTING_JOURNAL_FILENAME = "lutemons.journal.old";
+    private static final String COMPACTED_FILENAME = "lutemons.bin.compact";
+
+    // Journal size at which it is folded into a fresh snapshot in the background
+    private static final long COMPACTION_THRESHOLD_BYTES = 256 * 1024;
+
+    private static final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor();
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File compactingFile;
+    private final File compactedFile;
+    private final RosterJournal journal;
+
+    // Guarded by this
+    private boolean compactionRunning = false;
+    private int snapshotGeneration = 0;
+    // File stamp after the last read or write by this store
+    private long knownStamp = 0;
+
+    JournalRosterStore(File filesDir) {
+        snapshotFile = new File(filesDir, SNAPSHOT_FILENAME);
+        journalFile = new File(filesDir, JOURNAL_FILENAME);
+        compactingFile = new File(filesDir, COMPACTING_JOURNAL_FILENAME);
+        compactedFile = new File(filesDir, COMPACTED_FILENAME);
+        journal = new RosterJournal(journalFile);
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized boolean exists() {
+        return snapshotFile.exists() || journalFile.exists() || compactingFile.exists();
+    }
+
+    @Override
+    public synchronized boolean isModifiedOnDisk() {
+        return stamp() != knownStamp;
+    }
+
+    @Override
+    public synchronized Map<String, Lutemon> load() throws IOException {
+        Map<String, Lutemon> roster = new LinkedHashMap<>();
+        if (snapshotFile.exists()) {
+            readSnapshot(snapshotFile, roster);
+        }
+
+        boolean interruptedCompaction = compactingFile.exists() && !compactionRunning;
+        int replayed = RosterJournal.replay(compactingFile, roster)
+                + RosterJournal.replay(journalFile, roster);
+        Log.d(TAG, "Replayed " + replayed + " journal entries");
+
+        if (interruptedCompaction) {
+            Log.d(TAG, "Finishing interrupted compaction");
+            rewrite(roster.values());
+        }
+        knownStamp = stamp();
+        return roster;
+    }
+
+    @Override
+    public synchronized MappedRoster map() throws IOException {
+        // An interrupted compaction is finished by load
+        if (!snapshotFile.exists() || (compactingFile.exists() && !compactionRunning)) {
+            return null;
+        }
+        ByteBuffer buffer = RosterFile.map(snapshotFile);
+        MappedRoster roster = MappedRoster.create(buffer, RosterFile.MAPPED_FORMAT, RosterFile.indexRecords(buffer));
+        if (roster != null) {
+            int replayed = RosterJournal.replay(compactingFile, roster)
+                    + RosterJournal.replay(journalFile, roster);
+            Log.d(TAG, "Replayed " + replayed + " journal entries onto the mapped snapshot");
+        }
+        knownStamp = stamp();
+        return roster;
+    }
+
+    @Override
+    public synchronized void save(List<Change> changes) throws IOException {
+        journal.append(RosterJournal.Batch.of(changes));
+
+        if (journal.size() >= COMPACTION_THRESHOLD_BYTES) {
+            startCompaction();
+        }
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized void rewrite(Collection<Lutemon> roster) throws IOException {
+        RosterFile.write(snapshotFile, roster);
+
+        journal.close();
+        deleteIfExists(journalFile);
+        deleteIfExists(compactingFile);
+
+        // Any compaction still in flight is now based on an outdated snapshot
+        snapshotGeneration++;
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized void delete() {
+        journal.close();
+        deleteIfExists(snapshotFile);
+        deleteIfExists(journalFile);
+        deleteIfExists(compactingFile);
+        snapshotGeneration++;
+        knownStamp = stamp();
+    }
+
+    /**
+     * Rotate the journal and fold the rotated part into a new snapshot in the background
+     */
+    private void startCompaction() {
+        if (compactionRunning || compactingFile.exists()) {
+            // A previous compaction is still running or failed, next load recovers it
+            return;
+        }
+
+        journal.close();
+        if (!journalFile.renameTo(compactingFile)) {
+            Log.e(TAG, "Could not rotate roster journal");
+            return;
+        }
+
+        compactionRunning = true;
+        int generation = snapshotGeneration;
+        compactionExecutor.execute(() -> compact(generation));
+    }
+
+    /**
+     * Build a new snapshot from the current one plus the rotated journal
+     * @param generation Snapshot generation the compaction was started from
+     */
+    private void compact(int generation) {
+        try {
+            Map<String, Lutemon> roster = new LinkedHashMap<>();
+            if (snapshotFile.exists()) {
+                readSnapshot(snapshotFile, roster);
+            }
+            RosterJournal.replay(compactingFile, roster);
+            RosterFile.write(compactedFile, roster.values());
+
+            synchronized (this) {
+                if (generation != snapshotGeneration) {
+                    deleteIfExists(compactedFile);
+                } else if (compactedFile.renameTo(snapshotFile)) {
+                    deleteIfExists(compactingFile);
+                    knownStamp = stamp();
+                    Log.d(TAG, "Compacted roster journal into " + roster.size() + " Lutemons");
+                } else {
+                    Log.e(TAG, "Could not replace roster snapshot after compaction");
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "IO error while compacting Lutemons: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                compactionRunning = false;
+            }
+        }
+    }
+
+    private long stamp() {
+        long stamp = RosterStore.fileStamp(17, snapshotFile);
+        stamp = RosterStore.fileStamp(stamp, journalFile);
+        return RosterStore.fileStamp(stamp, compactingFile);
+    }
+
+    private static void readSnapshot(File file, Map<String, Lutemon> roster) throws IOException {
+        for (Lutemon lutemon : RosterFile.read(file)) {
+            String key = lutemon.getId() != null ? lutemon.getId() : "#" + roster.size();
+            roster.put(key, lutemon);
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Could not delete " + file.getName());
+        }
+    }
+}
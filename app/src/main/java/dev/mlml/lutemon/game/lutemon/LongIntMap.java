@@ -0,0 +1,129 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from non-negative long keys to int values, without boxing
+ */
+final class LongIntMap {
+    private static final long EMPTY = -1;
+    private static final long REMOVED = -2;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    // Live plus removed entries, drives resizing
+    private int used = 0;
+
+    LongIntMap() {
+        this(16);
+    }
+
+    LongIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key Non-negative key
+     * @return The value, or -1 if the key is absent
+     */
+    int get(long key) {
+        int index = find(key);
+        return index < 0 ? -1 : values[index];
+    }
+
+    /**
+     * @param key Non-negative key
+     * @param value Value to store
+     */
+    void put(long key, int value) {
+        int index = find(key);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if ((used + 1) * 4 > keys.length * 3) {
+            rehash(capacityFor(size + 1));
+        }
+
+        int mask = keys.length - 1;
+        index = mix(key) & mask;
+        while (keys[index] >= 0) {
+            index = (index + 1) & mask;
+        }
+        if (keys[index] == EMPTY) {
+            used++;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * @param key Key to remove
+     * @return The removed value, or -1 if the key was absent
+     */
+    int remove(long key) {
+        int index = find(key);
+        if (index < 0) {
+            return -1;
+        }
+        keys[index] = REMOVED;
+        size--;
+        return values[index];
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] >= 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 < expectedSize * 4 + 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
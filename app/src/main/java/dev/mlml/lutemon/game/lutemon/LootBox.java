@@ -4,7 +4,6 @@ import android.content.Context;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 public class LootBox {
     public enum Type {
@@ -13,9 +12,8 @@ public class LootBox {
         LEGENDARY   // Guaranteed high-quality Lutemon
     }
     
-    private static final Random random = new Random();
-    
     private final Type type;
+    private final RandomSource random;
     private final int lutemonCount; // Number of Lutemons in the box
     
     /**
@@ -23,7 +21,17 @@ public class LootBox {
      * @param type The type of loot box
      */
     public LootBox(Type type) {
+        this(type, new RandomSource());
+    }
+    
+    /**
+     * Creates a new LootBox whose contents are drawn from a given stream
+     * @param type The type of loot box
+     * @param random Random stream of this box, a stream with the same seed yields the same contents
+     */
+    public LootBox(Type type, RandomSource random) {
         this.type = type;
+        this.random = random;
         
         switch (type) {
             case BASIC:
@@ -50,35 +58,32 @@ public class LootBox {
         List<Lutemon> rewards = new ArrayList<>();
         LutemonStorage storage = LutemonStorage.getInstance();
         
-        List<Lutemon> schemaLutemons = storage.loadLutemonSchemas(context);
+        SpeciesRegistry registry = SpeciesRegistry.getInstance(context);
         
         for (int i = 0; i < lutemonCount; i++) {
-            Lutemon reward = generateRandomLutemon(schemaLutemons);
+            Lutemon reward = generateRandomLutemon(registry);
             rewards.add(reward);
             
             storage.addLutemon(reward);
         }
         
-        storage.saveLutemons(context);
-        
         return rewards;
     }
     
     /**
      * Generate a random Lutemon based on loot box type
-     * @param schemaLutemons List of template Lutemons from schema
+     * @param registry Species to pick the template from
      * @return A new randomly generated Lutemon
      */
-    private Lutemon generateRandomLutemon(List<Lutemon> schemaLutemons) {
-        if (schemaLutemons == null || schemaLutemons.isEmpty()) {
+    private Lutemon generateRandomLutemon(SpeciesRegistry registry) {
+        Species template = registry.getRandom(random);
+        if (template == null) {
             return generateFallbackLutemon();
         }
-        
-        Lutemon template = schemaLutemons.get(random.nextInt(schemaLutemons.size()));
 
         int attack = template.getAttack();
         int defense = template.getDefense();
-        int health = template.getMaxHealth();
+        int health = template.getHealth();
         int speed = template.getSpeed();
         
         double statMultiplier;
@@ -102,9 +107,10 @@ public class LootBox {
         health = (int)(health * statMultiplier);
         speed = (int)(speed * statMultiplier);
         
-        String name = template.getName() + " " + (random.nextInt(100) + 1);
+        int nameNumber = random.nextInt(100) + 1;
         
-        return new Lutemon(template.getId(), name, template.getColor(), attack, defense, health, speed);
+        // Instance ID is assigned by LutemonStorage, the name is "<species name> <nameNumber>"
+        return new Lutemon(null, template, nameNumber, attack, defense, health, speed, 0);
     }
     
     /**
@@ -142,6 +148,6 @@ public class LootBox {
         int health = (baseValue * 3) + random.nextInt(20);
         int speed = baseValue + random.nextInt(10);
         
-        return new Lutemon(schemaId, name, color, attack, defense, health, speed);
+        return new Lutemon(null, schemaId, name, color, attack, defense, health, speed, 0);
     }
 } 
\ No newline at end of file
@@ -21,16 +21,19 @@ public class LootBoxEffect {
     };
     
     /**
-     * Calculate the rarity of a Lutemon based on its stats
+     * Get the rarity of a Lutemon based on its stats
      * @param lutemon The Lutemon to evaluate
-     * @return The calculated rarity
+     * @return The rarity, cached on the Lutemon since its stats last changed
      */
     public static Rarity calculateRarity(Lutemon lutemon) {
-        int attack = lutemon.getAttack();
-        int defense = lutemon.getDefense();
-        int health = lutemon.getMaxHealth();
-        int speed = lutemon.getSpeed();
-        
+        return lutemon.getRarity();
+    }
+    
+    /**
+     * Calculate the rarity of a set of stats
+     * @return The calculated rarity
+     */
+    static Rarity calculateRarity(int attack, int defense, int health, int speed) {
         if (attack >= RARITY_THRESHOLDS[3][0] || 
             defense >= RARITY_THRESHOLDS[3][1] || 
             health >= RARITY_THRESHOLDS[3][2] || 
@@ -57,7 +60,7 @@ public class LootBoxEffect {
      * @return Description string highlighting strong stats
      */
     public static String getRarityDescription(Lutemon lutemon) {
-        Rarity rarity = calculateRarity(lutemon);
+        Rarity rarity = lutemon.getRarity();
         StringBuilder description = new StringBuilder();
         
         switch (rarity) {
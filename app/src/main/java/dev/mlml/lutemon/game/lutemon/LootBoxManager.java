@@ -1,15 +1,16 @@
 package dev.mlml.lutemon.game.lutemon;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.Log;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Manages the player's loot boxes, currency, and reward system
  */
 public class LootBoxManager {
-    private static final String PREFS_NAME = "LutemonPrefs";
+    private static final String TAG = "LootBoxManager";
     private static final String KEY_CURRENCY = "playerCurrency";
     
     private static final int BASIC_BOX_COST = 100;
@@ -19,6 +20,8 @@ public class LootBoxManager {
     private static LootBoxManager instance;
     
     private int playerCurrency;
+    // Each opened box gets its own stream split from this one
+    private final RandomSource random = new RandomSource();
     
     private LootBoxManager() {
     }
@@ -56,6 +59,7 @@ public class LootBoxManager {
      */
     public void addCurrency(int amount) {
         playerCurrency += amount;
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.CURRENCY);
     }
 
     
@@ -99,26 +103,31 @@ public class LootBoxManager {
             return null;
         }
         
-        playerCurrency -= cost;
-        savePlayerCurrency(context);
-        
-        StatsManager statsManager = StatsManager.getInstance();
-        statsManager.incrementTotalLootBoxesOpened();
-        
-        LootBox lootBox = new LootBox(type);
-        List<Lutemon> rewards = lootBox.open(context);
-        
-        if (rewards != null && !rewards.isEmpty()) {
-            statsManager.incrementTotalLutemonsCollected(rewards.size());
+        // Payment, rewards and stats are saved together
+        PersistenceManager persistenceManager = PersistenceManager.getInstance();
+        persistenceManager.beginAction();
+        try {
+            playerCurrency -= cost;
+            persistenceManager.markDirty(PersistenceManager.Component.CURRENCY);
             
-            for (Lutemon lutemon : rewards) {
-                statsManager.checkAndUpdateHighestLevel(lutemon.getLevel());
+            StatsManager statsManager = StatsManager.getInstance();
+            statsManager.incrementTotalLootBoxesOpened();
+            
+            LootBox lootBox = new LootBox(type, random.split());
+            List<Lutemon> rewards = lootBox.open(context);
+            
+            if (rewards != null && !rewards.isEmpty()) {
+                statsManager.incrementTotalLutemonsCollected(rewards.size());
+                
+                for (Lutemon lutemon : rewards) {
+                    statsManager.checkAndUpdateHighestLevel(lutemon.getLevel());
+                }
             }
+            
+            return rewards;
+        } finally {
+            persistenceManager.endAction();
         }
-        
-        statsManager.saveStats(context);
-        
-        return rewards;
     }
     
     /**
@@ -130,7 +139,7 @@ public class LootBoxManager {
         StatsManager statsManager = StatsManager.getInstance();
         statsManager.incrementTotalLootBoxesOpened();
         
-        LootBox lootBox = new LootBox(LootBox.Type.BASIC);
+        LootBox lootBox = new LootBox(LootBox.Type.BASIC, random.split());
         List<Lutemon> rewards = lootBox.open(context);
         
         if (rewards != null && !rewards.isEmpty()) {
@@ -141,26 +150,35 @@ public class LootBoxManager {
             }
         }
         
-        statsManager.saveStats(context);
-        
         return rewards;
     }
     
     /**
-     * Load the player's currency from SharedPreferences
+     * Load the player's currency from the game state store
      */
     private void loadPlayerCurrency(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        playerCurrency = prefs.getInt(KEY_CURRENCY, 800); // Default starting currency
+        playerCurrency = GameStateStore.getInstance(context).getInt(KEY_CURRENCY, 800); // Default starting currency
     }
     
     /**
-     * Save the player's currency to SharedPreferences
+     * Save the player's currency to the game state store right away
      */
     public void savePlayerCurrency(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putInt(KEY_CURRENCY, playerCurrency);
-        editor.apply();
+        GameStateStore.Transaction transaction = GameStateStore.getInstance(context).edit();
+        writePlayerCurrency(transaction);
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving currency: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Add the player's currency to a game state transaction
+     * @param transaction Transaction to write to
+     */
+    void writePlayerCurrency(GameStateStore.Transaction transaction) {
+        transaction.putInt(KEY_CURRENCY, playerCurrency);
     }
 } 
\ No newline at end of file
@@ -5,83 +5,220 @@ import androidx.annotation.NonNull;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Locale;
-import java.util.Random;
 
 public class Lutemon {
+    /**
+     * Name number of a Lutemon named just like its species
+     */
+    public static final int NO_NAME_NUMBER = -1;
+
     private String id;
-    private String name;
-    private String color;
+    // Shared flyweight holding the schema ID, color, base name and art key
+    private final Species species;
+    // Name when there is no name number, null otherwise
+    private final String nickname;
+    private final int nameNumber;
     private int attack;
     private int defense;
     private int maxHealth;
     private int currentHealth;
     private int speed;
     private int experience;
-    private static final Random random = new Random();
+    // Level for the current experience, 0 until computed
+    private int cachedLevel = 0;
+    // Rarity for the current stats, recomputed whenever a stat changes
+    private LootBoxEffect.Rarity rarity;
+    private ChangeListener changeListener;
 
     public static final int BASE_EXPERIENCE_THRESHOLD = 100;
     public static final double EXPERIENCE_GROWTH_FACTOR = 1.5;
     private static final int STAT_INCREASE_PER_LEVEL = 2;
     
-    private static final double CRITICAL_HIT_CHANCE = 0.15;
-    private static final double CRITICAL_HIT_MULTIPLIER = 1.5;
-    private static final double EXPERIENCE_MULTIPLIER = 0.01;
+    // Damage formula, DamageDistribution reads these to stay in step with attack
+    static final double CRITICAL_HIT_CHANCE = 0.15;
+    static final double CRITICAL_HIT_MULTIPLIER = 1.5;
+    static final double EXPERIENCE_MULTIPLIER = 0.01;
     private static final double SPEED_ADVANTAGE_MULTIPLIER = 0.05;
-    private static final double TYPE_ADVANTAGE_MULTIPLIER = 0.2;
-    private static final double ATTACK_VARIATION = 0.2;
-    
-    private static final String[][] TYPE_ADVANTAGES = {
-            {"Red", "Green"},      // Red is strong against Green
-            {"Green", "Blue"},     // Green is strong against Blue
-            {"Blue", "Red"},       // Blue is strong against Red
-            {"Yellow", "Blue"},    // Yellow is strong against Blue
-            {"Purple", "Yellow"},  // Purple is strong against Yellow
-            {"Green", "Purple"},   // Green is strong against Purple
-            {"Blue", "Yellow"}     // Blue is weak against Yellow (reverse advantage)
-    };
+    static final double TYPE_ADVANTAGE_MULTIPLIER = 0.2;
+    static final double ATTACK_VARIATION = 0.2;
 
     public Lutemon(String id, String name, String color, int attack, int defense, int health, int speed) {
+        this(id, id, name, color, attack, defense, health, speed, 0);
+    }
+
+    public Lutemon(String id, String name, String color, int attack, int defense, int health, int speed, int experience) {
+        this(id, id, name, color, attack, defense, health, speed, experience);
+    }
+
+    /**
+     * Create a Lutemon whose instance ID differs from the species it was generated from
+     * @param id Unique instance ID (assigned by LutemonStorage when null)
+     * @param schemaId Species key from the schema (e.g. "fire_1")
+     */
+    public Lutemon(String id, String schemaId, String name, String color, int attack, int defense, int health, int speed, int experience) {
         this.id = id;
-        this.name = name;
-        this.color = color;
+        this.species = SpeciesRegistry.resolve(normalizeSchemaId(schemaId), color);
+        String speciesName = species.getName();
+        if (name != null && name.equals(speciesName)) {
+            // Share the species' string
+            this.nickname = speciesName;
+            this.nameNumber = NO_NAME_NUMBER;
+        } else {
+            int number = parseNameNumber(name, speciesName);
+            this.nickname = number == NO_NAME_NUMBER ? name : null;
+            this.nameNumber = number;
+        }
         this.attack = attack;
         this.defense = defense;
         this.maxHealth = health;
         this.currentHealth = health;
         this.speed = speed;
-        this.experience = 0;
+        this.experience = experience;
+        updateRarity();
     }
 
-    public Lutemon(String id, String name, String color, int attack, int defense, int health, int speed, int experience) {
-        this(id, name, color, attack, defense, health, speed);
+    /**
+     * Create a Lutemon of a known species
+     * @param id Unique instance ID (assigned by LutemonStorage when null)
+     * @param species The species
+     * @param nameNumber Number appended to the species name, NO_NAME_NUMBER for none
+     */
+    public Lutemon(String id, Species species, int nameNumber, int attack, int defense, int health, int speed, int experience) {
+        this.id = id;
+        this.species = species;
+        this.nickname = nameNumber < 0 ? species.getName() : null;
+        this.nameNumber = nameNumber < 0 ? NO_NAME_NUMBER : nameNumber;
+        this.attack = attack;
+        this.defense = defense;
+        this.maxHealth = health;
+        this.currentHealth = health;
+        this.speed = speed;
         this.experience = experience;
+        updateRarity();
+    }
+
+    /**
+     * Create a detached copy for simulations, it has no change listener so battles fought
+     * with it are never saved
+     * @return Copy with the same species, name, stats and current health
+     */
+    Lutemon copy() {
+        return new Lutemon(this);
+    }
+
+    private Lutemon(Lutemon other) {
+        this.id = other.id;
+        this.species = other.species;
+        this.nickname = other.nickname;
+        this.nameNumber = other.nameNumber;
+        this.attack = other.attack;
+        this.defense = other.defense;
+        this.maxHealth = other.maxHealth;
+        this.currentHealth = other.currentHealth;
+        this.speed = other.speed;
+        this.experience = other.experience;
+        this.cachedLevel = other.cachedLevel;
+        this.rarity = other.rarity;
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * Listener notified whenever a persisted field of this Lutemon changes
+     */
+    interface ChangeListener {
+        void onLutemonChanged(Lutemon lutemon);
+    }
+
+    void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.onLutemonChanged(this);
+        }
+    }
+
+    /**
+     * Assign the instance ID, only LutemonStorage hands these out
+     * @param id The new unique instance ID
+     */
+    void assignId(String id) {
+        this.id = id;
+    }
+
     /**
      * Get the schema ID for this Lutemon, used for loading images
      * @return The schema ID (e.g., "fire_1", "water_1") or "unknown" if not found
      */
     public String getSchemaId() {
-        // If the ID is already in schema format (e.g., fire_1), use it
-        if (id != null && id.contains("_")) {
-            return id;
-        }
-        
-        // Default to "unknown"
-        return "unknown";
+        return species.getId();
+    }
+
+    /**
+     * @return The species this Lutemon belongs to, shared with every Lutemon of the species
+     */
+    public Species getSpecies() {
+        return species;
+    }
+
+    /**
+     * @return Key of the artwork to show for this Lutemon
+     */
+    public String getArtKey() {
+        return species.getArtKey();
     }
 
     public String getName() {
-        return name;
+        return nameNumber == NO_NAME_NUMBER ? nickname : species.getName() + " " + nameNumber;
     }
 
     public String getColor() {
-        return color;
+        return species.getColor();
+    }
+
+    /**
+     * @return Type ID of this Lutemon's color in the current type chart
+     */
+    public int getTypeId() {
+        return species.getTypeId(TypeChart.getCurrent());
+    }
+
+    private static String normalizeSchemaId(String schemaId) {
+        // If the species key is in schema format (e.g., fire_1), use it
+        if (schemaId != null && schemaId.contains("_")) {
+            return schemaId;
+        }
+        
+        // Default to "unknown"
+        return "unknown";
+    }
+
+    /**
+     * @param name Full name
+     * @param speciesName Base name of the species
+     * @return n if the name is exactly "speciesName n", NO_NAME_NUMBER otherwise
+     */
+    private static int parseNameNumber(String name, String speciesName) {
+        int start = speciesName.length() + 1;
+        int digits = name != null ? name.length() - start : 0;
+        // Only numbers that print back to the same text, without leading zeros or overflow
+        if (speciesName.isEmpty() || digits < 1 || digits > 9 || !name.startsWith(speciesName)
+                || name.charAt(start - 1) != ' ' || (name.charAt(start) == '0' && digits > 1)) {
+            return NO_NAME_NUMBER;
+        }
+        int number = 0;
+        for (int i = start; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_NAME_NUMBER;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
     }
 
     public int getAttack() {
@@ -90,6 +227,8 @@ public class Lutemon {
 
     public void setAttack(int attack) {
         this.attack = attack;
+        updateRarity();
+        notifyChanged();
     }
 
     public int getDefense() {
@@ -98,6 +237,8 @@ public class Lutemon {
 
     public void setDefense(int defense) {
         this.defense = defense;
+        updateRarity();
+        notifyChanged();
     }
 
     public int getMaxHealth() {
@@ -106,6 +247,8 @@ public class Lutemon {
 
     public void setMaxHealth(int maxHealth) {
         this.maxHealth = maxHealth;
+        updateRarity();
+        notifyChanged();
     }
 
     public int getCurrentHealth() {
@@ -114,10 +257,12 @@ public class Lutemon {
 
     public void setCurrentHealth(int currentHealth) {
         this.currentHealth = Math.min(currentHealth, maxHealth);
+        notifyChanged();
     }
 
     public void heal() {
         this.currentHealth = maxHealth;
+        notifyChanged();
     }
 
     public int getSpeed() {
@@ -126,6 +271,19 @@ public class Lutemon {
 
     public void setSpeed(int speed) {
         this.speed = speed;
+        updateRarity();
+        notifyChanged();
+    }
+
+    /**
+     * @return Rarity tier of the current stats, cached so it costs nothing to read
+     */
+    public LootBoxEffect.Rarity getRarity() {
+        return rarity;
+    }
+
+    private void updateRarity() {
+        rarity = LootBoxEffect.calculateRarity(attack, defense, maxHealth, speed);
     }
 
     public int getExperience() {
@@ -134,10 +292,14 @@ public class Lutemon {
 
     public void setExperience(int experience) {
         this.experience = experience;
+        cachedLevel = 0;
+        notifyChanged();
     }
 
     public void addExperience(int amount) {
         this.experience += amount;
+        cachedLevel = 0;
+        notifyChanged();
     }
     
     /**
@@ -145,16 +307,11 @@ public class Lutemon {
      * @return The current level (starts from 1)
      */
     public int getLevel() {
-        int level = 1;
-        double threshold = BASE_EXPERIENCE_THRESHOLD;
-        int totalExp = 0;
-        
-        while (totalExp + threshold <= experience) {
-            totalExp += threshold;
-            level++;
-            threshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1);
+        int level = cachedLevel;
+        if (level == 0) {
+            level = ExperienceCurve.levelFor(experience);
+            cachedLevel = level;
         }
-        
         return level;
     }
     
@@ -164,16 +321,9 @@ public class Lutemon {
      */
     public double getLevelProgress() {
         int level = getLevel();
-        double currentLevelThreshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1);
-        double prevLevelTotalExp = 0;
-        
-        for (int i = 1; i < level; i++) {
-            prevLevelTotalExp += BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, i - 1);
-        }
+        double currentLevelExp = experience - ExperienceCurve.experienceBeforeLevel(level);
         
-        double currentLevelExp = experience - prevLevelTotalExp;
-        
-        return currentLevelExp / currentLevelThreshold;
+        return currentLevelExp / ExperienceCurve.levelThreshold(level);
     }
     
     /**
@@ -181,8 +331,7 @@ public class Lutemon {
      * @return Experience threshold for the next level
      */
     public int getNextLevelExperience() {
-        int level = getLevel();
-        return (int) (BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1));
+        return (int) ExperienceCurve.levelThreshold(getLevel());
     }
     
     /**
@@ -191,34 +340,52 @@ public class Lutemon {
      */
     public int getExperienceToNextLevel() {
         int level = getLevel();
-        double threshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1);
-        double prevLevelTotalExp = 0;
-        
-        for (int i = 1; i < level; i++) {
-            prevLevelTotalExp += BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, i - 1);
-        }
+        double threshold = ExperienceCurve.levelThreshold(level);
         
-        return (int) (threshold - (experience - prevLevelTotalExp));
+        return (int) (threshold - (experience - ExperienceCurve.experienceBeforeLevel(level)));
     }
 
     public boolean takeDamage(int damage) {
         int actualDamage = Math.max(1, damage - defense);
         currentHealth = Math.max(0, currentHealth - actualDamage);
+        notifyChanged();
         return currentHealth > 0;
     }
 
-    public AttackResult attack(Lutemon target) {
+    /**
+     * Roll an attack against another Lutemon, the target is not damaged
+     * @param target The defending Lutemon
+     * @param random Random stream of the battle
+     * @return Damage and modifiers of the attack
+     */
+    public AttackResult attack(Lutemon target, RandomSource random) {
+        AttackOutcome outcome = new AttackOutcome();
+        attack(target, random, outcome);
+        return new AttackResult(outcome.getDamage(), outcome.isCritical(), outcome.hasTypeAdvantage());
+    }
+    
+    /**
+     * Roll an attack against another Lutemon without allocating, the target is not damaged
+     * @param target The defending Lutemon
+     * @param random Random stream of the battle
+     * @param outcome Holder the damage and modifiers are written to
+     */
+    public void attack(Lutemon target, RandomSource random, AttackOutcome outcome) {
         double damage = attack;
         boolean isCritical = false;
         
         double experienceBonus = attack * (experience * EXPERIENCE_MULTIPLIER);
         damage += experienceBonus;
         
+        TypeChart chart = TypeChart.getCurrent();
+        int attackerType = species.getTypeId(chart);
+        int defenderType = target.species.getTypeId(chart);
+        
         double typeBonus = 0;
-        if (hasTypeAdvantage(this.color, target.getColor())) {
+        if (chart.hasAdvantage(attackerType, defenderType)) {
             typeBonus = attack * TYPE_ADVANTAGE_MULTIPLIER;
             damage += typeBonus;
-        } else if (hasTypeAdvantage(target.getColor(), this.color)) {
+        } else if (chart.hasAdvantage(defenderType, attackerType)) {
             damage -= attack * TYPE_ADVANTAGE_MULTIPLIER;
         }
         
@@ -232,38 +399,20 @@ public class Lutemon {
         
         int finalDamage = Math.max(1, (int)Math.round(damage));
         
-        return new AttackResult(finalDamage, isCritical, typeBonus > 0);
+        outcome.set(finalDamage, isCritical, typeBonus > 0);
     }
     
-    private boolean hasTypeAdvantage(String attackerColor, String defenderColor) {
-        for (String[] advantage : TYPE_ADVANTAGES) {
-            if (advantage[0].equals(attackerColor) && advantage[1].equals(defenderColor)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public String toFileString() {
-        return String.format(Locale.ENGLISH, "%s,%s,%s,%d,%d,%d,%d,%d",
-                id, name, color, attack, defense, maxHealth, speed, experience);
+        return new RosterCsvCodec().encode(this).toString();
     }
 
+    /**
+     * Parse a row written by toFileString or by older versions of the app
+     * @param fileString One CSV row
+     * @return The Lutemon, or null if the row is malformed
+     */
     public static Lutemon fromFileString(String fileString) {
-        String[] parts = fileString.split(",");
-        if (parts.length >= 8) {
-            return new Lutemon(
-                    parts[0], // id
-                    parts[1], // name
-                    parts[2], // color
-                    Integer.parseInt(parts[3]), // attack
-                    Integer.parseInt(parts[4]), // defense
-                    Integer.parseInt(parts[5]), // health
-                    Integer.parseInt(parts[6]), // speed
-                    Integer.parseInt(parts[7])  // experience
-            );
-        }
-        return null;
+        return new RosterCsvCodec().decode(fileString);
     }
 
     /** @noinspection CallToPrintStackTrace*/
@@ -271,8 +420,9 @@ public class Lutemon {
         JSONObject json = new JSONObject();
         try {
             json.put("id", id);
-            json.put("name", name);
-            json.put("color", color);
+            json.put("schema_id", getSchemaId());
+            json.put("name", getName());
+            json.put("color", getColor());
             json.put("attack", attack);
             json.put("defense", defense);
             json.put("health", maxHealth);
@@ -288,6 +438,7 @@ public class Lutemon {
     public static Lutemon fromJson(JSONObject json) {
         try {
             String id = json.getString("id");
+            String schemaId = json.has("schema_id") ? json.getString("schema_id") : id;
             String name = json.getString("name");
             String color = json.getString("color");
             int attack = json.getInt("attack");
@@ -296,7 +447,7 @@ public class Lutemon {
             int speed = json.getInt("speed");
             int experience = json.has("experience") ? json.getInt("experience") : 0;
             
-            return new Lutemon(id, name, color, attack, defense, health, speed, experience);
+            return new Lutemon(id, schemaId, name, color, attack, defense, health, speed, experience);
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -306,7 +457,7 @@ public class Lutemon {
     @NonNull
     @Override
     public String toString() {
-        return name + " (" + color + ") - HP: " + currentHealth + "/" + maxHealth +
+        return getName() + " (" + getColor() + ") - HP: " + currentHealth + "/" + maxHealth +
                 ", ATK: " + attack + ", DEF: " + defense + ", SPD: " + speed + 
                 ", LVL: " + getLevel() + ", XP: " + experience;
     }
@@ -1,33 +1,73 @@
 package dev.mlml.lutemon.game.lutemon;
 
 import android.content.Context;
-import android.content.res.AssetManager;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 import java.util.UUID;
 
 public class LutemonStorage {
     private static final String TAG = "LutemonStorage";
-    private static final String SAVE_FILENAME = "lutemons.csv";
-    private static final String SCHEMA_FILENAME = "lutemon_schema.json";
-    private static List<Lutemon> lutemons = new ArrayList<>();
+    private static final String LEGACY_SAVE_FILENAME = "lutemons.csv";
+    // Game state key of the record of the last roster save, see saveLutemons
+    static final String SAVE_RECORD_KEY = "roster_save_record";
+    // Game state key of the next instance ID, so IDs of removed Lutemons are never reissued
+    private static final String NEXT_ID_KEY = "next_instance_id";
+    // Insertion ordered roster keyed by instance ID, gives O(1) lookup, insert and remove.
+    // While a roster is mapped it only holds the Lutemons added since, after the mapped rows.
+    private static final Map<String, Lutemon> lutemons = new LinkedHashMap<>();
+    // Saved roster mapped straight from disk, set instead of filling lutemons. Lutemons are
+    // only decoded once a row or lookup reaches them and removals only mask their rows,
+    // the roster is decoded as a whole only to rewrite it.
+    private static MappedRoster mappedRoster = null;
+    // Ordered snapshot handed out by getLutemons, rebuilt lazily after the roster changes
+    private static List<Lutemon> lutemonList = null;
+    // Column snapshot handed out by getColumns, rebuilt lazily after any roster change
+    private static RosterColumns rosterColumns = null;
+    // Sorted indexes for queries, built on the first query and then kept up to date
+    private static RosterIndex rosterIndex = null;
+    private static long nextInstanceId = 1;
+    // Mutations not yet saved, coalesced per instance ID in first-change order
+    private static final Map<String, Byte> pendingChanges = new LinkedHashMap<>();
+    private static final Lutemon.ChangeListener changeListener = LutemonStorage::lutemonChanged;
+    // Guards the roster and pending changes, saves run on the persistence thread.
+    // Lock order is fileLock before rosterLock.
+    private static final Object rosterLock = new Object();
+
+    // Guards the roster store below
+    private static final Object fileLock = new Object();
+    private static RosterStore store = null;
+    private static File storeDir = null;
     private static LutemonStorage instance = null;
 
+    /**
+     * On-disk roster formats
+     */
+    public enum Backend {
+        // Binary snapshot plus append-only journal
+        JOURNAL,
+        // Fixed-width slots rewritten in place
+        SLOTTED
+    }
+
     private LutemonStorage() {
     }
 
@@ -39,32 +79,139 @@ public class LutemonStorage {
     }
 
     public List<Lutemon> getLutemons() {
-        return lutemons;
+        synchronized (rosterLock) {
+            if (lutemonList == null) {
+                lutemonList = mappedRoster != null
+                        ? new MappedList(mappedRoster, mappedRoster.liveRows(), lutemons.values().toArray(new Lutemon[0]))
+                        : Collections.unmodifiableList(new ArrayList<>(lutemons.values()));
+            }
+            return lutemonList;
+        }
     }
 
-    public Lutemon getLutemonById(String id) {
-        for (Lutemon lutemon : lutemons) {
-            if (lutemon.getId().equals(id)) {
-                return lutemon;
+    /**
+     * Get the roster as primitive columns for bulk filters, sorts and aggregates.
+     * Mapped rows are read straight from the file, no Lutemons are decoded.
+     * @return Column snapshot in roster order, rebuilt only after the roster changed
+     */
+    public RosterColumns getColumns() {
+        synchronized (rosterLock) {
+            if (rosterColumns == null) {
+                RosterColumns.Builder builder;
+                if (mappedRoster != null) {
+                    builder = new RosterColumns.Builder(mappedRoster.liveSize() + lutemons.size());
+                    mappedRoster.readColumns(builder);
+                } else {
+                    builder = new RosterColumns.Builder(lutemons.size());
+                }
+                for (Lutemon lutemon : lutemons.values()) {
+                    builder.add(lutemon);
+                }
+                rosterColumns = builder.build();
             }
+            return rosterColumns;
+        }
+    }
+
+    /**
+     * Get the Lutemons with the highest values of a column, e.g. the strongest Green ones
+     * @param column Column to rank by
+     * @param color Color to restrict to, null for every color
+     * @param limit Maximum number of Lutemons
+     * @return Lutemons highest value first, equal values newest first
+     */
+    public List<Lutemon> getTopLutemons(RosterColumns.Column column, String color, int limit) {
+        synchronized (rosterLock) {
+            return resolveIds(getIndex().top(column, color, limit));
+        }
+    }
+
+    /**
+     * @param column Column to compare
+     * @param color Color to restrict to, null for every color
+     * @param min Smallest accepted value
+     * @param max Largest accepted value
+     * @return Lutemons with a value in [min, max], smallest value first
+     */
+    public List<Lutemon> getLutemonsInRange(RosterColumns.Column column, String color, int min, int max) {
+        synchronized (rosterLock) {
+            return resolveIds(getIndex().range(column, color, min, max));
+        }
+    }
+
+    /**
+     * @param column Column to sort by
+     * @param color Color to restrict to, null for every color
+     * @param descending true for largest first
+     * @return Lutemons sorted by the column, equal values oldest first when ascending
+     */
+    public List<Lutemon> getSortedLutemons(RosterColumns.Column column, String color, boolean descending) {
+        synchronized (rosterLock) {
+            return resolveIds(getIndex().sorted(column, color, descending));
+        }
+    }
+
+    /**
+     * Count the roster by rarity, kept up to date as Lutemons are added, changed and removed
+     * @return Number of Lutemons per rarity, indexed by LootBoxEffect.Rarity ordinal
+     */
+    public int[] getRarityCounts() {
+        synchronized (rosterLock) {
+            return getIndex().rarityCounts();
         }
-        return null;
     }
 
+    public Lutemon getLutemonById(String id) {
+        if (id == null) {
+            return null;
+        }
+        synchronized (rosterLock) {
+            return findLutemon(id);
+        }
+    }
+
+    /**
+     * Add a Lutemon to the roster, giving it a fresh instance ID if it does not
+     * already carry a unique one (e.g. it still uses its schema ID)
+     * @param lutemon The Lutemon to add
+     */
     public void addLutemon(Lutemon lutemon) {
-        lutemons.add(lutemon);
+        synchronized (rosterLock) {
+            registerLutemon(lutemon);
+            lutemonList = null;
+            if (rosterIndex != null) {
+                rosterIndex.put(parseInstanceId(lutemon.getId()), lutemon);
+            }
+        }
+        markChanged(lutemon.getId(), RosterStore.OP_PUT);
     }
 
     public void removeLutemon(String id) {
-        Lutemon lutemonToRemove = null;
-        for (Lutemon lutemon : lutemons) {
-            if (lutemon.getId().equals(id)) {
-                lutemonToRemove = lutemon;
-                break;
+        if (id == null) {
+            return;
+        }
+        Lutemon removed;
+        synchronized (rosterLock) {
+            removed = lutemons.remove(id);
+            if (removed == null && mappedRoster != null) {
+                long numericId = parseInstanceId(id);
+                int row = numericId < 0 ? -1 : mappedRoster.indexOf(numericId);
+                if (row >= 0) {
+                    removed = mappedRoster.get(row);
+                    mappedRoster.remove(row);
+                }
+            }
+            if (removed != null) {
+                lutemonList = null;
+                if (rosterIndex != null) {
+                    rosterIndex.remove(parseInstanceId(id));
+                }
             }
         }
-        if (lutemonToRemove != null) {
-            lutemons.remove(lutemonToRemove);
+        if (removed != null) {
+            removed.setChangeListener(null);
+            markChanged(id, RosterStore.OP_REMOVE);
+            RatingLadder.getInstance().remove(id);
         }
     }
 
@@ -76,100 +223,648 @@ public class LutemonStorage {
         removeLutemon(id);
     }
 
+    /**
+     * Persist the roster changes made since the last save on their own
+     * @param context Application context
+     */
     public void saveLutemons(Context context) {
         try {
-            File file = new File(context.getFilesDir(), SAVE_FILENAME);
-            FileWriter fileWriter = new FileWriter(file);
-            BufferedWriter writer = new BufferedWriter(fileWriter);
-            
-            for (Lutemon lutemon : lutemons) {
-                writer.write(lutemon.toFileString());
-                writer.newLine();
-            }
-            
-            writer.close();
+            saveLutemons(context, GameStateStore.getInstance(context).edit());
         } catch (IOException e) {
+            Log.e(TAG, "IO error while saving Lutemons: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    // Load saved lutemons from CSV file
+    /**
+     * Persist the roster changes made since the last save together with other game state.
+     * The changes are added to the transaction as the record of this save and committed
+     * with it in one atomic write, then applied to the roster store. If the app dies before
+     * the roster store is written, the next load replays the record.
+     * Cost scales with the number of changed Lutemons, not the roster size.
+     * @param context Application context
+     * @param transaction Game state to commit, committed even without roster changes
+     * @throws IOException if the transaction could not be committed, the roster changes
+     *         stay pending then
+     */
+    void saveLutemons(Context context, GameStateStore.Transaction transaction) throws IOException {
+        synchronized (fileLock) {
+            Map<String, Byte> changes;
+            List<RosterStore.Change> batch = new ArrayList<>();
+            long nextId;
+
+            synchronized (rosterLock) {
+                changes = new LinkedHashMap<>(pendingChanges);
+                pendingChanges.clear();
+                nextId = nextInstanceId;
+
+                for (Map.Entry<String, Byte> change : changes.entrySet()) {
+                    Lutemon lutemon = findLutemon(change.getKey());
+                    byte op = lutemon == null ? RosterStore.OP_REMOVE : change.getValue();
+                    batch.add(new RosterStore.Change(op, change.getKey(), lutemon));
+                }
+            }
+            if (batch.isEmpty()) {
+                transaction.commit();
+                return;
+            }
+
+            try {
+                transaction.putBytes(SAVE_RECORD_KEY, RosterJournal.Batch.of(batch).toByteArray());
+                transaction.putLong(NEXT_ID_KEY, nextId);
+                transaction.commit();
+            } catch (IOException | RuntimeException e) {
+                restorePendingChanges(changes);
+                throw e;
+            }
+
+            try {
+                getStore(context).save(batch);
+            } catch (IOException e) {
+                Log.e(TAG, "IO error while saving Lutemons: " + e.getMessage());
+                e.printStackTrace();
+                // The committed record keeps the changes safe until the retry
+                restorePendingChanges(changes);
+                PersistenceManager.getInstance().markDirty(PersistenceManager.Component.LUTEMONS);
+            }
+        }
+    }
+
+    // Load the saved roster from the active backend
     public void loadSavedLutemons(Context context) {
-        lutemons.clear();
+        // Changes not yet saved would be lost by the reload
+        saveLutemons(context);
+        clearRoster();
+
+        boolean migrated;
         try {
-            File file = new File(context.getFilesDir(), SAVE_FILENAME);
-            if (!file.exists()) {
-                Log.d(TAG, "Lutemon save file doesn't exist yet");
-                return;
+            migrated = readSavedRoster(context);
+        } catch (IOException e) {
+            Log.e(TAG, "IO error while loading Lutemons: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+
+        replaySaveRecord(context);
+
+        if (migrated) {
+            Log.d(TAG, "Rewriting saved roster");
+            writeSnapshot(context);
+        }
+    }
+
+    /**
+     * Map or load the roster of the active backend, migrating the legacy save if there is none
+     * @param context Application context
+     * @return true if Lutemons got new IDs and the roster needs rewriting
+     * @throws IOException if the saved roster could not be read
+     */
+    private boolean readSavedRoster(Context context) throws IOException {
+        boolean migrated = false;
+
+        synchronized (fileLock) {
+            RosterStore rosterStore = getStore(context);
+            if (!rosterStore.exists()) {
+                migrateLegacySave(context);
+                return false;
             }
-            
-            FileReader fileReader = new FileReader(file);
-            BufferedReader reader = new BufferedReader(fileReader);
-            
-            String line;
-            int lineCount = 0;
-            int lutemonCount = 0;
-            
-            while ((line = reader.readLine()) != null) {
-                lineCount++;
-                if (line.trim().isEmpty()) {
-                    Log.d(TAG, "Skipping empty line " + lineCount);
-                    continue;
+
+            // IDs up to the saved counter may have been issued to Lutemons removed since
+            long savedNextId = GameStateStore.getInstance(context).getLong(NEXT_ID_KEY, 1);
+            MappedRoster mapped = rosterStore.map();
+            if (mapped != null) {
+                synchronized (rosterLock) {
+                    mapped.setChangeListener(changeListener);
+                    mappedRoster = mapped;
+                    nextInstanceId = Math.max(savedNextId, mapped.maxId() + 1);
+                    // Added since the file was written, they are kept after the mapped rows
+                    for (Lutemon lutemon : mapped.takeAdded()) {
+                        registerLutemon(lutemon);
+                    }
                 }
-                
-                Lutemon lutemon = Lutemon.fromFileString(line);
-                if (lutemon != null) {
-                    lutemons.add(lutemon);
-                    lutemonCount++;
-                    Log.d(TAG, "Loaded Lutemon: " + lutemon.getId() + " - " + lutemon.getName());
-                } else {
-                    Log.e(TAG, "Failed to parse Lutemon from line " + lineCount + ": " + line);
+                Log.d(TAG, "Mapped " + mapped.liveSize() + " Lutemons, " + lutemons.size() + " added since");
+                return false;
+            }
+
+            Map<String, Lutemon> restored = rosterStore.load();
+            synchronized (rosterLock) {
+                nextInstanceId = Math.max(nextInstanceId, savedNextId);
+                for (Lutemon lutemon : restored.values()) {
+                    if (registerLutemon(lutemon)) {
+                        migrated = true;
+                    }
                 }
             }
-            
-            Log.d(TAG, "Loaded " + lutemonCount + " Lutemons out of " + lineCount + " lines");
-            
-            reader.close();
-        } catch (FileNotFoundException e) {
-            Log.d(TAG, "File not found: " + e.getMessage());
-        } catch (IOException e) {
-            Log.e(TAG, "IO error while loading Lutemons: " + e.getMessage());
+        }
+
+        Log.d(TAG, "Loaded " + lutemons.size() + " Lutemons");
+        return migrated;
+    }
+
+    /**
+     * Apply the record of the last roster save to the loaded roster. The roster store
+     * normally holds it already and nothing changes. If the app died between committing
+     * the record and writing the roster store, the lost changes are made again and saved
+     * with the next flush.
+     * @param context Application context
+     */
+    private void replaySaveRecord(Context context) {
+        byte[] record = GameStateStore.getInstance(context).getBytes(SAVE_RECORD_KEY);
+        if (record == null) {
+            return;
+        }
+
+        int replayed = replaySaveRecord(record);
+        if (replayed > 0) {
+            Log.d(TAG, "Replayed " + replayed + " roster changes missing from the roster store");
+        }
+    }
+
+    /**
+     * Apply a roster save record, skipping changes the roster already has
+     * @param record Record written by saveLutemons
+     * @return Number of changes that were missing and got applied
+     */
+    @VisibleForTesting
+    int replaySaveRecord(byte[] record) {
+        int[] replayed = new int[1];
+        try {
+            RosterJournal.readBatch(ByteBuffer.wrap(record), record.length, new RosterJournal.Operations() {
+                @Override
+                public void put(Lutemon saved) {
+                    Lutemon current = getLutemonById(saved.getId());
+                    if (current == null) {
+                        addLutemon(saved);
+                        replayed[0]++;
+                    } else if (applyStats(current, saved.getAttack(), saved.getDefense(), saved.getMaxHealth(),
+                            saved.getCurrentHealth(), saved.getSpeed(), saved.getExperience())) {
+                        replayed[0]++;
+                    }
+                }
+
+                @Override
+                public void update(String id, int attack, int defense, int maxHealth, int currentHealth,
+                                   int speed, int experience) {
+                    Lutemon current = getLutemonById(id);
+                    if (current != null
+                            && applyStats(current, attack, defense, maxHealth, currentHealth, speed, experience)) {
+                        replayed[0]++;
+                    }
+                }
+
+                @Override
+                public void remove(String id) {
+                    if (getLutemonById(id) != null) {
+                        removeLutemon(id);
+                        replayed[0]++;
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error replaying roster save record: " + e.getMessage());
             e.printStackTrace();
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error loading Lutemons: " + e.getMessage());
+        }
+        return replayed[0];
+    }
+
+    /**
+     * Set a Lutemon's stats unless it already has them
+     * @return true if anything changed
+     */
+    private static boolean applyStats(Lutemon lutemon, int attack, int defense, int maxHealth, int currentHealth,
+                                      int speed, int experience) {
+        if (lutemon.getAttack() == attack && lutemon.getDefense() == defense
+                && lutemon.getMaxHealth() == maxHealth && lutemon.getCurrentHealth() == currentHealth
+                && lutemon.getSpeed() == speed && lutemon.getExperience() == experience) {
+            return false;
+        }
+        lutemon.setAttack(attack);
+        lutemon.setDefense(defense);
+        lutemon.setMaxHealth(maxHealth);
+        lutemon.setCurrentHealth(currentHealth);
+        lutemon.setSpeed(speed);
+        lutemon.setExperience(experience);
+        return true;
+    }
+
+    /**
+     * Drop the record of the last roster save after the whole roster was written, replaying
+     * it later would undo newer changes the rewrite included. Saves the instance ID counter
+     * with it, the rewrite may have dropped Lutemons whose IDs it covered.
+     * @param context Application context
+     */
+    private static void clearSaveRecord(Context context) {
+        GameStateStore state = GameStateStore.getInstance(context);
+        long nextId;
+        synchronized (rosterLock) {
+            nextId = nextInstanceId;
+        }
+        if (!state.contains(SAVE_RECORD_KEY) && state.getLong(NEXT_ID_KEY, 1) >= nextId) {
+            return;
+        }
+        try {
+            state.edit().remove(SAVE_RECORD_KEY).putLong(NEXT_ID_KEY, nextId).commit();
+        } catch (IOException e) {
+            Log.e(TAG, "IO error while clearing roster save record: " + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    /**
+     * @param context Application context
+     * @return true if the saved roster was changed by something other than this storage
+     *         since it was last loaded or saved
+     */
+    public boolean isModifiedOnDisk(Context context) {
+        synchronized (fileLock) {
+            return getStore(context).isModifiedOnDisk();
+        }
+    }
+
+    /**
+     * Switch the roster save format. The current roster is written to the new
+     * backend and the files of the old one are removed.
+     * @param context Application context
+     * @param backend Backend to use from now on
+     */
+    public void setBackend(Context context, Backend backend) {
+        synchronized (fileLock) {
+            RosterStore current = getStore(context);
+            if (backendOf(current) == backend) {
+                return;
+            }
+
+            RosterStore next = backend == Backend.SLOTTED
+                    ? new SlottedRosterStore(context.getFilesDir())
+                    : new JournalRosterStore(context.getFilesDir());
+            try {
+                List<Lutemon> roster;
+                synchronized (rosterLock) {
+                    unmapRoster();
+                    roster = new ArrayList<>(lutemons.values());
+                    pendingChanges.clear();
+                }
+                next.rewrite(roster);
+            } catch (IOException e) {
+                Log.e(TAG, "IO error while switching roster backend: " + e.getMessage());
+                e.printStackTrace();
+                next.delete();
+                return;
+            }
+
+            current.delete();
+            store = next;
+            clearSaveRecord(context);
+            Log.d(TAG, "Switched roster backend to " + backend);
+        }
+    }
+
+    /**
+     * @param context Application context
+     * @return The backend the roster is currently saved with
+     */
+    public Backend getBackend(Context context) {
+        synchronized (fileLock) {
+            return backendOf(getStore(context));
+        }
+    }
+
+    /**
+     * Write the whole roster to the active backend, replacing what it holds
+     * @param context Application context
+     * @return true if the roster was written
+     */
+    private boolean writeSnapshot(Context context) {
+        synchronized (fileLock) {
+            try {
+                List<Lutemon> roster;
+                synchronized (rosterLock) {
+                    unmapRoster();
+                    roster = new ArrayList<>(lutemons.values());
+                    pendingChanges.clear();
+                }
+                getStore(context).rewrite(roster);
+                clearSaveRecord(context);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "IO error while saving Lutemons: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Open the store for the files directory, picking the backend whose files exist.
+     * Must be called while holding fileLock.
+     * @param context Application context
+     * @return The active roster store
+     */
+    private static RosterStore getStore(Context context) {
+        File filesDir = context.getFilesDir();
+        if (store == null || !filesDir.equals(storeDir)) {
+            SlottedRosterStore slotted = new SlottedRosterStore(filesDir);
+            store = slotted.exists() ? slotted : new JournalRosterStore(filesDir);
+            storeDir = filesDir;
+        }
+        return store;
+    }
+
+    private static Backend backendOf(RosterStore rosterStore) {
+        return rosterStore instanceof SlottedRosterStore ? Backend.SLOTTED : Backend.JOURNAL;
+    }
+
+    /**
+     * Change listener of every Lutemon in the roster, re-indexes it and records the update
+     * @param lutemon The changed Lutemon
+     */
+    private static void lutemonChanged(Lutemon lutemon) {
+        synchronized (rosterLock) {
+            if (rosterIndex != null) {
+                rosterIndex.put(parseInstanceId(lutemon.getId()), lutemon);
+            }
+        }
+        markChanged(lutemon.getId(), RosterStore.OP_UPDATE);
+    }
+
+    /**
+     * Get the query index, building it from the column snapshot on first use.
+     * Caller holds rosterLock.
+     * @return The roster index
+     */
+    private RosterIndex getIndex() {
+        if (rosterIndex == null) {
+            rosterIndex = RosterIndex.build(getColumns());
+        }
+        return rosterIndex;
+    }
+
+    /**
+     * Look up the Lutemons of index results, decoding only those. Caller holds rosterLock.
+     * @param ids Instance IDs
+     * @return The Lutemons in the same order
+     */
+    private static List<Lutemon> resolveIds(long[] ids) {
+        List<Lutemon> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Lutemon lutemon = findLutemon(String.valueOf(id));
+            if (lutemon != null) {
+                result.add(lutemon);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record a roster mutation for the next save. Updates never
+     * downgrade a pending add, the latest add or remove wins.
+     * @param id Instance ID of the changed Lutemon
+     * @param op Journal operation
+     */
+    private static void markChanged(String id, byte op) {
+        synchronized (rosterLock) {
+            rosterColumns = null;
+            if (op != RosterStore.OP_UPDATE || !pendingChanges.containsKey(id)) {
+                pendingChanges.put(id, op);
+            }
+        }
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.LUTEMONS);
+    }
     
-    // Load lutemon schema definitions from JSON in assets
-    public List<Lutemon> loadLutemonSchemas(Context context) {
-        List<Lutemon> schemaLutemons = new ArrayList<>();
-        try {
-            AssetManager assetManager = context.getAssets();
-            InputStream inputStream = assetManager.open(SCHEMA_FILENAME);
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            
-            StringBuilder stringBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                stringBuilder.append(line);
+    /**
+     * Put back changes whose save failed, newer changes for the same ID win
+     * unless they would downgrade an add or remove to an update
+     * @param changes Changes taken from pendingChanges for the failed write
+     */
+    private static void restorePendingChanges(Map<String, Byte> changes) {
+        synchronized (rosterLock) {
+            for (Map.Entry<String, Byte> change : changes.entrySet()) {
+                Byte newer = pendingChanges.get(change.getKey());
+                if (newer == null || newer == RosterStore.OP_UPDATE) {
+                    pendingChanges.put(change.getKey(), change.getValue());
+                }
             }
+        }
+    }
+    
+    /**
+     * Decode every row left in the mapped roster into the roster map, ahead of the Lutemons
+     * added since, so the whole roster can be rewritten. Caller holds rosterLock.
+     */
+    private static void unmapRoster() {
+        if (mappedRoster == null) {
+            return;
+        }
+        List<Lutemon> added = new ArrayList<>(lutemons.values());
+        lutemons.clear();
+        int[] rows = mappedRoster.liveRows();
+        int count = rows == null ? mappedRoster.size() : rows.length;
+        for (int i = 0; i < count; i++) {
+            Lutemon lutemon = mappedRoster.get(rows == null ? i : rows[i]);
+            lutemons.put(lutemon.getId(), lutemon);
+        }
+        for (Lutemon lutemon : added) {
+            lutemons.put(lutemon.getId(), lutemon);
+        }
+        Log.d(TAG, "Decoded mapped roster of " + count + " Lutemons");
+        mappedRoster = null;
+        lutemonList = null;
+    }
+
+    /**
+     * Look up a Lutemon in the roster map or the mapped roster. Caller holds rosterLock.
+     * @param id Instance ID
+     * @return The Lutemon, or null if there is none with this ID
+     */
+    private static Lutemon findLutemon(String id) {
+        Lutemon lutemon = lutemons.get(id);
+        if (lutemon != null || mappedRoster == null) {
+            return lutemon;
+        }
+        long numericId = parseInstanceId(id);
+        int row = numericId < 0 ? -1 : mappedRoster.indexOf(numericId);
+        return row < 0 ? null : mappedRoster.get(row);
+    }
+
+    /**
+     * Drop the roster and its pending changes without saving them
+     */
+    @VisibleForTesting
+    static void clearRoster() {
+        synchronized (rosterLock) {
+            if (mappedRoster != null) {
+                mappedRoster.setChangeListener(null);
+                mappedRoster = null;
+            }
+            for (Lutemon lutemon : lutemons.values()) {
+                lutemon.setChangeListener(null);
+            }
+            lutemons.clear();
+            lutemonList = null;
+            rosterColumns = null;
+            rosterIndex = null;
+            nextInstanceId = 1;
+            pendingChanges.clear();
+        }
+    }
+    
+    /**
+     * Import the old lutemons.csv save, write it to the active backend and remove it
+     * @param context Application context
+     */
+    private void migrateLegacySave(Context context) {
+        File legacyFile = new File(context.getFilesDir(), LEGACY_SAVE_FILENAME);
+        if (!legacyFile.exists()) {
+            Log.d(TAG, "Lutemon save file doesn't exist yet");
+            return;
+        }
+        
+        // Old IDs were schema IDs shared by every Lutemon of a species, lookups found the first
+        Map<String, String> newIds = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
+            RosterCsvCodec codec = new RosterCsvCodec();
+            CharSequence record;
+            int recordCount = 0;
             
-            JSONArray jsonArray = new JSONArray(stringBuilder.toString());
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject jsonObject = jsonArray.getJSONObject(i);
-                Lutemon lutemon = Lutemon.fromJson(jsonObject);
+            while ((record = codec.readRecord(reader)) != null) {
+                recordCount++;
+                Lutemon lutemon = codec.decode(record);
                 if (lutemon != null) {
-                    schemaLutemons.add(lutemon);
+                    String legacyId = lutemon.getId();
+                    synchronized (rosterLock) {
+                        registerLutemon(lutemon);
+                    }
+                    if (legacyId != null && !newIds.containsKey(legacyId)) {
+                        newIds.put(legacyId, lutemon.getId());
+                    }
+                } else {
+                    Log.e(TAG, "Failed to parse Lutemon from record " + recordCount + ": " + record);
                 }
             }
             
-            reader.close();
-        } catch (IOException | JSONException e) {
-            Log.e(TAG, "Error loading lutemon schemas: " + e.getMessage());
+            Log.d(TAG, "Migrated " + lutemons.size() + " Lutemons out of " + recordCount + " CSV records");
+        } catch (IOException e) {
+            Log.e(TAG, "IO error while migrating Lutemons: " + e.getMessage());
+            e.printStackTrace();
+            return;
         }
         
+        if (!writeSnapshot(context)) {
+            return;
+        }
+
+        // Training and battle state migrated from the old preferences still use the old IDs
+        GameStateStore state = GameStateStore.getInstance(context);
+        GameStateStore.Transaction transaction = state.edit();
+        TrainingManager.getInstance().remapSavedIds(state, transaction, newIds);
+        BattleManager.getInstance().remapSavedIds(state, transaction, newIds);
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            Log.e(TAG, "IO error while remapping migrated Lutemon IDs: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        if (!legacyFile.delete()) {
+            Log.e(TAG, "Could not remove migrated " + LEGACY_SAVE_FILENAME);
+        }
+    }
+    
+    /**
+     * Put a Lutemon into the index, assigning a new instance ID when its current one
+     * is missing, not a storage-issued ID or already taken. Caller holds rosterLock.
+     * @param lutemon The Lutemon to register
+     * @return true if a new ID had to be assigned
+     */
+    private boolean registerLutemon(Lutemon lutemon) {
+        String id = lutemon.getId();
+        boolean reassigned = false;
+        
+        long numericId = parseInstanceId(id);
+        if (numericId < 0 || lutemons.containsKey(id)
+                || (mappedRoster != null && mappedRoster.indexOf(numericId) >= 0)) {
+            numericId = nextInstanceId;
+            id = String.valueOf(numericId);
+            lutemon.assignId(id);
+            reassigned = true;
+        }
+        
+        nextInstanceId = Math.max(nextInstanceId, numericId + 1);
+        lutemons.put(id, lutemon);
+        lutemon.setChangeListener(changeListener);
+        return reassigned;
+    }
+    
+    /**
+     * Read-only list over a mapped roster followed by the Lutemons added since, rows are
+     * decoded when they are read. Keeps showing the roster as it was when the list was
+     * handed out.
+     */
+    private static final class MappedList extends AbstractList<Lutemon> implements RandomAccess {
+        private final MappedRoster roster;
+        // Rows left in the mapped roster, null if every row is
+        private final int[] rows;
+        private final int rowCount;
+        private final Lutemon[] added;
+
+        MappedList(MappedRoster roster, int[] rows, Lutemon[] added) {
+            this.roster = roster;
+            this.rows = rows;
+            this.rowCount = rows == null ? roster.size() : rows.length;
+            this.added = added;
+        }
+
+        @Override
+        public Lutemon get(int index) {
+            if (index >= rowCount) {
+                return added[index - rowCount];
+            }
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            synchronized (rosterLock) {
+                return roster.get(rows == null ? index : rows[index]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return rowCount + added.length;
+        }
+    }
+
+    /**
+     * Parse a storage-issued instance ID
+     * @param id The ID to parse
+     * @return The numeric ID, or -1 if this is not an instance ID (e.g. a legacy schema ID)
+     */
+    static long parseInstanceId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    /**
+     * Get every schema species as a template Lutemon whose ID is the schema ID.
+     * Served from SpeciesRegistry, the schema is only parsed once per process.
+     * @param context Application context
+     * @return New template Lutemons in schema order
+     */
+    public List<Lutemon> loadLutemonSchemas(Context context) {
+        List<Species> species = SpeciesRegistry.getInstance(context).getAll();
+        List<Lutemon> schemaLutemons = new ArrayList<>(species.size());
+        for (Species entry : species) {
+            schemaLutemons.add(entry.createLutemon(entry.getId()));
+        }
         return schemaLutemons;
     }
     
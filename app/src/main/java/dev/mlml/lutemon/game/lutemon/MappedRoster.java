@@ -0,0 +1,285 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only roster view over a memory-mapped save file.
+ * <p>
+ * Only the record offsets and instance IDs are indexed up front. A Lutemon is decoded the
+ * first time its row is read and cached from then on, so untouched rows cost no heap beyond
+ * the index. Removed rows are only masked, they stay in the file until the roster is
+ * rewritten. Changes saved after the file was written, e.g. a roster journal, are replayed
+ * with put, find and remove: updates go to the decoded Lutemon of the row, Lutemons the file
+ * does not hold are kept aside until takeAdded. Not thread-safe, LutemonStorage accesses it
+ * under its roster lock.
+ */
+final class MappedRoster {
+    /**
+     * Decodes records of one save format
+     */
+    interface Format {
+        /**
+         * @param buffer Mapped file
+         * @param offset Start of the record
+         * @return Instance ID of the record
+         */
+        long readId(ByteBuffer buffer, int offset);
+
+        /**
+         * @param buffer Mapped file, the position may be changed freely
+         * @param offset Start of the record
+         * @return The decoded Lutemon
+         */
+        Lutemon readLutemon(ByteBuffer buffer, int offset);
+
+        /**
+         * Add the record to a column snapshot without decoding it into a Lutemon
+         * @param buffer Mapped file
+         * @param offset Start of the record
+         * @param builder Snapshot to add the row to
+         */
+        void readColumns(ByteBuffer buffer, int offset, RosterColumns.Builder builder);
+    }
+
+    private final ByteBuffer buffer;
+    private final Format format;
+    // Record offsets in roster order
+    private final int[] offsets;
+    // IDs sorted for lookup, rows is null when the roster order is already sorted by ID
+    private final long[] sortedIds;
+    private final int[] sortedRows;
+    private final Lutemon[] cache;
+    private final BitSet removed = new BitSet();
+    private int removedCount = 0;
+    // Rows left after removals in roster order, built on demand
+    private int[] liveRows = null;
+    // Lutemons put after the file was written, by instance ID in roster order
+    private final Map<String, Lutemon> added = new LinkedHashMap<>();
+    private Lutemon.ChangeListener changeListener;
+
+    private MappedRoster(ByteBuffer buffer, Format format, int[] offsets,
+                         long[] sortedIds, int[] sortedRows) {
+        this.buffer = buffer;
+        this.format = format;
+        this.offsets = offsets;
+        this.sortedIds = sortedIds;
+        this.sortedRows = sortedRows;
+        this.cache = new Lutemon[offsets.length];
+    }
+
+    /**
+     * Index the records of a mapped file
+     * @param buffer Mapped file
+     * @param format Record format of the file
+     * @param offsets Record offsets in roster order
+     * @return The roster, or null if an ID is missing or duplicated and IDs must be reassigned
+     */
+    static MappedRoster create(ByteBuffer buffer, Format format, int[] offsets) {
+        long[] ids = new long[offsets.length];
+        boolean sorted = true;
+        for (int row = 0; row < offsets.length; row++) {
+            ids[row] = format.readId(buffer, offsets[row]);
+            if (ids[row] < 0) {
+                return null;
+            }
+            if (row > 0 && ids[row] <= ids[row - 1]) {
+                sorted = false;
+            }
+        }
+
+        if (sorted) {
+            return new MappedRoster(buffer, format, offsets, ids, null);
+        }
+
+        Integer[] order = new Integer[ids.length];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = row;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+
+        long[] sortedIds = new long[ids.length];
+        int[] sortedRows = new int[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIds[i] = ids[order[i]];
+            sortedRows[i] = order[i];
+            if (i > 0 && sortedIds[i] == sortedIds[i - 1]) {
+                return null;
+            }
+        }
+        return new MappedRoster(buffer, format, offsets, sortedIds, sortedRows);
+    }
+
+    /**
+     * Set the listener of every Lutemon decoded so far and from now on
+     * @param changeListener Listener for decoded Lutemons, null detaches them
+     */
+    void setChangeListener(Lutemon.ChangeListener changeListener) {
+        this.changeListener = changeListener;
+        for (Lutemon lutemon : cache) {
+            if (lutemon != null) {
+                lutemon.setChangeListener(changeListener);
+            }
+        }
+        for (Lutemon lutemon : added.values()) {
+            lutemon.setChangeListener(changeListener);
+        }
+    }
+
+    /**
+     * @return Number of rows, including removed ones
+     */
+    int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @return Number of rows not removed
+     */
+    int liveSize() {
+        return offsets.length - removedCount;
+    }
+
+    /**
+     * Get the rows not removed, e.g. for a list that must not change with later removals
+     * @return Rows in roster order, or null if no row was removed and every row is live.
+     *         The array is shared and never modified.
+     */
+    int[] liveRows() {
+        if (removedCount == 0) {
+            return null;
+        }
+        if (liveRows == null) {
+            liveRows = new int[liveSize()];
+            int index = 0;
+            for (int row = removed.nextClearBit(0); row < offsets.length; row = removed.nextClearBit(row + 1)) {
+                liveRows[index++] = row;
+            }
+        }
+        return liveRows;
+    }
+
+    /**
+     * Remove a row from the roster. A Lutemon decoded from it stays readable through get.
+     * @param row Row in roster order
+     */
+    void remove(int row) {
+        if (removed.get(row)) {
+            return;
+        }
+        removed.set(row);
+        removedCount++;
+        liveRows = null;
+    }
+
+    /**
+     * Put a Lutemon saved after the file was written. One with the ID of a row replaces it
+     * at the end of the roster, like a fresh add.
+     * @param lutemon The saved Lutemon
+     */
+    void put(Lutemon lutemon) {
+        long id = LutemonStorage.parseInstanceId(lutemon.getId());
+        int row = id < 0 ? -1 : indexOf(id);
+        if (row >= 0) {
+            remove(row);
+        }
+        added.remove(lutemon.getId());
+        lutemon.setChangeListener(changeListener);
+        added.put(lutemon.getId(), lutemon);
+    }
+
+    /**
+     * @param id Instance ID
+     * @return The Lutemon with this ID, decoding its row, or null if there is none
+     */
+    Lutemon find(String id) {
+        Lutemon lutemon = added.get(id);
+        if (lutemon != null) {
+            return lutemon;
+        }
+        long numericId = LutemonStorage.parseInstanceId(id);
+        int row = numericId < 0 ? -1 : indexOf(numericId);
+        return row < 0 ? null : get(row);
+    }
+
+    /**
+     * Remove the Lutemon with an ID, whether it is in the file or was put since
+     * @param id Instance ID
+     */
+    void remove(String id) {
+        if (added.remove(id) != null) {
+            return;
+        }
+        long numericId = LutemonStorage.parseInstanceId(id);
+        int row = numericId < 0 ? -1 : indexOf(numericId);
+        if (row >= 0) {
+            remove(row);
+        }
+    }
+
+    /**
+     * Hand over the Lutemons put since the file was written, they are no longer kept here
+     * @return The Lutemons in roster order
+     */
+    List<Lutemon> takeAdded() {
+        List<Lutemon> lutemons = new ArrayList<>(added.values());
+        added.clear();
+        return lutemons;
+    }
+
+    /**
+     * @return Largest instance ID in the file, or 0 if it is empty
+     */
+    long maxId() {
+        return sortedIds.length == 0 ? 0 : sortedIds[sortedIds.length - 1];
+    }
+
+    /**
+     * Get the Lutemon at a row, decoding it on first access
+     * @param row Row in roster order
+     * @return The Lutemon
+     */
+    Lutemon get(int row) {
+        Lutemon lutemon = cache[row];
+        if (lutemon == null) {
+            lutemon = format.readLutemon(buffer, offsets[row]);
+            lutemon.setChangeListener(changeListener);
+            cache[row] = lutemon;
+        }
+        return lutemon;
+    }
+
+    /**
+     * Add every row not removed to a column snapshot. Rows decoded before are read from
+     * their Lutemon since it may have changed, the others straight from the file.
+     * @param builder Snapshot to add the rows to
+     */
+    void readColumns(RosterColumns.Builder builder) {
+        for (int row = removed.nextClearBit(0); row < offsets.length; row = removed.nextClearBit(row + 1)) {
+            Lutemon lutemon = cache[row];
+            if (lutemon != null) {
+                builder.add(lutemon);
+            } else {
+                format.readColumns(buffer, offsets[row], builder);
+            }
+        }
+    }
+
+    /**
+     * @param id Instance ID
+     * @return Row of the Lutemon with this ID, or -1 if there is none or it was removed
+     */
+    int indexOf(long id) {
+        int index = Arrays.binarySearch(sortedIds, id);
+        if (index < 0) {
+            return -1;
+        }
+        int row = sortedRows == null ? index : sortedRows[index];
+        return removed.get(row) ? -1 : row;
+    }
+}
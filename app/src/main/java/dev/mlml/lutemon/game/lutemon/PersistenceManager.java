@@ -0,0 +1,181 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence shared by all game managers.
+ * Managers mark their component dirty, a background thread then saves every dirty
+ * component once per flush window, no matter how many changes were made in between.
+ * Every dirty component is committed to the GameStateStore as one transaction per flush,
+ * the roster as the record of its changes (see LutemonStorage.saveLutemons), and no flush
+ * starts while a game action is still making changes.
+ */
+public class PersistenceManager {
+    private static final String TAG = "PersistenceManager";
+
+    // Saves requested within this window are coalesced into one flush
+    private static final long FLUSH_WINDOW_MS = 500;
+
+    public enum Component {
+        LUTEMONS,
+        STATS,
+        BATTLE,
+        TRAINING,
+        CURRENCY,
+        RATINGS
+    }
+
+    private static PersistenceManager instance = null;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // Held for the whole flush so a forced flush waits for a running background one
+    private final Object flushLock = new Object();
+    private final EnumSet<Component> dirtyComponents = EnumSet.noneOf(Component.class);
+    private ScheduledFuture<?> scheduledFlush = null;
+    private Context context;
+    // Game actions in progress, flushes wait until they are done
+    private int openActions = 0;
+
+    private PersistenceManager() {
+    }
+
+    public static synchronized PersistenceManager getInstance() {
+        if (instance == null) {
+            instance = new PersistenceManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Set the context used for background saves
+     * @param context Any context, the application context is kept
+     */
+    public synchronized void initialize(Context context) {
+        this.context = context.getApplicationContext();
+        scheduleFlush();
+    }
+
+    /**
+     * Mark components as changed, they are saved at the end of the current flush window
+     * @param components Components that need saving
+     */
+    public synchronized void markDirty(Component... components) {
+        Collections.addAll(dirtyComponents, components);
+        scheduleFlush();
+    }
+
+    /**
+     * Start a game action. Changes made until the matching endAction are saved in the same
+     * flush, so they are committed together.
+     */
+    public synchronized void beginAction() {
+        openActions++;
+    }
+
+    /**
+     * Finish a game action started with beginAction
+     * @param components Components the action changed, in addition to those already marked
+     */
+    public synchronized void endAction(Component... components) {
+        Collections.addAll(dirtyComponents, components);
+        openActions--;
+        scheduleFlush();
+    }
+
+    /**
+     * Save every dirty component on the calling thread, e.g. from onPause
+     */
+    public void flushNow() {
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        flush();
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush == null && context != null && openActions == 0 && !dirtyComponents.isEmpty()) {
+            scheduledFlush = executor.schedule(this::flush, FLUSH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            EnumSet<Component> components;
+            Context flushContext;
+            synchronized (this) {
+                scheduledFlush = null;
+                // endAction schedules the flush again
+                if (context == null || openActions > 0 || dirtyComponents.isEmpty()) {
+                    return;
+                }
+                components = EnumSet.copyOf(dirtyComponents);
+                dirtyComponents.clear();
+                flushContext = context;
+            }
+
+            GameStateStore.Transaction transaction = GameStateStore.getInstance(flushContext).edit();
+            boolean saveRoster = components.remove(Component.LUTEMONS);
+            long[] ratingIds = components.remove(Component.RATINGS)
+                    ? RatingLadder.getInstance().writeRatings(transaction) : null;
+            for (Component component : components) {
+                try {
+                    write(transaction, component);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to save " + component + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            try {
+                if (saveRoster) {
+                    // Commits the transaction with the roster changes in it
+                    LutemonStorage.getInstance().saveLutemons(flushContext, transaction);
+                } else {
+                    transaction.commit();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (saveRoster) {
+                    components.add(Component.LUTEMONS);
+                }
+                if (ratingIds != null) {
+                    RatingLadder.getInstance().restoreChanges(ratingIds);
+                    components.add(Component.RATINGS);
+                }
+                Log.e(TAG, "Failed to save " + components + ": " + e.getMessage());
+                e.printStackTrace();
+                // Nothing of the transaction was applied, retry with the next flush
+                markDirty(components.toArray(new Component[0]));
+            }
+        }
+    }
+
+    private void write(GameStateStore.Transaction transaction, Component component) {
+        switch (component) {
+            case STATS:
+                StatsManager.getInstance().writeStats(transaction);
+                break;
+            case BATTLE:
+                BattleManager.getInstance().writeBattleState(transaction);
+                break;
+            case TRAINING:
+                TrainingManager.getInstance().writeTrainingState(transaction);
+                break;
+            case CURRENCY:
+                LootBoxManager.getInstance().writePlayerCurrency(transaction);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded random stream for one battle, loot box or session.
+ * <p>
+ * Backed by a SplittableRandom, so draws touch no shared state and a stream can be split
+ * into independent child streams for parallel work. A stream created with the same seed
+ * draws the same values, which makes any outcome reproducible from getSeed. Not
+ * thread-safe, give each thread its own stream with split.
+ */
+public final class RandomSource {
+    private final long seed;
+    private final SplittableRandom random;
+
+    /**
+     * Create a stream with a fresh seed
+     */
+    public RandomSource() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param seed Seed, streams with the same seed draw the same values
+     */
+    public RandomSource(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return Seed this stream was created with
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Derive an independent stream, its seed is the next value drawn from this one
+     * @return The child stream
+     */
+    public RandomSource split() {
+        return new RandomSource(random.nextLong());
+    }
+
+    /**
+     * @param bound Exclusive upper bound, must be positive
+     * @return Uniform value in [0, bound)
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * @return Uniform value in [0, 1)
+     */
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    public boolean nextBoolean() {
+        return random.nextBoolean();
+    }
+
+    public long nextLong() {
+        return random.nextLong();
+    }
+}
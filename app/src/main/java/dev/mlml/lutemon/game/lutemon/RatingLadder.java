@@ -0,0 +1,389 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Elo ratings of the roster's Lutemons and their leaderboard.
+ * <p>
+ * A Lutemon enters the ladder with its first rated battle and its rating is updated after
+ * every battle it finishes. Ratings are whole points, counted per point in a Fenwick tree,
+ * so the rank of a rating and the rating at a rank both cost O(log MAX_RATING). Lutemons
+ * with the same rating share a bucket and come out in the order they reached it.
+ * <p>
+ * Ratings are saved in the GameStateStore, one long per Lutemon holding its rating, number
+ * of rated battles and when it reached the rating, so only changed ratings are written and
+ * they commit together with the battle that changed them.
+ */
+public class RatingLadder {
+    private static final String TAG = "RatingLadder";
+    // Game state key of a Lutemon's rating is the prefix plus its instance ID
+    private static final String KEY_PREFIX = "rating_";
+
+    /**
+     * Rating of a Lutemon before its first battle
+     */
+    public static final int DEFAULT_RATING = 1500;
+    /**
+     * Ratings are kept in [0, MAX_RATING)
+     */
+    public static final int MAX_RATING = 4096;
+    // Provisional ratings move faster until the Lutemon has this many rated battles
+    private static final int PROVISIONAL_BATTLES = 30;
+    private static final int PROVISIONAL_K = 32;
+    private static final int ESTABLISHED_K = 16;
+    // Estimated opponents never count as more lopsided than this expected score,
+    // about 380 points either way
+    private static final double MIN_EXPECTED_SCORE = 0.1;
+
+    private static RatingLadder instance = null;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // Fenwick tree of the number of Lutemons per rating, indexed from the top rating down
+    private final int[] tree = new int[MAX_RATING + 1];
+    // Instance IDs per rating, created when a rating is first reached
+    private final List<LinkedHashSet<Long>> buckets = new ArrayList<>(Collections.nCopies(MAX_RATING, null));
+    // Instance IDs whose rating changed or that left the ladder since the last save
+    private final Set<Long> changedIds = new HashSet<>();
+    // Orders Lutemons within a bucket across saves, see Entry.reached
+    private int nextSequence = 0;
+
+    private RatingLadder() {
+    }
+
+    public static synchronized RatingLadder getInstance() {
+        if (instance == null) {
+            instance = new RatingLadder();
+        }
+        return instance;
+    }
+
+    /**
+     * Update a Lutemon's rating with the result of a battle
+     * @param lutemon The rated Lutemon, only roster Lutemons are rated
+     * @param opponentRating Rating of its opponent
+     * @param outcome How the battle ended for the Lutemon, a draw counts half
+     */
+    public void recordBattle(Lutemon lutemon, int opponentRating, BattleEngine.Outcome outcome) {
+        long id = LutemonStorage.parseInstanceId(lutemon.getId());
+        if (id < 0) {
+            return;
+        }
+        double score = outcome == BattleEngine.Outcome.VICTORY ? 1
+                : outcome == BattleEngine.Outcome.DRAW ? 0.5 : 0;
+
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            int rating = entry != null ? entry.rating : DEFAULT_RATING;
+            int battles = entry != null ? entry.battles : 0;
+            double expected = 1 / (1 + Math.pow(10, (opponentRating - rating) / 400.0));
+            int k = battles < PROVISIONAL_BATTLES ? PROVISIONAL_K : ESTABLISHED_K;
+            put(id, (int) Math.round(rating + k * (score - expected)), Math.min(battles + 1, Character.MAX_VALUE),
+                    nextSequence++);
+            changedIds.add(id);
+        }
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.RATINGS);
+    }
+
+    /**
+     * Estimate the rating of an unrated opponent, e.g. an AI Lutemon, from its stats.
+     * Each side's strength is the expected number of attacks it needs to knock the other
+     * out from full health, and the opponent is rated so the Lutemon's Elo expectation
+     * matches its share of the two.
+     * @param lutemon The rated Lutemon
+     * @param opponent Its opponent
+     * @return Estimated rating of the opponent
+     */
+    public int estimateOpponentRating(Lutemon lutemon, Lutemon opponent) {
+        double attacksToWin = DamageDistribution.of(lutemon, opponent, 0).getExpectedTurnsToKo(opponent.getMaxHealth());
+        double attacksToLose = DamageDistribution.of(opponent, lutemon, 0).getExpectedTurnsToKo(lutemon.getMaxHealth());
+        double expected = attacksToWin + attacksToLose > 0 ? attacksToLose / (attacksToWin + attacksToLose) : 0.5;
+        expected = Math.max(MIN_EXPECTED_SCORE, Math.min(1 - MIN_EXPECTED_SCORE, expected));
+        // Inverse of the expected score formula in recordBattle
+        return clamp(getRating(lutemon) + (int) Math.round(400 * Math.log10(1 / expected - 1)));
+    }
+
+    /**
+     * @param lutemon The Lutemon
+     * @return Its rating, DEFAULT_RATING if it has no rated battles yet
+     */
+    public synchronized int getRating(Lutemon lutemon) {
+        Entry entry = entries.get(LutemonStorage.parseInstanceId(lutemon.getId()));
+        return entry != null ? entry.rating : DEFAULT_RATING;
+    }
+
+    /**
+     * @param lutemon The Lutemon
+     * @return Its rank, 1 for the best, Lutemons with equal ratings share a rank, 0 if it
+     * has no rated battles yet
+     */
+    public synchronized int getRank(Lutemon lutemon) {
+        Entry entry = entries.get(LutemonStorage.parseInstanceId(lutemon.getId()));
+        return entry != null ? countAbove(entry.rating) + 1 : 0;
+    }
+
+    /**
+     * @return Number of Lutemons on the ladder
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param limit Maximum number of Lutemons
+     * @return The highest rated Lutemons, best first
+     */
+    public List<Lutemon> getTop(int limit) {
+        return resolve(slice(0, limit));
+    }
+
+    /**
+     * Find opponents of about the same strength, e.g. for matchmaking
+     * @param rating Rating to look around
+     * @param count Maximum number of Lutemons
+     * @return Lutemons ranked closest to the rating, best first
+     */
+    public List<Lutemon> getNear(int rating, int count) {
+        long[] ids;
+        synchronized (this) {
+            int position = countAbove(clamp(rating));
+            int start = Math.max(0, Math.min(position - count / 2, entries.size() - count));
+            ids = slice(start, count);
+        }
+        return resolve(ids);
+    }
+
+    /**
+     * Drop a Lutemon from the ladder, e.g. when it leaves the roster
+     * @param id Instance ID
+     */
+    public void remove(String id) {
+        long instanceId = LutemonStorage.parseInstanceId(id);
+        boolean removed;
+        synchronized (this) {
+            Entry entry = entries.remove(instanceId);
+            removed = entry != null;
+            if (removed) {
+                unlink(instanceId, entry.rating);
+                changedIds.add(instanceId);
+            }
+        }
+        if (removed) {
+            PersistenceManager.getInstance().markDirty(PersistenceManager.Component.RATINGS);
+        }
+    }
+
+    /**
+     * @param start Position on the ladder, 0 for the best
+     * @param count Maximum number of Lutemons
+     * @return Instance IDs from that position down
+     */
+    private synchronized long[] slice(int start, int count) {
+        int size = Math.max(0, Math.min(count, entries.size() - start));
+        long[] ids = new long[size];
+        int filled = 0;
+        while (filled < size) {
+            int position = start + filled;
+            int rating = ratingAt(position);
+            // Skip the part of the bucket above the position
+            Iterator<Long> bucket = buckets.get(rating).iterator();
+            for (int skip = position - countAbove(rating); skip > 0; skip--) {
+                bucket.next();
+            }
+            while (filled < size && bucket.hasNext()) {
+                ids[filled++] = bucket.next();
+            }
+        }
+        return ids;
+    }
+
+    private static List<Lutemon> resolve(long[] ids) {
+        List<Lutemon> result = new ArrayList<>(ids.length);
+        LutemonStorage storage = LutemonStorage.getInstance();
+        for (long id : ids) {
+            Lutemon lutemon = storage.getLutemonById(String.valueOf(id));
+            if (lutemon != null) {
+                result.add(lutemon);
+            }
+        }
+        return result;
+    }
+
+    private void put(long id, int rating, int battles, int reached) {
+        rating = clamp(rating);
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry(rating, battles, reached);
+            entries.put(id, entry);
+        } else {
+            unlink(id, entry.rating);
+            entry.rating = rating;
+            entry.battles = battles;
+            entry.reached = reached;
+        }
+        LinkedHashSet<Long> bucket = buckets.get(rating);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<>();
+            buckets.set(rating, bucket);
+        }
+        bucket.add(id);
+        add(rating, 1);
+    }
+
+    private void unlink(long id, int rating) {
+        buckets.get(rating).remove(id);
+        add(rating, -1);
+    }
+
+    private static int clamp(int rating) {
+        return Math.max(0, Math.min(MAX_RATING - 1, rating));
+    }
+
+    /**
+     * @param rating Rating whose count changes
+     * @param delta Change of the count
+     */
+    private void add(int rating, int delta) {
+        for (int i = MAX_RATING - rating; i <= MAX_RATING; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return Number of Lutemons rated higher than the rating
+     */
+    private int countAbove(int rating) {
+        int count = 0;
+        for (int i = MAX_RATING - rating - 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * @param position Position on the ladder, 0 for the best, must be below size()
+     * @return Rating at the position
+     */
+    private int ratingAt(int position) {
+        // Descend the tree for the last index whose prefix count is at most the position
+        int index = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(MAX_RATING); step > 0; step >>= 1) {
+            int next = index + step;
+            if (next <= MAX_RATING && tree[next] <= remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return MAX_RATING - (index + 1);
+    }
+
+    /**
+     * Load the saved ladder, dropping Lutemons no longer in the roster.
+     * Call after the roster is loaded.
+     * @param context Application context
+     */
+    public void load(Context context) {
+        GameStateStore state = GameStateStore.getInstance(context);
+        boolean dropped;
+        synchronized (this) {
+            entries.clear();
+            Arrays.fill(tree, 0);
+            Collections.fill(buckets, null);
+            changedIds.clear();
+            nextSequence = 0;
+
+            Map<String, Long> saved = state.getLongs(KEY_PREFIX);
+            // Re-inserted in the order the ratings were reached to restore the bucket order
+            List<long[]> sorted = new ArrayList<>(saved.size());
+            for (Map.Entry<String, Long> value : saved.entrySet()) {
+                long id = LutemonStorage.parseInstanceId(value.getKey().substring(KEY_PREFIX.length()));
+                if (id >= 0) {
+                    sorted.add(new long[]{id, value.getValue()});
+                }
+            }
+            Collections.sort(sorted, (a, b) -> Integer.compare(reachedOf(a[1]), reachedOf(b[1])));
+
+            LutemonStorage storage = LutemonStorage.getInstance();
+            for (long[] value : sorted) {
+                long id = value[0];
+                if (storage.getLutemonById(String.valueOf(id)) == null) {
+                    changedIds.add(id);
+                    continue;
+                }
+                int reached = reachedOf(value[1]);
+                put(id, (int) (value[1] >>> 16) & 0xFFFF, (int) value[1] & 0xFFFF, reached);
+                nextSequence = Math.max(nextSequence, reached + 1);
+            }
+            dropped = !changedIds.isEmpty();
+            Log.d(TAG, "Loaded " + entries.size() + " ratings");
+        }
+        if (dropped) {
+            PersistenceManager.getInstance().markDirty(PersistenceManager.Component.RATINGS);
+        }
+    }
+
+    /**
+     * Move the changed ratings into a game state transaction
+     * @param transaction Transaction to write to
+     * @return Instance IDs written, hand them to restoreChanges if the transaction fails
+     */
+    synchronized long[] writeRatings(GameStateStore.Transaction transaction) {
+        long[] ids = new long[changedIds.size()];
+        int count = 0;
+        for (long id : changedIds) {
+            ids[count++] = id;
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                transaction.remove(KEY_PREFIX + id);
+            } else {
+                transaction.putLong(KEY_PREFIX + id,
+                        (entry.reached & 0xFFFFFFFFL) << 32 | (long) entry.rating << 16 | entry.battles);
+            }
+        }
+        changedIds.clear();
+        return ids;
+    }
+
+    /**
+     * Mark ratings whose save failed as changed again
+     * @param ids Instance IDs returned by writeRatings
+     */
+    synchronized void restoreChanges(long[] ids) {
+        for (long id : ids) {
+            changedIds.add(id);
+        }
+    }
+
+    private static int reachedOf(long value) {
+        return (int) (value >>> 32);
+    }
+
+    /**
+     * Rating state of one Lutemon
+     */
+    private static final class Entry {
+        int rating;
+        // Rated battles, saturating at Character.MAX_VALUE
+        int battles;
+        // Sequence number of when the rating was reached, earlier comes first in its bucket
+        int reached;
+
+        Entry(int rating, int battles, int reached) {
+            this.rating = rating;
+            this.battles = battles;
+            this.reached = reached;
+        }
+    }
+}
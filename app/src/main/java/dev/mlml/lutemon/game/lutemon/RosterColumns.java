@@ -0,0 +1,420 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Column-oriented snapshot of the roster for bulk scans, sorts and aggregates.
+ * <p>
+ * Each stat is a primitive int column and species and color are dictionary codes, so
+ * filters, sorts and aggregates run over a few flat arrays without touching Lutemon
+ * objects. Rows are in roster order. A snapshot never changes, LutemonStorage hands out a
+ * new one after the roster changed. Use LutemonStorage.getLutemonById to get the Lutemon
+ * behind a row.
+ */
+public final class RosterColumns {
+    /**
+     * Int columns of a snapshot
+     */
+    public enum Column {
+        ATTACK,
+        DEFENSE,
+        MAX_HEALTH,
+        SPEED,
+        EXPERIENCE,
+        LEVEL,
+        // Ordinal of LootBoxEffect.Rarity
+        RARITY
+    }
+
+    /**
+     * Row predicate over the columns
+     */
+    public interface RowFilter {
+        boolean accept(RosterColumns columns, int row);
+    }
+
+    private final int size;
+    private final long[] ids;
+    private final int[][] columns;
+    private final int[] speciesCodes;
+    private final int[] colorCodes;
+    private final String[] species;
+    private final String[] colors;
+
+    private RosterColumns(Builder builder) {
+        size = builder.size;
+        ids = Arrays.copyOf(builder.ids, size);
+        columns = new int[Column.values().length][];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(builder.columns[i], size);
+        }
+        int[] experience = columns[Column.EXPERIENCE.ordinal()];
+        int[] levels = columns[Column.LEVEL.ordinal()];
+        int[] rarities = columns[Column.RARITY.ordinal()];
+        for (int row = 0; row < size; row++) {
+            levels[row] = ExperienceCurve.levelFor(experience[row]);
+            rarities[row] = LootBoxEffect.calculateRarity(get(Column.ATTACK, row), get(Column.DEFENSE, row),
+                    get(Column.MAX_HEALTH, row), get(Column.SPEED, row)).ordinal();
+        }
+        speciesCodes = Arrays.copyOf(builder.speciesCodes, size);
+        colorCodes = Arrays.copyOf(builder.colorCodes, size);
+        species = builder.species.values();
+        colors = builder.colors.values();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row Row in roster order
+     * @return Instance ID of the Lutemon at the row
+     */
+    public String getId(int row) {
+        return String.valueOf(ids[row]);
+    }
+
+    long getInstanceId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @param column Column to read
+     * @param row Row in roster order
+     * @return The value
+     */
+    public int get(Column column, int row) {
+        return columns[column.ordinal()][row];
+    }
+
+    /**
+     * @param row Row in roster order
+     * @return Schema ID of the Lutemon at the row, empty if it has none
+     */
+    public String getSchemaId(int row) {
+        return species[speciesCodes[row]];
+    }
+
+    /**
+     * @param row Row in roster order
+     * @return Color of the Lutemon at the row, empty if it has none
+     */
+    public String getColor(int row) {
+        return colors[colorCodes[row]];
+    }
+
+    /**
+     * @return Distinct colors, indexed by the codes used by colorHistogram
+     */
+    public String[] getColors() {
+        return colors.clone();
+    }
+
+    /**
+     * @param filter Predicate to apply to every row
+     * @return Matching rows in roster order
+     */
+    public int[] filter(RowFilter filter) {
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (filter.accept(this, row)) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * @param color Color to match
+     * @return Rows of this color in roster order
+     */
+    public int[] filterByColor(String color) {
+        int code = indexOf(colors, color);
+        if (code < 0) {
+            return new int[0];
+        }
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (colorCodes[row] == code) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * @param column Column to compare
+     * @param min Smallest accepted value
+     * @param max Largest accepted value
+     * @return Rows whose value lies in [min, max], in roster order
+     */
+    public int[] filterByRange(Column column, int min, int max) {
+        int[] values = columns[column.ordinal()];
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int value = values[row];
+            if (value >= min && value <= max) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Sort all rows by a column, equal values keep roster order
+     * @param column Column to sort by
+     * @param descending true for largest first
+     * @return Rows in sorted order
+     */
+    public int[] sortedRows(Column column, boolean descending) {
+        int[] values = columns[column.ordinal()];
+        // Value in the high half, row in the low half: one primitive sort, stable by row
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            long value = descending ? ~values[row] : values[row];
+            keys[row] = (value << 32) | row;
+        }
+        Arrays.sort(keys);
+
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+
+    /**
+     * @param column Column to add up
+     * @return Sum of the column, 0 for an empty roster
+     */
+    public long sum(Column column) {
+        int[] values = columns[column.ordinal()];
+        long sum = 0;
+        for (int row = 0; row < size; row++) {
+            sum += values[row];
+        }
+        return sum;
+    }
+
+    /**
+     * @param column Column to average
+     * @return Mean of the column, 0 for an empty roster
+     */
+    public double average(Column column) {
+        return size == 0 ? 0 : (double) sum(column) / size;
+    }
+
+    /**
+     * @param column Column to scan
+     * @param defaultValue Value returned for an empty roster
+     * @return Largest value of the column
+     */
+    public int max(Column column, int defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        int[] values = columns[column.ordinal()];
+        int max = values[0];
+        for (int row = 1; row < size; row++) {
+            max = Math.max(max, values[row]);
+        }
+        return max;
+    }
+
+    /**
+     * @param column Column to scan
+     * @param defaultValue Value returned for an empty roster
+     * @return Smallest value of the column
+     */
+    public int min(Column column, int defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        int[] values = columns[column.ordinal()];
+        int min = values[0];
+        for (int row = 1; row < size; row++) {
+            min = Math.min(min, values[row]);
+        }
+        return min;
+    }
+
+    /**
+     * @return Number of Lutemons per color, indexed like getColors
+     */
+    public int[] colorHistogram() {
+        int[] counts = new int[colors.length];
+        for (int row = 0; row < size; row++) {
+            counts[colorCodes[row]]++;
+        }
+        return counts;
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects rows for a snapshot. Strings read straight from a mapped save are
+     * dictionary coded from their bytes, they are only decoded once per distinct value.
+     * Null strings are coded as empty, the way the save formats store them.
+     */
+    static final class Builder {
+        private int size = 0;
+        private long[] ids;
+        private final int[][] columns = new int[Column.values().length][];
+        private int[] speciesCodes;
+        private int[] colorCodes;
+        private final Dictionary species = new Dictionary();
+        private final Dictionary colors = new Dictionary();
+
+        Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            ids = new long[capacity];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new int[capacity];
+            }
+            speciesCodes = new int[capacity];
+            colorCodes = new int[capacity];
+        }
+
+        void add(Lutemon lutemon) {
+            int row = addRow(LutemonStorage.parseInstanceId(lutemon.getId()), lutemon.getAttack(),
+                    lutemon.getDefense(), lutemon.getMaxHealth(), lutemon.getSpeed(), lutemon.getExperience());
+            speciesCodes[row] = species.code(lutemon.getSchemaId());
+            colorCodes[row] = colors.code(lutemon.getColor());
+        }
+
+        /**
+         * Add a row whose strings are still encoded as UTF-8 in a buffer
+         * @param schemaIdOffset Offset of the schema ID bytes
+         * @param colorOffset Offset of the color bytes
+         */
+        void add(long id, ByteBuffer buffer, int schemaIdOffset, int schemaIdLength,
+                 int colorOffset, int colorLength,
+                 int attack, int defense, int maxHealth, int speed, int experience) {
+            int row = addRow(id, attack, defense, maxHealth, speed, experience);
+            speciesCodes[row] = species.code(buffer, schemaIdOffset, schemaIdLength);
+            colorCodes[row] = colors.code(buffer, colorOffset, colorLength);
+        }
+
+        RosterColumns build() {
+            return new RosterColumns(this);
+        }
+
+        private int addRow(long id, int attack, int defense, int maxHealth, int speed, int experience) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], capacity);
+                }
+                speciesCodes = Arrays.copyOf(speciesCodes, capacity);
+                colorCodes = Arrays.copyOf(colorCodes, capacity);
+            }
+            int row = size++;
+            ids[row] = id;
+            columns[Column.ATTACK.ordinal()][row] = attack;
+            columns[Column.DEFENSE.ordinal()][row] = defense;
+            columns[Column.MAX_HEALTH.ordinal()][row] = maxHealth;
+            columns[Column.SPEED.ordinal()][row] = speed;
+            columns[Column.EXPERIENCE.ordinal()][row] = experience;
+            return row;
+        }
+    }
+
+    /**
+     * String dictionary keyed by value or by UTF-8 bytes, open addressing on the byte hash
+     */
+    private static final class Dictionary {
+        private String[] values = new String[8];
+        private byte[][] encoded = new byte[8][];
+        private int count = 0;
+        // Code + 1 per hash slot, 0 is empty
+        private int[] table = new int[16];
+
+        int code(String value) {
+            byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            return code(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+
+        int code(ByteBuffer buffer, int offset, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(offset + i);
+            }
+
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0) {
+                int code = table[slot] - 1;
+                if (matches(encoded[code], buffer, offset, length)) {
+                    return code;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            int code = append(new String(bytes, StandardCharsets.UTF_8), bytes);
+            table[slot] = code + 1;
+            if (count * 2 > table.length) {
+                rehash();
+            }
+            return code;
+        }
+
+        String[] values() {
+            return Arrays.copyOf(values, count);
+        }
+
+        private int append(String value, byte[] bytes) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                encoded = Arrays.copyOf(encoded, count * 2);
+            }
+            values[count] = value;
+            encoded[count] = bytes;
+            return count++;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = mix(Arrays.hashCode(encoded[code])) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = code + 1;
+            }
+        }
+
+        private static boolean matches(byte[] bytes, ByteBuffer buffer, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * CSV codec for the roster interchange format:
+ * id, schema ID, name, color, attack, defense, health, speed, experience.
+ * <p>
+ * Fields containing commas, quotes or line breaks are quoted with embedded quotes doubled
+ * (RFC 4180). Rows are encoded into and read through reusable buffers, and decoding only
+ * records field boundaries, numbers are parsed in place. Legacy 8-field rows without a
+ * schema ID are still accepted. Not thread-safe, use one codec per thread.
+ */
+public final class RosterCsvCodec {
+    private static final int FIELD_COUNT = 9;
+    private static final int LEGACY_FIELD_COUNT = 8;
+    private static final long INVALID_NUMBER = Long.MIN_VALUE;
+
+    private final StringBuilder row = new StringBuilder(64);
+    private final StringBuilder record = new StringBuilder(64);
+    private final StringBuilder unescaped = new StringBuilder(32);
+
+    // Boundaries of the fields of the last split record, quoted fields exclude their quotes
+    private final int[] fieldStart = new int[FIELD_COUNT + 1];
+    private final int[] fieldEnd = new int[FIELD_COUNT + 1];
+    private final boolean[] fieldQuoted = new boolean[FIELD_COUNT + 1];
+
+    /**
+     * Encode a Lutemon as one row without a line break
+     * @param lutemon The Lutemon to encode
+     * @return Reusable buffer holding the row, only valid until the next encode
+     */
+    public StringBuilder encode(Lutemon lutemon) {
+        row.setLength(0);
+        appendText(lutemon.getId());
+        row.append(',');
+        appendText(lutemon.getSchemaId());
+        row.append(',');
+        appendText(lutemon.getName());
+        row.append(',');
+        appendText(lutemon.getColor());
+        row.append(',').append(lutemon.getAttack())
+                .append(',').append(lutemon.getDefense())
+                .append(',').append(lutemon.getMaxHealth())
+                .append(',').append(lutemon.getSpeed())
+                .append(',').append(lutemon.getExperience());
+        return row;
+    }
+
+    /**
+     * Encode a Lutemon and append it as one line
+     * @param lutemon The Lutemon to write
+     * @param out Destination
+     * @throws IOException if the destination could not be written
+     */
+    public void write(Lutemon lutemon, Appendable out) throws IOException {
+        out.append(encode(lutemon)).append('\n');
+    }
+
+    /**
+     * Read the next record. Line breaks inside quoted fields belong to the record. A field
+     * is quoted only if it starts with a quote, quotes inside unquoted fields are literal,
+     * as legacy rows never escaped them.
+     * @param reader Source, should be buffered
+     * @return Reusable buffer holding the record without its line break, only valid until
+     *         the next read, or null at the end of the input
+     * @throws IOException if the source could not be read
+     */
+    public CharSequence readRecord(Reader reader) throws IOException {
+        record.setLength(0);
+        boolean quoted = false;
+        boolean atFieldStart = true;
+        // A quoted field just closed, another quote right after it is an escaped quote
+        boolean closed = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                    closed = true;
+                }
+                record.append((char) c);
+                continue;
+            }
+
+            if (c == '"' && (atFieldStart || closed)) {
+                quoted = true;
+            } else if (c == '\n' || c == '\r') {
+                if (record.length() == 0) {
+                    // Blank line or the second half of \r\n
+                    continue;
+                }
+                return record;
+            }
+            atFieldStart = c == ',';
+            closed = false;
+            record.append((char) c);
+        }
+        return record.length() > 0 ? record : null;
+    }
+
+    /**
+     * Decode one record
+     * @param line Record text without its line break
+     * @return The Lutemon, or null if the record is malformed
+     */
+    public Lutemon decode(CharSequence line) {
+        int count = split(line);
+        if (count == FIELD_COUNT) {
+            return new Lutemon(
+                    optionalText(line, 0), // id
+                    optionalText(line, 1), // schema id
+                    text(line, 2), // name
+                    text(line, 3), // color
+                    number(line, 4), // attack
+                    number(line, 5), // defense
+                    number(line, 6), // health
+                    number(line, 7), // speed
+                    number(line, 8)  // experience
+            );
+        }
+        if (count == LEGACY_FIELD_COUNT) {
+            // Legacy rows keyed by the schema ID, storage assigns a fresh instance ID
+            return new Lutemon(
+                    optionalText(line, 0), // id
+                    text(line, 1), // name
+                    text(line, 2), // color
+                    number(line, 3), // attack
+                    number(line, 4), // defense
+                    number(line, 5), // health
+                    number(line, 6), // speed
+                    number(line, 7)  // experience
+            );
+        }
+        return null;
+    }
+
+    /**
+     * Find the field boundaries of a record
+     * @return Number of fields, or -1 if the record is malformed
+     */
+    private int split(CharSequence line) {
+        int length = line.length();
+        int count = 0;
+        int position = 0;
+
+        while (true) {
+            if (count == fieldStart.length) {
+                return -1;
+            }
+
+            if (position < length && line.charAt(position) == '"') {
+                int start = position + 1;
+                int end = -1;
+                position = start;
+                while (position < length) {
+                    if (line.charAt(position) == '"') {
+                        if (position + 1 < length && line.charAt(position + 1) == '"') {
+                            position += 2;
+                            continue;
+                        }
+                        end = position;
+                        position++;
+                        break;
+                    }
+                    position++;
+                }
+                if (end < 0 || (position < length && line.charAt(position) != ',')) {
+                    // Unterminated quote or text after the closing quote
+                    return -1;
+                }
+                fieldStart[count] = start;
+                fieldEnd[count] = end;
+                fieldQuoted[count] = true;
+            } else {
+                int start = position;
+                while (position < length && line.charAt(position) != ',') {
+                    position++;
+                }
+                fieldStart[count] = start;
+                fieldEnd[count] = position;
+                fieldQuoted[count] = false;
+            }
+            count++;
+
+            if (position >= length) {
+                break;
+            }
+            // Skip the comma
+            position++;
+        }
+
+        // Numeric fields must be valid before any object is created
+        int firstNumber = count == FIELD_COUNT ? 4 : 3;
+        for (int field = firstNumber; field < count; field++) {
+            if (parseNumber(line, field) == INVALID_NUMBER) {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    private String text(CharSequence line, int field) {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (!fieldQuoted[field]) {
+            return line.subSequence(start, end).toString();
+        }
+
+        unescaped.setLength(0);
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            unescaped.append(c);
+            if (c == '"') {
+                // Doubled quote
+                i++;
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private String optionalText(CharSequence line, int field) {
+        return fieldStart[field] == fieldEnd[field] && !fieldQuoted[field] ? null : text(line, field);
+    }
+
+    private int number(CharSequence line, int field) {
+        return (int) parseNumber(line, field);
+    }
+
+    /**
+     * Parse an int field in place
+     * @return The value, or INVALID_NUMBER if the field is not an int
+     */
+    private long parseNumber(CharSequence line, int field) {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start == end) {
+            return INVALID_NUMBER;
+        }
+
+        boolean negative = line.charAt(start) == '-';
+        int position = negative ? start + 1 : start;
+        if (position == end) {
+            return INVALID_NUMBER;
+        }
+
+        long value = 0;
+        for (; position < end; position++) {
+            char c = line.charAt(position);
+            if (c < '0' || c > '9') {
+                return INVALID_NUMBER;
+            }
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return INVALID_NUMBER;
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            return INVALID_NUMBER;
+        }
+        return value;
+    }
+
+    private void appendText(String value) {
+        if (value == null) {
+            return;
+        }
+
+        boolean needsQuotes = value.isEmpty();
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            row.append(value);
+            return;
+        }
+
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+}
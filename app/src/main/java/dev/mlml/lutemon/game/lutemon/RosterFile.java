@@ -0,0 +1,307 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Versioned binary roster format.
+ * <p>
+ * Header: magic, format version, record count. Each record is prefixed with its byte
+ * length so readers can skip fields appended by newer versions of the same format.
+ * <p>
+ * Rarity is deliberately not stored. It is a function of attack, defense, health and
+ * speed (LootBoxEffect.calculateRarity) that Lutemon recomputes when a record is decoded,
+ * so a stored tier would only be redundant, and stale once the rarity thresholds change.
+ */
+final class RosterFile {
+    static final int MAGIC = 0x4C555452; // "LUTR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * Decodes records of a mapped roster file, offsets point at the record body
+     */
+    static final MappedRoster.Format MAPPED_FORMAT = new MappedRoster.Format() {
+        @Override
+        public long readId(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public Lutemon readLutemon(ByteBuffer buffer, int offset) {
+            buffer.position(offset);
+            return readRecord(buffer);
+        }
+
+        @Override
+        public void readColumns(ByteBuffer buffer, int offset, RosterColumns.Builder builder) {
+            long id = buffer.getLong(offset);
+            int schemaId = offset + 8;
+            int schemaIdLength = buffer.getShort(schemaId) & 0xFFFF;
+            int name = schemaId + 2 + schemaIdLength;
+            int color = name + 2 + (buffer.getShort(name) & 0xFFFF);
+            int colorLength = buffer.getShort(color) & 0xFFFF;
+            int stats = color + 2 + colorLength;
+            builder.add(id, buffer, schemaId + 2, schemaIdLength, color + 2, colorLength,
+                    buffer.getInt(stats), buffer.getInt(stats + 4), buffer.getInt(stats + 8),
+                    buffer.getInt(stats + 16), buffer.getInt(stats + 20));
+        }
+    };
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private RosterFile() {
+    }
+
+    /**
+     * Write the roster to a temporary file and atomically move it over the target
+     * @param file Target roster file
+     * @param lutemons Lutemons to write, in roster order
+     * @throws IOException if the file could not be written
+     */
+    static void write(File file, Collection<Lutemon> lutemons) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile);
+             FileChannel channel = outputStream.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(lutemons.size());
+
+            for (Lutemon lutemon : lutemons) {
+                byte[] schemaId = encodeString(lutemon.getSchemaId());
+                byte[] name = encodeString(lutemon.getName());
+                byte[] color = encodeString(lutemon.getColor());
+                int recordLength = recordLength(schemaId, name, color);
+
+                if (buffer.remaining() < recordLength + 4) {
+                    drain(channel, buffer);
+                }
+
+                buffer.putInt(recordLength);
+                writeRecord(buffer, lutemon, schemaId, name, color);
+            }
+
+            drain(channel, buffer);
+            channel.force(false);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+
+    /**
+     * Read every record in a roster file
+     * @param file Roster file to read
+     * @return Lutemons in file order
+     * @throws IOException if the file is unreadable, truncated or of an unknown version
+     */
+    static List<Lutemon> read(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid roster file size: " + size);
+            }
+
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        int count = readHeader(buffer);
+        List<Lutemon> lutemons = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) {
+                throw new IOException("Roster file truncated at record " + i);
+            }
+            int recordLength = buffer.getInt();
+            if (recordLength < 0 || recordLength > buffer.remaining()) {
+                throw new IOException("Roster file truncated at record " + i);
+            }
+
+            int recordEnd = buffer.position() + recordLength;
+            lutemons.add(readRecord(buffer));
+            buffer.position(recordEnd);
+        }
+
+        return lutemons;
+    }
+
+    /**
+     * Map a roster file read-only
+     * @param file Roster file to map
+     * @return The mapped file
+     * @throws IOException if the file could not be mapped
+     */
+    static ByteBuffer map(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid roster file size: " + size);
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Locate every record of a roster file without decoding it
+     * @param buffer The whole roster file
+     * @return Offset of each record body, in file order
+     * @throws IOException if the file is truncated or of an unknown version
+     */
+    static int[] indexRecords(ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        int count = readHeader(view);
+        int[] offsets = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            if (view.remaining() < 4) {
+                throw new IOException("Roster file truncated at record " + i);
+            }
+            int recordLength = view.getInt();
+            if (recordLength < 8 || recordLength > view.remaining()) {
+                throw new IOException("Roster file truncated at record " + i);
+            }
+            offsets[i] = view.position();
+            view.position(view.position() + recordLength);
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Validate the header and return the record count
+     * @param buffer Buffer positioned at the start of the file
+     * @return Number of records that follow the header
+     * @throws IOException if the header is not a supported roster header
+     */
+    static int readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a roster file");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported roster format version: " + version);
+        }
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Invalid roster record count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Decode one record body (without its length prefix)
+     * @param buffer Buffer positioned at the record body
+     * @return The decoded Lutemon
+     */
+    static Lutemon readRecord(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        String schemaId = readString(buffer);
+        String name = readString(buffer);
+        String color = readString(buffer);
+        int attack = buffer.getInt();
+        int defense = buffer.getInt();
+        int maxHealth = buffer.getInt();
+        int currentHealth = buffer.getInt();
+        int speed = buffer.getInt();
+        int experience = buffer.getInt();
+
+        Lutemon lutemon = new Lutemon(id >= 0 ? String.valueOf(id) : null, schemaId, name, color,
+                attack, defense, maxHealth, speed, experience);
+        lutemon.setCurrentHealth(currentHealth);
+        return lutemon;
+    }
+
+    /**
+     * Encode one record body (without its length prefix), used by the journal
+     * @param lutemon The Lutemon to encode
+     * @return Encoded record bytes
+     */
+    static byte[] encodeRecord(Lutemon lutemon) {
+        byte[] schemaId = encodeString(lutemon.getSchemaId());
+        byte[] name = encodeString(lutemon.getName());
+        byte[] color = encodeString(lutemon.getColor());
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength(schemaId, name, color));
+        writeRecord(buffer, lutemon, schemaId, name, color);
+        return buffer.array();
+    }
+
+    private static void writeRecord(ByteBuffer buffer, Lutemon lutemon,
+                                    byte[] schemaId, byte[] name, byte[] color) {
+        buffer.putLong(LutemonStorage.parseInstanceId(lutemon.getId()));
+        putString(buffer, schemaId);
+        putString(buffer, name);
+        putString(buffer, color);
+        buffer.putInt(lutemon.getAttack());
+        buffer.putInt(lutemon.getDefense());
+        buffer.putInt(lutemon.getMaxHealth());
+        buffer.putInt(lutemon.getCurrentHealth());
+        buffer.putInt(lutemon.getSpeed());
+        buffer.putInt(lutemon.getExperience());
+    }
+
+    private static int recordLength(byte[] schemaId, byte[] name, byte[] color) {
+        return 8 + (2 + schemaId.length) + (2 + name.length) + (2 + color.length) + 6 * 4;
+    }
+
+    private static byte[] encodeString(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            byte[] truncated = new byte[MAX_STRING_BYTES];
+            System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_BYTES);
+            return truncated;
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,235 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted secondary indexes over the roster, one per column for the whole roster and one
+ * per column for each color.
+ * <p>
+ * Entries are (value, instance ID) pairs kept in balanced trees, so top-k and range
+ * queries cost O(log n + k) and a changed Lutemon only moves the entries whose value
+ * changed. The index is built once from a column snapshot and then kept up to date by
+ * LutemonStorage on every add, remove and change. Not thread-safe, LutemonStorage guards
+ * it with its roster lock.
+ * <p>
+ * The index also keeps the number of Lutemons of each rarity, adjusted as entries of the
+ * RARITY column come and go.
+ */
+final class RosterIndex {
+    private static final RosterColumns.Column[] COLUMNS = RosterColumns.Column.values();
+    private static final int RARITY = RosterColumns.Column.RARITY.ordinal();
+
+    private final List<NavigableSet<Entry>> byColumn = new ArrayList<>(COLUMNS.length);
+    private final Map<String, List<NavigableSet<Entry>>> byColor = new HashMap<>();
+    private final Map<Long, Indexed> byId = new HashMap<>();
+    // Number of indexed Lutemons per rarity ordinal
+    private final int[] rarityCounts = new int[LootBoxEffect.Rarity.values().length];
+    // Scratch row of column values
+    private final int[] values = new int[COLUMNS.length];
+
+    private RosterIndex() {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            byColumn.add(new TreeSet<Entry>());
+        }
+    }
+
+    /**
+     * @param columns Snapshot of the roster to index
+     * @return Index of every row of the snapshot
+     */
+    static RosterIndex build(RosterColumns columns) {
+        RosterIndex index = new RosterIndex();
+        for (int row = 0; row < columns.size(); row++) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                index.values[i] = columns.get(COLUMNS[i], row);
+            }
+            index.insert(columns.getInstanceId(row), columns.getColor(row), index.values);
+        }
+        return index;
+    }
+
+    /**
+     * Index a Lutemon, or re-index it if it is already in the index
+     * @param id Instance ID
+     * @param lutemon The Lutemon
+     */
+    void put(long id, Lutemon lutemon) {
+        readValues(lutemon);
+        Indexed indexed = byId.get(id);
+        if (indexed == null) {
+            insert(id, lutemon.getColor() != null ? lutemon.getColor() : "", values);
+            return;
+        }
+
+        // Only entries whose value changed move, the others stay in place
+        List<NavigableSet<Entry>> colorSets = byColor.get(indexed.color);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Entry entry = indexed.entries[i];
+            if (entry.value == values[i]) {
+                continue;
+            }
+            if (i == RARITY) {
+                rarityCounts[entry.value]--;
+                rarityCounts[values[i]]++;
+            }
+            byColumn.get(i).remove(entry);
+            colorSets.get(i).remove(entry);
+            entry = new Entry(values[i], id);
+            indexed.entries[i] = entry;
+            byColumn.get(i).add(entry);
+            colorSets.get(i).add(entry);
+        }
+    }
+
+    /**
+     * @param id Instance ID of the Lutemon to drop from the index
+     */
+    void remove(long id) {
+        Indexed indexed = byId.remove(id);
+        if (indexed == null) {
+            return;
+        }
+        rarityCounts[indexed.entries[RARITY].value]--;
+        List<NavigableSet<Entry>> colorSets = byColor.get(indexed.color);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            byColumn.get(i).remove(indexed.entries[i]);
+            colorSets.get(i).remove(indexed.entries[i]);
+        }
+    }
+
+    /**
+     * @param column Column to rank by
+     * @param color Color to restrict to, null for every color
+     * @param limit Maximum number of results
+     * @return Instance IDs of the highest values first, equal values newest first
+     */
+    long[] top(RosterColumns.Column column, String color, int limit) {
+        NavigableSet<Entry> set = set(column, color);
+        if (set == null) {
+            return new long[0];
+        }
+        return collect(set.descendingIterator(), Math.max(0, Math.min(limit, set.size())));
+    }
+
+    /**
+     * @param column Column to compare
+     * @param color Color to restrict to, null for every color
+     * @param min Smallest accepted value
+     * @param max Largest accepted value
+     * @return Instance IDs with a value in [min, max], smallest value first
+     */
+    long[] range(RosterColumns.Column column, String color, int min, int max) {
+        NavigableSet<Entry> set = set(column, color);
+        if (set == null || min > max) {
+            return new long[0];
+        }
+        NavigableSet<Entry> range = set.subSet(new Entry(min, Long.MIN_VALUE), true, new Entry(max, Long.MAX_VALUE), true);
+        return collect(range.iterator(), range.size());
+    }
+
+    /**
+     * @param column Column to sort by
+     * @param color Color to restrict to, null for every color
+     * @param descending true for largest first
+     * @return Instance IDs in sorted order, equal values in ID order, reversed when descending
+     */
+    long[] sorted(RosterColumns.Column column, String color, boolean descending) {
+        NavigableSet<Entry> set = set(column, color);
+        if (set == null) {
+            return new long[0];
+        }
+        return collect(descending ? set.descendingIterator() : set.iterator(), set.size());
+    }
+
+    /**
+     * @return Number of indexed Lutemons per rarity, indexed by Rarity ordinal
+     */
+    int[] rarityCounts() {
+        return rarityCounts.clone();
+    }
+
+    private NavigableSet<Entry> set(RosterColumns.Column column, String color) {
+        if (color == null) {
+            return byColumn.get(column.ordinal());
+        }
+        List<NavigableSet<Entry>> colorSets = byColor.get(color);
+        return colorSets != null ? colorSets.get(column.ordinal()) : null;
+    }
+
+    private void insert(long id, String color, int[] rowValues) {
+        List<NavigableSet<Entry>> colorSets = byColor.get(color);
+        if (colorSets == null) {
+            colorSets = new ArrayList<>(COLUMNS.length);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                colorSets.add(new TreeSet<Entry>());
+            }
+            byColor.put(color, colorSets);
+        }
+
+        Entry[] entries = new Entry[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            // The same entry sits in the roster-wide and the color set
+            entries[i] = new Entry(rowValues[i], id);
+            byColumn.get(i).add(entries[i]);
+            colorSets.get(i).add(entries[i]);
+        }
+        byId.put(id, new Indexed(color, entries));
+        rarityCounts[rowValues[RARITY]]++;
+    }
+
+    private void readValues(Lutemon lutemon) {
+        values[RosterColumns.Column.ATTACK.ordinal()] = lutemon.getAttack();
+        values[RosterColumns.Column.DEFENSE.ordinal()] = lutemon.getDefense();
+        values[RosterColumns.Column.MAX_HEALTH.ordinal()] = lutemon.getMaxHealth();
+        values[RosterColumns.Column.SPEED.ordinal()] = lutemon.getSpeed();
+        values[RosterColumns.Column.EXPERIENCE.ordinal()] = lutemon.getExperience();
+        values[RosterColumns.Column.LEVEL.ordinal()] = lutemon.getLevel();
+        values[RARITY] = lutemon.getRarity().ordinal();
+    }
+
+    private static long[] collect(Iterator<Entry> iterator, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = iterator.next().id;
+        }
+        return ids;
+    }
+
+    /**
+     * Index entry, ordered by value and then by instance ID
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final int value;
+        final long id;
+
+        Entry(int value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byValue = Integer.compare(value, other.value);
+            return byValue != 0 ? byValue : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * Entries of one indexed Lutemon, one per column
+     */
+    private static final class Indexed {
+        final String color;
+        final Entry[] entries;
+
+        Indexed(String color, Entry[] entries) {
+            this.color = color;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of roster mutations replayed on top of the last roster snapshot.
+ * <p>
+ * Mutations are written in batches. Each batch is framed as payload length, CRC32 of the
+ * payload and the payload itself, so a batch torn by a crash is detected and dropped as a
+ * whole on replay.
+ */
+final class RosterJournal {
+    static final byte OP_PUT = 1;
+    static final byte OP_UPDATE = 2;
+    static final byte OP_REMOVE = 3;
+
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private final File file;
+    private FileOutputStream outputStream;
+    private FileChannel channel;
+
+    RosterJournal(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Current journal size in bytes
+     */
+    long size() {
+        return file.length();
+    }
+
+    /**
+     * Append a batch as one frame and sync it to disk
+     * @param batch The batch to write
+     * @throws IOException if the frame could not be written
+     */
+    void append(Batch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (channel == null) {
+            outputStream = new FileOutputStream(file, true);
+            channel = outputStream.getChannel();
+        }
+
+        writeFrame(channel, batch.payload());
+    }
+
+    /**
+     * Write one frame: payload length, CRC32 of the payload, payload. The frame is synced
+     * to disk before returning.
+     * @param channel Channel positioned at the end of the log
+     * @param payload Frame payload, from its position to its limit
+     * @throws IOException if the frame could not be written
+     */
+    static void writeFrame(FileChannel channel, ByteBuffer payload) throws IOException {
+        ByteBuffer body = payload.slice();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        header.putInt(body.remaining()).putInt((int) crc.getValue());
+        header.flip();
+
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        while (body.hasRemaining()) {
+            channel.write(body);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Close the append channel, the next append reopens the file
+     */
+    void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        outputStream = null;
+    }
+
+    /**
+     * Replay every intact batch of a journal file onto a roster map keyed by instance ID.
+     * A torn batch at the end of the file is cut off.
+     * @param file Journal file, missing files are treated as empty
+     * @param roster Roster map to update in place
+     * @return Number of mutations applied
+     * @throws IOException if the file could not be read
+     */
+    static int replay(File file, Map<String, Lutemon> roster) throws IOException {
+        Operations operations = new Operations() {
+            @Override
+            public void put(Lutemon lutemon) {
+                // Re-inserting moves a re-added Lutemon to the end, like a fresh add
+                roster.remove(lutemon.getId());
+                roster.put(lutemon.getId(), lutemon);
+            }
+
+            @Override
+            public void update(String id, int attack, int defense, int maxHealth, int currentHealth,
+                               int speed, int experience) {
+                Lutemon lutemon = roster.get(id);
+                if (lutemon != null) {
+                    setStats(lutemon, attack, defense, maxHealth, currentHealth, speed, experience);
+                }
+            }
+
+            @Override
+            public void remove(String id) {
+                roster.remove(id);
+            }
+        };
+        return readFrames(file, (buffer, frameEnd) -> readBatch(buffer, frameEnd, operations));
+    }
+
+    /**
+     * Replay every intact batch of a journal file onto a mapped roster. Only Lutemons
+     * the journal updates are decoded. A torn batch at the end of the file is cut off.
+     * @param file Journal file, missing files are treated as empty
+     * @param roster Mapped roster to update in place
+     * @return Number of mutations applied
+     * @throws IOException if the file could not be read
+     */
+    static int replay(File file, MappedRoster roster) throws IOException {
+        Operations operations = new Operations() {
+            @Override
+            public void put(Lutemon lutemon) {
+                roster.put(lutemon);
+            }
+
+            @Override
+            public void update(String id, int attack, int defense, int maxHealth, int currentHealth,
+                               int speed, int experience) {
+                Lutemon lutemon = roster.find(id);
+                if (lutemon != null) {
+                    setStats(lutemon, attack, defense, maxHealth, currentHealth, speed, experience);
+                }
+            }
+
+            @Override
+            public void remove(String id) {
+                roster.remove(id);
+            }
+        };
+        return readFrames(file, (buffer, frameEnd) -> readBatch(buffer, frameEnd, operations));
+    }
+
+    private static void setStats(Lutemon lutemon, int attack, int defense, int maxHealth, int currentHealth,
+                                 int speed, int experience) {
+        lutemon.setAttack(attack);
+        lutemon.setDefense(defense);
+        lutemon.setMaxHealth(maxHealth);
+        lutemon.setCurrentHealth(currentHealth);
+        lutemon.setSpeed(speed);
+        lutemon.setExperience(experience);
+    }
+
+    /**
+     * Decode the mutations of one batch payload
+     * @param buffer Buffer positioned at the start of the payload
+     * @param end Position just past the payload
+     * @param operations Receives the mutations in order
+     * @return Number of mutations read
+     * @throws IOException if the payload holds an unknown operation
+     */
+    static int readBatch(ByteBuffer buffer, int end, Operations operations) throws IOException {
+        int count = 0;
+        while (buffer.position() < end) {
+            readOperation(buffer, operations);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Hand every intact frame of a log file to a reader, in order. A torn or corrupt frame
+     * and everything after it is cut off the file.
+     * @param file Log file, missing files are treated as empty
+     * @param frameReader Reader for the frame payloads
+     * @return Sum of the counts returned by the reader
+     * @throws IOException if the file could not be read
+     */
+    static int readFrames(File file, FrameReader frameReader) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        ByteBuffer buffer;
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        int count = 0;
+        CRC32 crc = new CRC32();
+
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int frameStart = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                truncate(file, frameStart);
+                break;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                truncate(file, frameStart);
+                break;
+            }
+
+            int frameEnd = buffer.position() + length;
+            count += frameReader.read(buffer, frameEnd);
+            buffer.position(frameEnd);
+        }
+        if (buffer.hasRemaining() && buffer.remaining() < FRAME_HEADER_SIZE) {
+            // Torn frame header, later frames would be appended out of alignment
+            truncate(file, buffer.position());
+        }
+
+        return count;
+    }
+
+    private static void readOperation(ByteBuffer buffer, Operations operations) throws IOException {
+        byte op = buffer.get();
+        switch (op) {
+            case OP_PUT: {
+                int recordLength = buffer.getInt();
+                int recordEnd = buffer.position() + recordLength;
+                Lutemon lutemon = RosterFile.readRecord(buffer);
+                buffer.position(recordEnd);
+                operations.put(lutemon);
+                break;
+            }
+            case OP_UPDATE: {
+                String id = String.valueOf(buffer.getLong());
+                int attack = buffer.getInt();
+                int defense = buffer.getInt();
+                int maxHealth = buffer.getInt();
+                int currentHealth = buffer.getInt();
+                int speed = buffer.getInt();
+                int experience = buffer.getInt();
+                operations.update(id, attack, defense, maxHealth, currentHealth, speed, experience);
+                break;
+            }
+            case OP_REMOVE:
+                operations.remove(String.valueOf(buffer.getLong()));
+                break;
+            default:
+                throw new IOException("Unknown journal operation: " + op);
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+
+    /**
+     * Consumer of frame payloads, see readFrames
+     */
+    interface FrameReader {
+        /**
+         * @param buffer Buffer positioned at the start of the payload
+         * @param frameEnd Position just past the payload
+         * @return Number of records read from the frame
+         */
+        int read(ByteBuffer buffer, int frameEnd) throws IOException;
+    }
+
+    /**
+     * Receiver of the mutations of a batch, see readBatch
+     */
+    interface Operations {
+        /**
+         * @param lutemon Lutemon added, or saved in full
+         */
+        void put(Lutemon lutemon);
+
+        /**
+         * New stats of a Lutemon
+         * @param id Instance ID
+         */
+        void update(String id, int attack, int defense, int maxHealth, int currentHealth, int speed,
+                    int experience);
+
+        /**
+         * @param id Instance ID of the removed Lutemon
+         */
+        void remove(String id);
+    }
+
+    /**
+     * Mutations collected in memory and committed to the journal as one frame
+     */
+    static final class Batch {
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        /**
+         * @param changes Roster changes in the order they should be applied
+         * @return Batch holding the changes
+         */
+        static Batch of(List<RosterStore.Change> changes) {
+            Batch batch = new Batch();
+            for (RosterStore.Change change : changes) {
+                switch (change.op) {
+                    case OP_PUT:
+                        batch.put(change.lutemon);
+                        break;
+                    case OP_UPDATE:
+                        batch.update(change.lutemon);
+                        break;
+                    default:
+                        batch.remove(change.id);
+                        break;
+                }
+            }
+            return batch;
+        }
+
+        boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        void put(Lutemon lutemon) {
+            byte[] record = RosterFile.encodeRecord(lutemon);
+            ensureCapacity(1 + 4 + record.length);
+            buffer.put(OP_PUT).putInt(record.length).put(record);
+        }
+
+        void update(Lutemon lutemon) {
+            ensureCapacity(1 + 8 + 6 * 4);
+            buffer.put(OP_UPDATE)
+                    .putLong(LutemonStorage.parseInstanceId(lutemon.getId()))
+                    .putInt(lutemon.getAttack())
+                    .putInt(lutemon.getDefense())
+                    .putInt(lutemon.getMaxHealth())
+                    .putInt(lutemon.getCurrentHealth())
+                    .putInt(lutemon.getSpeed())
+                    .putInt(lutemon.getExperience());
+        }
+
+        void remove(String id) {
+            ensureCapacity(1 + 8);
+            buffer.put(OP_REMOVE).putLong(LutemonStorage.parseInstanceId(id));
+        }
+
+        /**
+         * @return Copy of the payload, readable with readBatch
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private ByteBuffer payload() {
+            ByteBuffer payload = ByteBuffer.wrap(buffer.array(), 0, buffer.position());
+            return payload.slice();
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+    }
+}
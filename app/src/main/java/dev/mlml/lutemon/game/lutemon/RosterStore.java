@@ -0,0 +1,86 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistence backend behind LutemonStorage
+ */
+interface RosterStore {
+    byte OP_PUT = 1;
+    byte OP_UPDATE = 2;
+    byte OP_REMOVE = 3;
+
+    /**
+     * @return true if this store holds a saved roster
+     */
+    boolean exists();
+
+    /**
+     * Read the saved roster in roster order, keyed by instance ID.
+     * Lutemons without a storage-issued ID are keyed by a placeholder.
+     * @return The saved roster
+     * @throws IOException if the saved roster could not be read
+     */
+    Map<String, Lutemon> load() throws IOException;
+
+    /**
+     * @return true if the files of this store changed since it last read or wrote them,
+     *         i.e. something other than this store modified the saved roster
+     */
+    boolean isModifiedOnDisk();
+
+    /**
+     * Map the saved roster for lazy reads instead of decoding it. Changes saved since the
+     * mapped file was written are replayed onto it, see MappedRoster.takeAdded.
+     * @return The mapped roster, or null if the saved state cannot be served from one file
+     *         or its IDs need reassigning; load() must be used then
+     * @throws IOException if the saved roster could not be mapped
+     */
+    MappedRoster map() throws IOException;
+
+    /**
+     * Persist roster changes. The Lutemons are only read, never modified.
+     * @param changes Changes in the order they should be applied
+     * @throws IOException if the changes could not be written
+     */
+    void save(List<Change> changes) throws IOException;
+
+    /**
+     * Replace the whole saved roster
+     * @param roster Every Lutemon, in roster order
+     * @throws IOException if the roster could not be written
+     */
+    void rewrite(Collection<Lutemon> roster) throws IOException;
+
+    /**
+     * Remove every file belonging to this store
+     */
+    void delete();
+
+    /**
+     * Fold a file's modification time and length into a stamp
+     * @param stamp Stamp so far
+     * @param file File to fold in, missing files count as time and length 0
+     * @return The combined stamp
+     */
+    static long fileStamp(long stamp, File file) {
+        stamp = stamp * 31 + file.lastModified();
+        return stamp * 31 + file.length();
+    }
+
+    final class Change {
+        final byte op;
+        final String id;
+        final Lutemon lutemon;
+
+        Change(byte op, String id, Lutemon lutemon) {
+            this.op = op;
+            this.id = id;
+            this.lutemon = lutemon;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alternative roster backend keeping every Lutemon in a fixed-width slot of one file.
+ * <p>
+ * A changed Lutemon is rewritten in place with a positional write of its stats, so a save
+ * costs O(changed records). Removed slots go on a free list and are reused by later adds,
+ * a compaction pass packs the live slots once too many of them are free. Names longer than
+ * their slot field are truncated. A schema ID or color that does not fit would no longer
+ * resolve its species, so such Lutemons are rejected with an IOException instead.
+ * <p>
+ * Slots hold no rarity tier, like RosterFile records. Decoded Lutemons and column
+ * snapshots derive it from the stored stats, so a stat update never has to rewrite it.
+ */
+final class SlottedRosterStore implements RosterStore {
+    private static final String TAG = "SlottedRosterStore";
+    private static final String FILENAME = "lutemons.slots";
+    private static final String COMPACTED_FILENAME = "lutemons.slots.compact";
+
+    private static final int MAGIC = 0x4C555453; // "LUTS"
+    private static final int VERSION = 1;
+    // Header: magic, version, slot size, slot count
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_SLOT_COUNT = 12;
+    static final int SLOT_SIZE = 128;
+
+    // Slot layout
+    private static final int OFFSET_STATE = 0;       // byte, 0 free, 1 live
+    private static final int OFFSET_ID = 1;          // long
+    private static final int OFFSET_SEQUENCE = 9;    // long, keeps roster order across slot reuse
+    private static final int OFFSET_STATS = 17;      // attack, defense, max health, current health, speed, experience
+    private static final int STATS_SIZE = 6 * 4;
+    private static final int OFFSET_SCHEMA_ID = 41;  // length byte + bytes
+    private static final int SCHEMA_ID_BYTES = 23;
+    private static final int OFFSET_COLOR = 65;
+    private static final int COLOR_BYTES = 15;
+    private static final int OFFSET_NAME = 81;
+    private static final int NAME_BYTES = 46;
+
+    private static final byte STATE_FREE = 0;
+    private static final byte STATE_LIVE = 1;
+
+    // Compact once at least half of a file with this many slots is free
+    private static final int COMPACTION_MIN_SLOTS = 64;
+
+    private static final MappedRoster.Format SLOT_FORMAT = new MappedRoster.Format() {
+        @Override
+        public long readId(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset + OFFSET_ID);
+        }
+
+        @Override
+        public Lutemon readLutemon(ByteBuffer buffer, int offset) {
+            long id = buffer.getLong(offset + OFFSET_ID);
+            int stats = offset + OFFSET_STATS;
+            Lutemon lutemon = new Lutemon(id >= 0 ? String.valueOf(id) : null,
+                    readString(buffer, offset + OFFSET_SCHEMA_ID),
+                    readString(buffer, offset + OFFSET_NAME),
+                    readString(buffer, offset + OFFSET_COLOR),
+                    buffer.getInt(stats), buffer.getInt(stats + 4), buffer.getInt(stats + 8),
+                    buffer.getInt(stats + 16), buffer.getInt(stats + 20));
+            lutemon.setCurrentHealth(buffer.getInt(stats + 12));
+            return lutemon;
+        }
+
+        @Override
+        public void readColumns(ByteBuffer buffer, int offset, RosterColumns.Builder builder) {
+            int schemaId = offset + OFFSET_SCHEMA_ID;
+            int color = offset + OFFSET_COLOR;
+            int stats = offset + OFFSET_STATS;
+            builder.add(buffer.getLong(offset + OFFSET_ID),
+                    buffer, schemaId + 1, buffer.get(schemaId) & 0xFF, color + 1, buffer.get(color) & 0xFF,
+                    buffer.getInt(stats), buffer.getInt(stats + 4), buffer.getInt(stats + 8),
+                    buffer.getInt(stats + 16), buffer.getInt(stats + 20));
+        }
+    };
+
+    private final File file;
+    private final File compactedFile;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+
+    private final LongIntMap slotById = new LongIntMap();
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private int slotCount = 0;
+    private long nextSequence = 0;
+    // File stamp after the last read or write by this store
+    private long knownStamp = 0;
+
+    private final ByteBuffer slotBuffer = ByteBuffer.allocate(SLOT_SIZE);
+    private final ByteBuffer statsBuffer = ByteBuffer.allocate(STATS_SIZE);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+
+    SlottedRosterStore(File filesDir) {
+        file = new File(filesDir, FILENAME);
+        compactedFile = new File(filesDir, COMPACTED_FILENAME);
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized boolean exists() {
+        return file.exists();
+    }
+
+    @Override
+    public synchronized boolean isModifiedOnDisk() {
+        return stamp() != knownStamp;
+    }
+
+    @Override
+    public synchronized Map<String, Lutemon> load() throws IOException {
+        open();
+        ByteBuffer slots = mapSlots();
+
+        Map<String, Lutemon> roster = new LinkedHashMap<>();
+        for (int offset : liveOffsetsInOrder(slots)) {
+            Lutemon lutemon = SLOT_FORMAT.readLutemon(slots, offset);
+            String key = lutemon.getId() != null ? lutemon.getId() : "#" + roster.size();
+            roster.put(key, lutemon);
+        }
+        knownStamp = stamp();
+        return roster;
+    }
+
+    @Override
+    public synchronized MappedRoster map() throws IOException {
+        open();
+        ByteBuffer slots = mapSlots();
+        knownStamp = stamp();
+        return MappedRoster.create(slots, SLOT_FORMAT, liveOffsetsInOrder(slots));
+    }
+
+    @Override
+    public synchronized void save(List<Change> changes) throws IOException {
+        // Rejected before anything is written so the file never holds half a save
+        for (Change change : changes) {
+            if (change.op != OP_REMOVE) {
+                checkFits(change.lutemon);
+            }
+        }
+        open();
+        int previousSlotCount = slotCount;
+
+        for (Change change : changes) {
+            long id = LutemonStorage.parseInstanceId(change.id);
+            int slot = id >= 0 ? slotById.get(id) : -1;
+            switch (change.op) {
+                case OP_REMOVE:
+                    if (slot >= 0) {
+                        slotById.remove(id);
+                        freeSlot(slot);
+                    }
+                    break;
+                case OP_UPDATE:
+                    if (slot >= 0) {
+                        writeStats(slot, change.lutemon);
+                        break;
+                    }
+                    // Not stored yet, fall through to a full write
+                case OP_PUT:
+                default:
+                    if (slot < 0) {
+                        slot = allocateSlot();
+                        if (id >= 0) {
+                            slotById.put(id, slot);
+                        }
+                    }
+                    writeSlot(channel, slot, change.lutemon, nextSequence++);
+                    break;
+            }
+        }
+
+        if (slotCount != previousSlotCount) {
+            writeHeader(channel, slotCount);
+        }
+        channel.force(false);
+
+        if (slotCount >= COMPACTION_MIN_SLOTS && freeCount * 2 >= slotCount) {
+            compact();
+        }
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized void rewrite(Collection<Lutemon> roster) throws IOException {
+        close();
+        try (RandomAccessFile output = new RandomAccessFile(compactedFile, "rw")) {
+            output.setLength(0);
+            FileChannel outputChannel = output.getChannel();
+            int slot = 0;
+            for (Lutemon lutemon : roster) {
+                checkFits(lutemon);
+                writeSlot(outputChannel, slot, lutemon, slot);
+                slot++;
+            }
+            writeHeader(outputChannel, slot);
+            outputChannel.force(false);
+        }
+        replaceFile();
+        knownStamp = stamp();
+    }
+
+    @Override
+    public synchronized void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Could not delete " + file.getName());
+        }
+        knownStamp = stamp();
+    }
+
+    /**
+     * Pack the live slots to the front of a new file, dropping all free slots
+     * @throws IOException if the compacted file could not be written
+     */
+    private void compact() throws IOException {
+        int live = slotCount - freeCount;
+        try (RandomAccessFile output = new RandomAccessFile(compactedFile, "rw")) {
+            output.setLength(0);
+            FileChannel outputChannel = output.getChannel();
+            int target = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                readSlot(slot);
+                if (slotBuffer.get(OFFSET_STATE) != STATE_LIVE) {
+                    continue;
+                }
+                slotBuffer.rewind();
+                long position = slotPosition(target);
+                while (slotBuffer.hasRemaining()) {
+                    position += outputChannel.write(slotBuffer, position);
+                }
+                target++;
+            }
+            writeHeader(outputChannel, target);
+            outputChannel.force(false);
+        }
+
+        close();
+        replaceFile();
+        Log.d(TAG, "Compacted " + live + " live slots");
+    }
+
+    private void replaceFile() throws IOException {
+        if (!compactedFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+        open();
+    }
+
+    /**
+     * Open the file and rebuild the slot index and free list from it
+     * @throws IOException if the file is not a slotted roster file
+     */
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        slotById.clear();
+        freeCount = 0;
+        slotCount = 0;
+        nextSequence = 0;
+
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel, 0);
+            return;
+        }
+
+        headerBuffer.clear();
+        readFully(headerBuffer, 0);
+        headerBuffer.flip();
+        if (headerBuffer.getInt() != MAGIC) {
+            close();
+            throw new IOException("Not a slotted roster file");
+        }
+        int version = headerBuffer.getInt();
+        int slotSize = headerBuffer.getInt();
+        if (version != VERSION || slotSize != SLOT_SIZE) {
+            close();
+            throw new IOException("Unsupported slotted roster format " + version + "/" + slotSize);
+        }
+        slotCount = headerBuffer.getInt();
+        if (channel.size() < slotPosition(slotCount)) {
+            close();
+            throw new IOException("Slotted roster file truncated");
+        }
+
+        indexSlots(mapSlots());
+    }
+
+    /**
+     * Rebuild the slot index, free list and next sequence number from the slot states
+     * @param slots Mapped slot area
+     */
+    private void indexSlots(ByteBuffer slots) {
+        slotById.clear();
+        freeCount = 0;
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = slot * SLOT_SIZE;
+            if (slots.get(offset + OFFSET_STATE) != STATE_LIVE) {
+                pushFree(slot);
+                continue;
+            }
+
+            long id = slots.getLong(offset + OFFSET_ID);
+            nextSequence = Math.max(nextSequence, slots.getLong(offset + OFFSET_SEQUENCE) + 1);
+            if (id >= 0) {
+                slotById.put(id, slot);
+            }
+        }
+    }
+
+    /**
+     * Offsets of all live slots, ordered by sequence so reused slots keep roster order
+     * @param slots Mapped slot area
+     * @return Slot offsets in roster order
+     */
+    private int[] liveOffsetsInOrder(ByteBuffer slots) {
+        int[] offsets = new int[slotCount - freeCount];
+        boolean ordered = true;
+        long lastSequence = -1;
+        int row = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = slot * SLOT_SIZE;
+            if (slots.get(offset + OFFSET_STATE) != STATE_LIVE) {
+                continue;
+            }
+            long sequence = slots.getLong(offset + OFFSET_SEQUENCE);
+            ordered &= sequence > lastSequence;
+            lastSequence = sequence;
+            offsets[row++] = offset;
+        }
+
+        if (!ordered) {
+            Integer[] order = new Integer[offsets.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = offsets[i];
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(
+                    slots.getLong(a + OFFSET_SEQUENCE), slots.getLong(b + OFFSET_SEQUENCE)));
+            for (int i = 0; i < order.length; i++) {
+                offsets[i] = order[i];
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Map the slot area of the file read-only. In-place writes stay visible through the mapping.
+     * @return Buffer whose offset 0 is the first slot
+     * @throws IOException if the file could not be mapped
+     */
+    private ByteBuffer mapSlots() throws IOException {
+        long size = (long) slotCount * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Slotted roster file too large to map: " + size);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size);
+    }
+
+    /**
+     * @param lutemon Lutemon to store
+     * @throws IOException if its schema ID or color is too long for the slot
+     */
+    private static void checkFits(Lutemon lutemon) throws IOException {
+        checkFits("Schema ID", lutemon.getSchemaId(), SCHEMA_ID_BYTES);
+        checkFits("Color", lutemon.getColor(), COLOR_BYTES);
+    }
+
+    private static void checkFits(String field, String value, int maxBytes) throws IOException {
+        if (value != null && value.getBytes(StandardCharsets.UTF_8).length > maxBytes) {
+            throw new IOException(field + " \"" + value + "\" is longer than " + maxBytes + " bytes");
+        }
+    }
+
+    private void writeSlot(FileChannel target, int slot, Lutemon lutemon, long sequence) throws IOException {
+        slotBuffer.clear();
+        Arrays.fill(slotBuffer.array(), (byte) 0);
+        slotBuffer.put(OFFSET_STATE, STATE_LIVE);
+        slotBuffer.putLong(OFFSET_ID, LutemonStorage.parseInstanceId(lutemon.getId()));
+        slotBuffer.putLong(OFFSET_SEQUENCE, sequence);
+        slotBuffer.position(OFFSET_STATS);
+        putStats(slotBuffer, lutemon);
+        putString(OFFSET_SCHEMA_ID, lutemon.getSchemaId(), SCHEMA_ID_BYTES);
+        putString(OFFSET_COLOR, lutemon.getColor(), COLOR_BYTES);
+        putString(OFFSET_NAME, lutemon.getName(), NAME_BYTES);
+
+        slotBuffer.clear();
+        long position = slotPosition(slot);
+        while (slotBuffer.hasRemaining()) {
+            position += target.write(slotBuffer, position);
+        }
+    }
+
+    private void writeStats(int slot, Lutemon lutemon) throws IOException {
+        statsBuffer.clear();
+        putStats(statsBuffer, lutemon);
+        statsBuffer.flip();
+        long position = slotPosition(slot) + OFFSET_STATS;
+        while (statsBuffer.hasRemaining()) {
+            position += channel.write(statsBuffer, position);
+        }
+    }
+
+    private void freeSlot(int slot) throws IOException {
+        ByteBuffer state = ByteBuffer.allocate(1);
+        state.put(STATE_FREE).flip();
+        channel.write(state, slotPosition(slot) + OFFSET_STATE);
+        pushFree(slot);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        return slotCount++;
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void readSlot(int slot) throws IOException {
+        slotBuffer.clear();
+        readFully(slotBuffer, slotPosition(slot));
+        slotBuffer.clear();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Slotted roster file truncated");
+            }
+            position += read;
+        }
+    }
+
+    private void writeHeader(FileChannel target, int count) throws IOException {
+        headerBuffer.clear();
+        headerBuffer.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).putInt(count);
+        headerBuffer.flip();
+        long position = 0;
+        while (headerBuffer.hasRemaining()) {
+            position += target.write(headerBuffer, position);
+        }
+    }
+
+    private static void putStats(ByteBuffer buffer, Lutemon lutemon) {
+        buffer.putInt(lutemon.getAttack());
+        buffer.putInt(lutemon.getDefense());
+        buffer.putInt(lutemon.getMaxHealth());
+        buffer.putInt(lutemon.getCurrentHealth());
+        buffer.putInt(lutemon.getSpeed());
+        buffer.putInt(lutemon.getExperience());
+    }
+
+    private void putString(int offset, String value, int maxBytes) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(bytes.length, maxBytes);
+        // Never cut a multi-byte character in half
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        slotBuffer.put(offset, (byte) length);
+        slotBuffer.position(offset + 1);
+        slotBuffer.put(bytes, 0, length);
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long stamp() {
+        return RosterStore.fileStamp(17, file);
+    }
+
+    private static long slotPosition(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        randomAccessFile = null;
+    }
+}
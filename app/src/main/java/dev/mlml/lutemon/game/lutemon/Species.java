@@ -0,0 +1,106 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable species template from the Lutemon schema.
+ * <p>
+ * Species are flyweights: every Lutemon references its species instead of carrying its own
+ * copies of the schema ID, color and base name. Lutemons of species missing from the
+ * schema share an unregistered species, see SpeciesRegistry.resolve.
+ */
+public final class Species {
+    private final String id;
+    private final String name;
+    private final String color;
+    private final int attack;
+    private final int defense;
+    private final int health;
+    private final int speed;
+    private final String artKey;
+    // Type ID of the color in typeChart, resolved on first use per chart. typeId is
+    // written before the volatile typeChart so readers never pair a chart with a stale ID.
+    private volatile TypeChart typeChart;
+    private int typeId;
+
+    public Species(String id, String name, String color, int attack, int defense, int health, int speed) {
+        this(id, name, color, attack, defense, health, speed, id);
+    }
+
+    /**
+     * @param artKey Key of the species' artwork, defaults to the ID in the schema
+     */
+    public Species(String id, String name, String color, int attack, int defense, int health, int speed,
+                   String artKey) {
+        this.id = id;
+        this.name = name;
+        this.color = color;
+        this.attack = attack;
+        this.defense = defense;
+        this.health = health;
+        this.speed = speed;
+        this.artKey = artKey;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public int getAttack() {
+        return attack;
+    }
+
+    public int getDefense() {
+        return defense;
+    }
+
+    public int getHealth() {
+        return health;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return Key of the species' artwork, e.g. "fire_1"
+     */
+    public String getArtKey() {
+        return artKey;
+    }
+
+    /**
+     * @param chart Type chart to look the color up in
+     * @return Type ID of this species' color in the chart
+     */
+    int getTypeId(TypeChart chart) {
+        if (typeChart != chart) {
+            typeId = chart.typeOf(color);
+            typeChart = chart;
+        }
+        return typeId;
+    }
+
+    /**
+     * Create a Lutemon carrying this species' base stats
+     * @param id Instance ID, null to let LutemonStorage assign one
+     * @return A new Lutemon of this species
+     */
+    public Lutemon createLutemon(String id) {
+        return new Lutemon(id, this, Lutemon.NO_NAME_NUMBER, attack, defense, health, speed, 0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return name + " (" + id + ")";
+    }
+}
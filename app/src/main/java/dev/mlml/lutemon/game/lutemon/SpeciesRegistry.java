@@ -0,0 +1,337 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable catalog of every species in the Lutemon schema, indexed by schema ID and color,
+ * together with the type chart. Loaded once per process on first use, from the catalog
+ * compiled at build time or, when that is missing, by parsing the schema and type chart
+ * assets. Loading installs the type chart as TypeChart.getCurrent.
+ */
+public final class SpeciesRegistry {
+    private static final String TAG = "SpeciesRegistry";
+    static final String SCHEMA_FILENAME = "lutemon_schema.json";
+    static final String TYPE_CHART_FILENAME = "type_chart.json";
+    // Generated from the schema at build time, see compileSpeciesCatalog in app/build.gradle
+    static final String CATALOG_FILENAME = "species_catalog.bin";
+    private static final int CATALOG_MAGIC = 0x4C555443; // "LUTC"
+    private static final int CATALOG_VERSION = 3;
+
+    private static volatile SpeciesRegistry instance = null;
+    // Flyweights for species missing from the schema, by schema ID then color
+    private static final Map<String, Map<String, Species>> unregistered = new HashMap<>();
+
+    private final List<Species> species;
+    private final Map<String, Species> byId;
+    private final Map<String, List<Species>> byColor;
+    private final TypeChart typeChart;
+
+    private SpeciesRegistry(List<Species> species, TypeChart typeChart) {
+        Map<String, Species> idIndex = new HashMap<>();
+        Map<String, List<Species>> colorIndex = new HashMap<>();
+        for (Species entry : species) {
+            if (idIndex.put(entry.getId(), entry) != null) {
+                Log.e(TAG, "Duplicate species ID: " + entry.getId());
+            }
+            List<Species> sameColor = colorIndex.get(entry.getColor());
+            if (sameColor == null) {
+                sameColor = new ArrayList<>();
+                colorIndex.put(entry.getColor(), sameColor);
+            }
+            sameColor.add(entry);
+        }
+        for (Map.Entry<String, List<Species>> entry : colorIndex.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        this.species = Collections.unmodifiableList(new ArrayList<>(species));
+        this.byId = Collections.unmodifiableMap(idIndex);
+        this.byColor = Collections.unmodifiableMap(colorIndex);
+        this.typeChart = typeChart;
+    }
+
+    /**
+     * Get the registry, loading the schema on first use
+     * @param context Any context, only used for the first load
+     * @return The species registry
+     */
+    public static SpeciesRegistry getInstance(Context context) {
+        SpeciesRegistry registry = instance;
+        if (registry == null) {
+            synchronized (SpeciesRegistry.class) {
+                registry = instance;
+                if (registry == null) {
+                    registry = load(context);
+                    TypeChart.setCurrent(registry.typeChart);
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Find the shared species of a Lutemon. Lutemons whose species is not in the loaded
+     * schema, or whose color differs from it, share an unregistered species with the same
+     * ID and color, an empty base name and no base stats.
+     * @param schemaId Schema ID, not null
+     * @param color Color / type name
+     * @return The species flyweight
+     * @throws IllegalStateException if the registry is not loaded yet, every Lutemon
+     *         would silently lose its species' name and base stats
+     */
+    static Species resolve(String schemaId, String color) {
+        SpeciesRegistry registry = instance;
+        if (registry == null) {
+            throw new IllegalStateException("Species registry not loaded, call getInstance(Context) before creating Lutemons");
+        }
+        Species species = registry.byId.get(schemaId);
+        if (species != null && Objects.equals(species.getColor(), color)) {
+            return species;
+        }
+
+        synchronized (unregistered) {
+            Map<String, Species> sameId = unregistered.get(schemaId);
+            if (sameId == null) {
+                sameId = new HashMap<>();
+                unregistered.put(schemaId, sameId);
+            }
+            Species unregisteredSpecies = sameId.get(color);
+            if (unregisteredSpecies == null) {
+                unregisteredSpecies = new Species(schemaId, "", color, 0, 0, 0, 0);
+                sameId.put(color, unregisteredSpecies);
+            }
+            return unregisteredSpecies;
+        }
+    }
+
+    /**
+     * Use the given species and type chart instead of loading the assets, for tests that
+     * run without a Context
+     * @param species Species in schema order
+     * @param typeChart Type chart, installed as TypeChart.getCurrent
+     */
+    @VisibleForTesting
+    static void install(List<Species> species, TypeChart typeChart) {
+        synchronized (SpeciesRegistry.class) {
+            SpeciesRegistry registry = new SpeciesRegistry(species, typeChart);
+            TypeChart.setCurrent(typeChart);
+            instance = registry;
+        }
+    }
+
+    /**
+     * Drop the loaded registry, the next getInstance reads the schema again
+     */
+    @VisibleForTesting
+    public static void invalidate() {
+        synchronized (SpeciesRegistry.class) {
+            instance = null;
+        }
+    }
+
+    /**
+     * @return Type chart loaded with the species
+     */
+    public TypeChart getTypeChart() {
+        return typeChart;
+    }
+
+    /**
+     * @return Every species in schema order
+     */
+    public List<Species> getAll() {
+        return species;
+    }
+
+    /**
+     * @param id Schema ID, e.g. "fire_1"
+     * @return The species, or null if there is none with this ID
+     */
+    public Species getById(String id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    /**
+     * @param color Color / type name, e.g. "Red"
+     * @return Species of this color in schema order, empty if there are none
+     */
+    public List<Species> getByColor(String color) {
+        List<Species> sameColor = byColor.get(color);
+        return sameColor != null ? sameColor : Collections.<Species>emptyList();
+    }
+
+    public boolean isEmpty() {
+        return species.isEmpty();
+    }
+
+    public int size() {
+        return species.size();
+    }
+
+    /**
+     * @param random Random source
+     * @return A uniformly chosen species, or null if the registry is empty
+     */
+    public Species getRandom(RandomSource random) {
+        return species.isEmpty() ? null : species.get(random.nextInt(species.size()));
+    }
+
+    private static SpeciesRegistry load(Context context) {
+        AssetManager assetManager = context.getAssets();
+        try (InputStream inputStream = assetManager.open(CATALOG_FILENAME)) {
+            List<Species> species = new ArrayList<>();
+            TypeChart typeChart = readCatalog(inputStream, species);
+            Log.d(TAG, "Loaded " + species.size() + " species and " + typeChart.size()
+                    + " types from the compiled catalog");
+            return new SpeciesRegistry(species, typeChart);
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, CATALOG_FILENAME + " missing, parsing " + SCHEMA_FILENAME + " instead");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading species catalog: " + e.getMessage());
+        }
+        return new SpeciesRegistry(parseSchema(assetManager), parseTypeChart(assetManager));
+    }
+
+    /**
+     * Read the catalog generated at build time by the compileSpeciesCatalog Gradle task
+     * @param inputStream Catalog asset
+     * @param species List the species are added to, in schema order
+     * @return The type chart
+     * @throws IOException if the catalog is truncated or of an unknown version
+     */
+    static TypeChart readCatalog(InputStream inputStream, List<Species> species) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != CATALOG_MAGIC) {
+            throw new IOException("Not a species catalog");
+        }
+        int version = input.readInt();
+        if (version != CATALOG_VERSION) {
+            throw new IOException("Unsupported species catalog version: " + version);
+        }
+
+        int typeCount = input.readInt();
+        String[] typeNames = new String[typeCount];
+        int[] typeColors = new int[typeCount];
+        for (int type = 0; type < typeCount; type++) {
+            typeNames[type] = readString(input);
+            typeColors[type] = input.readInt();
+        }
+        boolean[] advantages = new boolean[typeCount * typeCount];
+        int advantageCount = input.readInt();
+        for (int i = 0; i < advantageCount; i++) {
+            int attacker = input.readUnsignedShort();
+            int defender = input.readUnsignedShort();
+            if (attacker >= typeCount || defender >= typeCount) {
+                throw new IOException("Type advantage out of range: " + attacker + " > " + defender);
+            }
+            advantages[attacker * typeCount + defender] = true;
+        }
+        TypeChart typeChart = new TypeChart(typeNames, typeColors, advantages);
+
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String id = readString(input);
+            String name = readString(input);
+            String color = readString(input);
+            int attack = input.readInt();
+            int defense = input.readInt();
+            int health = input.readInt();
+            int speed = input.readInt();
+            String artKey = readString(input);
+            species.add(new Species(id, name, color, attack, defense, health, speed, artKey));
+        }
+        return typeChart;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedShort()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<Species> parseSchema(AssetManager assetManager) {
+        List<Species> species = new ArrayList<>();
+        try (SpeciesSchemaReader reader = new SpeciesSchemaReader(assetManager.open(SCHEMA_FILENAME))) {
+            Species entry;
+            while ((entry = reader.next()) != null) {
+                species.add(entry);
+            }
+            if (reader.getErrorCount() > 0) {
+                Log.e(TAG, "Skipped " + reader.getErrorCount() + " malformed schema entries");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading lutemon schemas: " + e.getMessage());
+        }
+
+        Log.d(TAG, "Loaded " + species.size() + " species");
+        return species;
+    }
+
+    private static TypeChart parseTypeChart(AssetManager assetManager) {
+        StringBuilder json = new StringBuilder();
+        try (Reader reader = new InputStreamReader(assetManager.open(TYPE_CHART_FILENAME), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, read);
+            }
+
+            JSONObject root = new JSONObject(json.toString());
+            JSONArray types = root.getJSONArray("types");
+            List<String> names = new ArrayList<>(types.length());
+            int[] colors = new int[types.length()];
+            for (int i = 0; i < types.length(); i++) {
+                JSONObject type = types.getJSONObject(i);
+                names.add(type.getString("name"));
+                colors[i] = parseColor(type.getString("color"));
+            }
+
+            JSONArray advantages = root.getJSONArray("advantages");
+            List<String[]> pairs = new ArrayList<>(advantages.length());
+            for (int i = 0; i < advantages.length(); i++) {
+                JSONObject advantage = advantages.getJSONObject(i);
+                pairs.add(new String[]{advantage.getString("attacker"), advantage.getString("defender")});
+            }
+            return TypeChart.of(names, colors, pairs);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "Error loading type chart, using the built-in one: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return TypeChart.getDefault();
+    }
+
+    /**
+     * @param color Color in the form #RRGGBB
+     * @return Opaque ARGB color
+     */
+    private static int parseColor(String color) {
+        if (color.length() != 7 || color.charAt(0) != '#') {
+            throw new IllegalArgumentException("Invalid type color: " + color);
+        }
+        return 0xFF000000 | Integer.parseInt(color.substring(1), 16);
+    }
+}
@@ -0,0 +1,507 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pull parser for the species schema, a JSON array of species objects.
+ * <p>
+ * Species are decoded straight from the stream one at a time, no document tree is built.
+ * A malformed entry is reported with its character offset and line and skipped, parsing
+ * resumes with the next entry of the array.
+ */
+final class SpeciesSchemaReader implements Closeable {
+    private static final String TAG = "SpeciesSchemaReader";
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+
+    // Characters consumed so far and current line, used in error reports
+    private long offset = 0;
+    private int line = 1;
+
+    // Nesting below the top-level array, 0 between entries
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean started = false;
+    private boolean finished = false;
+    private final List<SchemaError> errors = new ArrayList<>();
+
+    private final StringBuilder stringBuilder = new StringBuilder();
+
+    SpeciesSchemaReader(InputStream inputStream) {
+        this.reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A malformed part of the schema that was skipped
+     */
+    static final class SchemaError {
+        // Character offset and line where the skipped entry starts
+        final long offset;
+        final int line;
+        final String message;
+
+        SchemaError(long offset, int line, String message) {
+            this.offset = offset;
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "offset " + offset + " (line " + line + "): " + message;
+        }
+    }
+
+    /**
+     * @return Number of malformed entries reported so far
+     */
+    int getErrorCount() {
+        return errors.size();
+    }
+
+    /**
+     * @return Malformed entries reported so far, in schema order
+     */
+    List<SchemaError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Read the next valid species, skipping and reporting malformed entries
+     * @return The next species, or null at the end of the schema
+     * @throws IOException if the stream could not be read
+     */
+    Species next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            int c = nextNonWhitespace();
+            if (c != '[') {
+                report(offset, "Schema is not a JSON array");
+                finished = true;
+                return null;
+            }
+        }
+
+        while (true) {
+            int c = nextNonWhitespace();
+            if (c == -1) {
+                report(offset, "Unexpected end of schema");
+                finished = true;
+                return null;
+            }
+            if (c == ']') {
+                finished = true;
+                return null;
+            }
+            if (c == ',') {
+                continue;
+            }
+
+            long entryOffset = offset - 1;
+            int entryLine = line;
+            try {
+                if (c != '{') {
+                    skipValue(c);
+                    report(entryOffset, entryLine, "Expected a species object");
+                    continue;
+                }
+                Species species = readEntry();
+                if (species != null) {
+                    return species;
+                }
+            } catch (MalformedEntryException e) {
+                report(entryOffset, entryLine, e.getMessage() + " (at offset " + e.offset + ")");
+                recover();
+                if (finished) {
+                    // The entry ran into the end of the schema, already reported
+                    return null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Read the fields of one species object, the opening brace is already consumed
+     * @return The species, or null if a required field is missing (already reported)
+     */
+    private Species readEntry() throws IOException, MalformedEntryException {
+        long entryOffset = offset - 1;
+        int entryLine = line;
+        depth = 1;
+
+        String id = null;
+        String name = null;
+        String color = null;
+        int attack = 0;
+        int defense = 0;
+        int health = 0;
+        int speed = 0;
+        String artKey = null;
+        int seen = 0;
+
+        int c = nextNonWhitespace();
+        if (c == '}') {
+            depth = 0;
+            report(entryOffset, entryLine, "Empty species object");
+            return null;
+        }
+
+        while (true) {
+            if (c != '"') {
+                throw unexpected("Expected a field name", c);
+            }
+            String key = readString();
+            c = nextNonWhitespace();
+            if (c != ':') {
+                throw unexpected("Expected ':' after \"" + key + "\"", c);
+            }
+            c = nextNonWhitespace();
+
+            switch (key) {
+                case "id":
+                    id = readStringValue(c, key);
+                    seen |= 1;
+                    break;
+                case "name":
+                    name = readStringValue(c, key);
+                    seen |= 2;
+                    break;
+                case "color":
+                    color = readStringValue(c, key);
+                    seen |= 4;
+                    break;
+                case "attack":
+                    attack = readIntValue(c, key);
+                    seen |= 8;
+                    break;
+                case "defense":
+                    defense = readIntValue(c, key);
+                    seen |= 16;
+                    break;
+                case "health":
+                    health = readIntValue(c, key);
+                    seen |= 32;
+                    break;
+                case "speed":
+                    speed = readIntValue(c, key);
+                    seen |= 64;
+                    break;
+                case "art":
+                    artKey = readStringValue(c, key);
+                    break;
+                default:
+                    skipValue(c);
+                    break;
+            }
+
+            c = nextNonWhitespace();
+            if (c == '}') {
+                break;
+            }
+            if (c != ',') {
+                throw unexpected("Expected ',' or '}'", c);
+            }
+            c = nextNonWhitespace();
+        }
+        depth = 0;
+
+        if (seen != 127) {
+            report(entryOffset, entryLine, "Species " + (id != null ? "\"" + id + "\" " : "")
+                    + "is missing " + missingFields(seen));
+            return null;
+        }
+        return new Species(id, name, color, attack, defense, health, speed, artKey != null ? artKey : id);
+    }
+
+    private String readStringValue(int c, String key) throws IOException, MalformedEntryException {
+        if (c != '"') {
+            throw unexpected("\"" + key + "\" must be a string", c);
+        }
+        return readString();
+    }
+
+    private int readIntValue(int c, String key) throws IOException, MalformedEntryException {
+        String number;
+        if (c == '"') {
+            // org.json accepted numbers written as strings, keep doing so
+            number = readString();
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            number = readNumber(c);
+        } else {
+            throw unexpected("\"" + key + "\" must be a number", c);
+        }
+
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            try {
+                // Same truncation as JSONObject.getInt
+                return (int) Double.parseDouble(number);
+            } catch (NumberFormatException ignored) {
+                throw malformed("\"" + key + "\" is not a number: " + number);
+            }
+        }
+    }
+
+    /**
+     * Read a string body, the opening quote is already consumed
+     */
+    private String readString() throws IOException, MalformedEntryException {
+        inString = true;
+        stringBuilder.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw malformed("Unterminated string");
+            }
+            if (c == '"') {
+                inString = false;
+                return stringBuilder.toString();
+            }
+            if (c != '\\') {
+                stringBuilder.append((char) c);
+                continue;
+            }
+
+            c = read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    stringBuilder.append((char) c);
+                    break;
+                case 'b':
+                    stringBuilder.append('\b');
+                    break;
+                case 'f':
+                    stringBuilder.append('\f');
+                    break;
+                case 'n':
+                    stringBuilder.append('\n');
+                    break;
+                case 'r':
+                    stringBuilder.append('\r');
+                    break;
+                case 't':
+                    stringBuilder.append('\t');
+                    break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw malformed("Invalid unicode escape");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    stringBuilder.append((char) value);
+                    break;
+                default:
+                    throw malformed("Invalid escape sequence");
+            }
+        }
+    }
+
+    private String readNumber(int first) throws IOException {
+        stringBuilder.setLength(0);
+        stringBuilder.append((char) first);
+        while (true) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                stringBuilder.append((char) read());
+            } else {
+                return stringBuilder.toString();
+            }
+        }
+    }
+
+    /**
+     * Skip one value of any type, its first character is already consumed
+     */
+    private void skipValue(int c) throws IOException, MalformedEntryException {
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int close = c == '{' ? '}' : ']';
+            depth++;
+            c = nextNonWhitespace();
+            if (c == close) {
+                depth--;
+                return;
+            }
+            while (true) {
+                if (close == '}') {
+                    if (c != '"') {
+                        throw unexpected("Expected a field name", c);
+                    }
+                    readString();
+                    c = nextNonWhitespace();
+                    if (c != ':') {
+                        throw unexpected("Expected ':'", c);
+                    }
+                    c = nextNonWhitespace();
+                }
+                skipValue(c);
+                c = nextNonWhitespace();
+                if (c == close) {
+                    depth--;
+                    return;
+                }
+                if (c != ',') {
+                    throw unexpected("Expected ',' or '" + (char) close + "'", c);
+                }
+                c = nextNonWhitespace();
+            }
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            readNumber(c);
+        } else if (c == 't' || c == 'f' || c == 'n') {
+            while (Character.isLetter(peek())) {
+                read();
+            }
+        } else {
+            throw unexpected(c == -1 ? "Unexpected end of schema" : "Unexpected character '" + (char) c + "'", c);
+        }
+    }
+
+    /**
+     * Skip the rest of a malformed entry so parsing can continue with the next one
+     */
+    private void recover() throws IOException {
+        boolean escaped = false;
+        while (depth > 0 || inString) {
+            int c = read();
+            if (c == -1) {
+                finished = true;
+                break;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+        depth = 0;
+        inString = false;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        char c = buffer[position++];
+        offset++;
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private MalformedEntryException malformed(String message) {
+        return new MalformedEntryException(message, offset);
+    }
+
+    /**
+     * Error for an unexpected character that was already consumed. Opening quotes and
+     * brackets are accounted for so recover() stays in sync with the document structure.
+     */
+    private MalformedEntryException unexpected(String message, int c) {
+        if (c == '"') {
+            inString = true;
+        } else if (c == '{' || c == '[') {
+            depth++;
+        } else if (c == '}' || c == ']') {
+            depth--;
+        }
+        return malformed(message);
+    }
+
+    private void report(long at, String message) {
+        report(at, line, message);
+    }
+
+    private void report(long at, int atLine, String message) {
+        SchemaError error = new SchemaError(at, atLine, message);
+        errors.add(error);
+        Log.e(TAG, SpeciesRegistry.SCHEMA_FILENAME + " " + error);
+    }
+
+    private static String missingFields(int seen) {
+        String[] fields = {"id", "name", "color", "attack", "defense", "health", "speed"};
+        StringBuilder missing = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if ((seen & (1 << i)) == 0) {
+                if (missing.length() > 0) {
+                    missing.append(", ");
+                }
+                missing.append(fields[i]);
+            }
+        }
+        return missing.toString();
+    }
+
+    private static final class MalformedEntryException extends Exception {
+        final long offset;
+
+        MalformedEntryException(String message, long offset) {
+            super(message);
+            this.offset = offset;
+        }
+    }
+}
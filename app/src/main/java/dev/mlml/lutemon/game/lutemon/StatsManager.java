@@ -1,8 +1,9 @@
 package dev.mlml.lutemon.game.lutemon;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.Log;
 
+import java.io.IOException;
 import java.util.Comparator;
 
 /**
@@ -10,8 +11,6 @@ import java.util.Comparator;
  */
 public class StatsManager {
     private static final String TAG = "StatsManager";
-    private static final String PREFS_NAME = "stats_prefs";
-    
     private static final String KEY_TOTAL_BATTLES = "total_battles";
     private static final String KEY_BATTLES_WON = "battles_won";
     private static final String KEY_BATTLES_LOST = "battles_lost";
@@ -43,40 +42,50 @@ public class StatsManager {
     }
     
     /**
-     * Load all stats from shared preferences
+     * Load all stats from the game state store
      * @param context Application context
      */
     public void loadStats(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        GameStateStore store = GameStateStore.getInstance(context);
         
-        totalBattles = prefs.getInt(KEY_TOTAL_BATTLES, 0);
-        battlesWon = prefs.getInt(KEY_BATTLES_WON, 0);
-        battlesLost = prefs.getInt(KEY_BATTLES_LOST, 0);
-        totalTrainingSessions = prefs.getInt(KEY_TOTAL_TRAINING_SESSIONS, 0);
-        totalTrainingClicks = prefs.getInt(KEY_TOTAL_TRAINING_CLICKS, 0);
-        totalLootBoxesOpened = prefs.getInt(KEY_TOTAL_LOOT_BOXES_OPENED, 0);
-        totalLutemonsCollected = prefs.getInt(KEY_TOTAL_LUTEMONS_COLLECTED, 0);
-        highestLevelReached = prefs.getInt(KEY_HIGHEST_LEVEL_REACHED, 1);
+        totalBattles = store.getInt(KEY_TOTAL_BATTLES, 0);
+        battlesWon = store.getInt(KEY_BATTLES_WON, 0);
+        battlesLost = store.getInt(KEY_BATTLES_LOST, 0);
+        totalTrainingSessions = store.getInt(KEY_TOTAL_TRAINING_SESSIONS, 0);
+        totalTrainingClicks = store.getInt(KEY_TOTAL_TRAINING_CLICKS, 0);
+        totalLootBoxesOpened = store.getInt(KEY_TOTAL_LOOT_BOXES_OPENED, 0);
+        totalLutemonsCollected = store.getInt(KEY_TOTAL_LUTEMONS_COLLECTED, 0);
+        highestLevelReached = store.getInt(KEY_HIGHEST_LEVEL_REACHED, 1);
     }
     
     /**
-     * Save all stats to shared preferences
+     * Save all stats to the game state store right away
      * @param context Application context
      */
     public void saveStats(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        
-        editor.putInt(KEY_TOTAL_BATTLES, totalBattles);
-        editor.putInt(KEY_BATTLES_WON, battlesWon);
-        editor.putInt(KEY_BATTLES_LOST, battlesLost);
-        editor.putInt(KEY_TOTAL_TRAINING_SESSIONS, totalTrainingSessions);
-        editor.putInt(KEY_TOTAL_TRAINING_CLICKS, totalTrainingClicks);
-        editor.putInt(KEY_TOTAL_LOOT_BOXES_OPENED, totalLootBoxesOpened);
-        editor.putInt(KEY_TOTAL_LUTEMONS_COLLECTED, totalLutemonsCollected);
-        editor.putInt(KEY_HIGHEST_LEVEL_REACHED, highestLevelReached);
-        
-        editor.apply();
+        GameStateStore.Transaction transaction = GameStateStore.getInstance(context).edit();
+        writeStats(transaction);
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving stats: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Add all stats to a game state transaction
+     * @param transaction Transaction to write to
+     */
+    void writeStats(GameStateStore.Transaction transaction) {
+        transaction.putInt(KEY_TOTAL_BATTLES, totalBattles)
+                .putInt(KEY_BATTLES_WON, battlesWon)
+                .putInt(KEY_BATTLES_LOST, battlesLost)
+                .putInt(KEY_TOTAL_TRAINING_SESSIONS, totalTrainingSessions)
+                .putInt(KEY_TOTAL_TRAINING_CLICKS, totalTrainingClicks)
+                .putInt(KEY_TOTAL_LOOT_BOXES_OPENED, totalLootBoxesOpened)
+                .putInt(KEY_TOTAL_LUTEMONS_COLLECTED, totalLutemonsCollected)
+                .putInt(KEY_HIGHEST_LEVEL_REACHED, highestLevelReached);
     }
     
     /**
@@ -98,38 +107,47 @@ public class StatsManager {
     
     public void incrementTotalBattles() {
         totalBattles++;
+        markDirty();
     }
     
     public void incrementBattlesWon() {
         battlesWon++;
+        markDirty();
     }
     
     public void incrementBattlesLost() {
         battlesLost++;
+        markDirty();
     }
     
     public void incrementTotalTrainingSessions() {
         totalTrainingSessions++;
+        markDirty();
     }
     
     public void incrementTotalTrainingClicks() {
         totalTrainingClicks++;
+        markDirty();
     }
     
     public void incrementTotalTrainingClicks(int count) {
         totalTrainingClicks += count;
+        markDirty();
     }
     
     public void incrementTotalLootBoxesOpened() {
         totalLootBoxesOpened++;
+        markDirty();
     }
     
     public void incrementTotalLutemonsCollected() {
         totalLutemonsCollected++;
+        markDirty();
     }
     
     public void incrementTotalLutemonsCollected(int count) {
         totalLutemonsCollected += count;
+        markDirty();
     }
     
     /**
@@ -140,6 +158,7 @@ public class StatsManager {
     public boolean checkAndUpdateHighestLevel(int level) {
         if (level > highestLevelReached) {
             highestLevelReached = level;
+            markDirty();
             return true;
         }
         return false;
@@ -177,6 +196,13 @@ public class StatsManager {
         return highestLevelReached;
     }
     
+    /**
+     * Schedule a write-behind save of the stats
+     */
+    private void markDirty() {
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.STATS);
+    }
+    
     /**
      * Get win rate as a percentage
      * @return Win rate 0-100
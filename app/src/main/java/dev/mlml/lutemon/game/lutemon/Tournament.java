@@ -0,0 +1,173 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs tournaments of simulated battles across every core.
+ * <p>
+ * Every matchup is fought a number of times with BattleEngine, both sides playing the
+ * AI's strategy. The entrants are split into blocks of rows, each block is a fork-join
+ * task with its own random stream and its own copies of the Lutemons, and each task
+ * writes only the matrix cells of its own matchups, so tasks share nothing. A tournament
+ * with the same seed gives the same result on any number of cores. Run it off the main
+ * thread, it waits for the whole tournament.
+ */
+public final class Tournament {
+    /**
+     * Most battles per matchup, the win matrix counts in chars
+     */
+    public static final int MAX_BATTLES_PER_MATCHUP = Character.MAX_VALUE;
+    // Entrant rows one task fights without splitting further
+    private static final int LEAF_ROWS = 4;
+
+    private Tournament() {
+    }
+
+    /**
+     * Pit every entrant against every other one
+     * @param entrants Lutemons to rank, e.g. LutemonStorage.getLutemons()
+     * @param battlesPerMatchup Battles fought by each pair
+     * @param random Random stream to split the tasks' streams from
+     * @return Win matrix with the entrants as both rows and columns, and the standings
+     */
+    public static TournamentResult roundRobin(List<Lutemon> entrants, int battlesPerMatchup, RandomSource random) {
+        List<Lutemon> players = new ArrayList<>(entrants);
+        Lutemon[] rows = copyAll(players);
+        return run(players, rows, rows, true, battlesPerMatchup, random);
+    }
+
+    /**
+     * Pit every entrant against a base-stat Lutemon of every species
+     * @param entrants Lutemons to rank, e.g. LutemonStorage.getLutemons()
+     * @param species Opponent species, e.g. SpeciesRegistry.getAll()
+     * @param battlesPerMatchup Battles fought by each pair
+     * @param random Random stream to split the tasks' streams from
+     * @return Win matrix with the entrants as rows and the species as columns, and the
+     * standings
+     */
+    public static TournamentResult againstSpecies(List<Lutemon> entrants, List<Species> species,
+                                                  int battlesPerMatchup, RandomSource random) {
+        List<Lutemon> players = new ArrayList<>(entrants);
+        Lutemon[] columns = new Lutemon[species.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = species.get(i).createLutemon(null);
+        }
+        return run(players, copyAll(players), columns, false, battlesPerMatchup, random);
+    }
+
+    private static TournamentResult run(List<Lutemon> players, Lutemon[] rows, Lutemon[] columns,
+                                        boolean roundRobin, int battlesPerMatchup, RandomSource random) {
+        if (battlesPerMatchup < 1 || battlesPerMatchup > MAX_BATTLES_PER_MATCHUP) {
+            throw new IllegalArgumentException("Battles per matchup must be in 1.." + MAX_BATTLES_PER_MATCHUP);
+        }
+        char[] wins = new char[rows.length * columns.length];
+        char[] draws = new char[wins.length];
+
+        long start = System.nanoTime();
+        ForkJoinPool.commonPool().invoke(new RowTask(rows, columns, roundRobin, battlesPerMatchup,
+                wins, draws, 0, rows.length, random));
+        long elapsed = System.nanoTime() - start;
+
+        long matchups = roundRobin
+                ? (long) rows.length * (rows.length - 1) / 2
+                : (long) rows.length * columns.length;
+        return new TournamentResult(players, roundRobin, columns.length, battlesPerMatchup,
+                wins, draws, matchups, elapsed);
+    }
+
+    /**
+     * @return Detached copies, taken on the caller's thread so the originals may change
+     * while the tournament runs
+     */
+    private static Lutemon[] copyAll(List<Lutemon> lutemons) {
+        Lutemon[] copies = new Lutemon[lutemons.size()];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = lutemons.get(i).copy();
+        }
+        return copies;
+    }
+
+    /**
+     * Fights the matchups of a range of rows. In a round robin a row fights only the
+     * columns after it and fills both the row's and the column's cell.
+     */
+    private static final class RowTask extends RecursiveAction {
+        private final Lutemon[] rows;
+        private final Lutemon[] columns;
+        private final boolean roundRobin;
+        private final int battlesPerMatchup;
+        private final char[] wins;
+        private final char[] draws;
+        private final int from;
+        private final int to;
+        private final RandomSource random;
+
+        RowTask(Lutemon[] rows, Lutemon[] columns, boolean roundRobin, int battlesPerMatchup,
+                char[] wins, char[] draws, int from, int to, RandomSource random) {
+            this.rows = rows;
+            this.columns = columns;
+            this.roundRobin = roundRobin;
+            this.battlesPerMatchup = battlesPerMatchup;
+            this.wins = wins;
+            this.draws = draws;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_ROWS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(rows, columns, roundRobin, battlesPerMatchup, wins, draws,
+                                from, middle, random.split()),
+                        new RowTask(rows, columns, roundRobin, battlesPerMatchup, wins, draws,
+                                middle, to, random.split()));
+                return;
+            }
+
+            // Battles change health, so each task fights with its own copies
+            int firstColumn = roundRobin ? from + 1 : 0;
+            Lutemon[] opponents = new Lutemon[columns.length];
+            for (int column = firstColumn; column < columns.length; column++) {
+                opponents[column] = columns[column].copy();
+            }
+            int width = columns.length;
+
+            for (int row = from; row < to; row++) {
+                Lutemon player = roundRobin ? opponents[row] : null;
+                if (player == null) {
+                    player = rows[row].copy();
+                }
+                for (int column = roundRobin ? row + 1 : 0; column < width; column++) {
+                    int rowWins = 0;
+                    int rowDraws = 0;
+                    int rowLosses = 0;
+                    for (int battle = 0; battle < battlesPerMatchup; battle++) {
+                        switch (new BattleEngine(player, opponents[column], random, null).runToEnd()) {
+                            case VICTORY:
+                                rowWins++;
+                                break;
+                            case DRAW:
+                                rowDraws++;
+                                break;
+                            default:
+                                rowLosses++;
+                                break;
+                        }
+                    }
+                    wins[row * width + column] = (char) rowWins;
+                    draws[row * width + column] = (char) rowDraws;
+                    if (roundRobin) {
+                        // The same battles seen from the column's side
+                        wins[column * width + row] = (char) rowLosses;
+                        draws[column * width + row] = (char) rowDraws;
+                    }
+                }
+            }
+        }
+    }
+}
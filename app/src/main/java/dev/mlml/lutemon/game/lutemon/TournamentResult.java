@@ -0,0 +1,174 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a Tournament: a win matrix of every entrant against every opponent and the
+ * entrants ranked by score.
+ * <p>
+ * Counts are kept as chars, two bytes a cell, so a 1000 x 1000 round robin takes 4 MB.
+ * Rows are entrants, columns are opponents, which are the entrants again in a round robin.
+ */
+public final class TournamentResult {
+    private final List<Lutemon> entrants;
+    // Entrants fought each other, the columns are the rows
+    private final boolean roundRobin;
+    private final int opponentCount;
+    private final int battlesPerMatchup;
+    // [row * opponentCount + column] is how often the row beat / drew with the column
+    private final char[] wins;
+    private final char[] draws;
+    private final long matchups;
+    private final long elapsedNanos;
+    private List<Standing> standings;
+
+    TournamentResult(List<Lutemon> entrants, boolean roundRobin, int opponentCount, int battlesPerMatchup,
+                     char[] wins, char[] draws, long matchups, long elapsedNanos) {
+        this.entrants = entrants;
+        this.roundRobin = roundRobin;
+        this.opponentCount = opponentCount;
+        this.battlesPerMatchup = battlesPerMatchup;
+        this.wins = wins;
+        this.draws = draws;
+        this.matchups = matchups;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getEntrantCount() {
+        return entrants.size();
+    }
+
+    public int getOpponentCount() {
+        return opponentCount;
+    }
+
+    public int getBattlesPerMatchup() {
+        return battlesPerMatchup;
+    }
+
+    /**
+     * @param row Entrant
+     * @param column Opponent
+     * @return Share of their battles the entrant won, NaN if they never fought, e.g. an
+     * entrant against itself
+     */
+    public float getWinRate(int row, int column) {
+        int fought = getBattles(row, column);
+        return fought == 0 ? Float.NaN : (float) wins[row * opponentCount + column] / fought;
+    }
+
+    /**
+     * @return Share of their battles that ended in a draw, NaN if they never fought
+     */
+    public float getDrawRate(int row, int column) {
+        int fought = getBattles(row, column);
+        return fought == 0 ? Float.NaN : (float) draws[row * opponentCount + column] / fought;
+    }
+
+    private int getBattles(int row, int column) {
+        // Only a round robin's diagonal is never fought
+        return roundRobin && row == column ? 0 : battlesPerMatchup;
+    }
+
+    public boolean isRoundRobin() {
+        return roundRobin;
+    }
+
+    /**
+     * @return Number of distinct pairs that fought
+     */
+    public long getMatchups() {
+        return matchups;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getMatchupsPerSecond() {
+        return elapsedNanos == 0 ? 0 : matchups * 1e9 / elapsedNanos;
+    }
+
+    public double getBattlesPerSecond() {
+        return getMatchupsPerSecond() * battlesPerMatchup;
+    }
+
+    /**
+     * @return Entrants by score, best first, computed on first call
+     */
+    public synchronized List<Standing> getStandings() {
+        if (standings == null) {
+            List<Standing> ranked = new ArrayList<>(entrants.size());
+            for (int row = 0; row < entrants.size(); row++) {
+                int rowWins = 0;
+                int rowDraws = 0;
+                int fought = 0;
+                for (int column = 0; column < opponentCount; column++) {
+                    int battles = getBattles(row, column);
+                    rowWins += wins[row * opponentCount + column];
+                    rowDraws += draws[row * opponentCount + column];
+                    fought += battles;
+                }
+                ranked.add(new Standing(entrants.get(row), row, rowWins, rowDraws, fought - rowWins - rowDraws));
+            }
+            Collections.sort(ranked, (a, b) -> Double.compare(b.getScore(), a.getScore()));
+            standings = Collections.unmodifiableList(ranked);
+        }
+        return standings;
+    }
+
+    /**
+     * Record of one entrant over the whole tournament
+     */
+    public static final class Standing {
+        private final Lutemon lutemon;
+        private final int row;
+        private final int wins;
+        private final int draws;
+        private final int losses;
+
+        Standing(Lutemon lutemon, int row, int wins, int draws, int losses) {
+            this.lutemon = lutemon;
+            this.row = row;
+            this.wins = wins;
+            this.draws = draws;
+            this.losses = losses;
+        }
+
+        /**
+         * @return The entrant as it was passed to the tournament
+         */
+        public Lutemon getLutemon() {
+            return lutemon;
+        }
+
+        /**
+         * @return Row of the entrant in the win matrix
+         */
+        public int getRow() {
+            return row;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        /**
+         * @return Share of battles won, a draw counting as half a win
+         */
+        public double getScore() {
+            int battles = wins + draws + losses;
+            return battles == 0 ? 0 : (wins + draws * 0.5) / battles;
+        }
+    }
+}
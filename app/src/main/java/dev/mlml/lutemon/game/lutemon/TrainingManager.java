@@ -1,18 +1,20 @@
 package dev.mlml.lutemon.game.lutemon;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class TrainingManager {
     private static final String TAG = "TrainingManager";
-    private static final String PREFS_NAME = "training_prefs";
     private static final String KEY_TRAINING_LUTEMONS = "training_lutemons";
     private static final String KEY_LAST_TRAINING_TIME = "last_training_time";
     
@@ -20,8 +22,11 @@ public class TrainingManager {
     private static final int EXPERIENCE_VARIATION = 2;
     
     private static TrainingManager instance = null;
-    private final List<String> trainingLutemonIds = new ArrayList<>();
+    // Synchronized since saves run on the persistence thread
+    private final List<String> trainingLutemonIds = Collections.synchronizedList(new ArrayList<>());
     private long lastTrainingTime = 0;
+    // Random stream of this training session
+    private final RandomSource random = new RandomSource();
     
     private TrainingManager() {
     }
@@ -34,13 +39,13 @@ public class TrainingManager {
     }
     
     /**
-     * Load training state from shared preferences
+     * Load training state from the game state store
      * @param context Application context
      */
     public void loadTrainingState(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String trainingJson = prefs.getString(KEY_TRAINING_LUTEMONS, "[]");
-        lastTrainingTime = prefs.getLong(KEY_LAST_TRAINING_TIME, 0);
+        GameStateStore store = GameStateStore.getInstance(context);
+        String trainingJson = store.getString(KEY_TRAINING_LUTEMONS, "[]");
+        lastTrainingTime = store.getLong(KEY_LAST_TRAINING_TIME, 0);
         
         try {
             JSONArray jsonArray = new JSONArray(trainingJson);
@@ -55,21 +60,65 @@ public class TrainingManager {
     }
     
     /**
-     * Save training state to shared preferences
+     * Save training state to the game state store right away
      * @param context Application context
      */
     public void saveTrainingState(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        
+        GameStateStore.Transaction transaction = GameStateStore.getInstance(context).edit();
+        writeTrainingState(transaction);
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving training state: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Add the training state to a game state transaction
+     * @param transaction Transaction to write to
+     */
+    void writeTrainingState(GameStateStore.Transaction transaction) {
         JSONArray jsonArray = new JSONArray();
-        for (String id : trainingLutemonIds) {
+        for (String id : getTrainingLutemonIds()) {
             jsonArray.put(id);
         }
         
-        editor.putString(KEY_TRAINING_LUTEMONS, jsonArray.toString());
-        editor.putLong(KEY_LAST_TRAINING_TIME, lastTrainingTime);
-        editor.apply();
+        transaction.putString(KEY_TRAINING_LUTEMONS, jsonArray.toString());
+        transaction.putLong(KEY_LAST_TRAINING_TIME, lastTrainingTime);
+    }
+    
+    /**
+     * Rewrite the saved training list after the Lutemons in it got new instance IDs.
+     * Lutemons without a new ID are dropped from training.
+     * @param store Game state holding the saved list
+     * @param transaction Transaction to write the new list to
+     * @param newIds New instance ID by old ID
+     */
+    void remapSavedIds(GameStateStore store, GameStateStore.Transaction transaction, Map<String, String> newIds) {
+        String trainingJson = store.getString(KEY_TRAINING_LUTEMONS, null);
+        if (trainingJson == null) {
+            return;
+        }
+        
+        try {
+            JSONArray saved = new JSONArray(trainingJson);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < saved.length(); i++) {
+                String id = newIds.get(saved.getString(i));
+                if (id != null && !ids.contains(id)) {
+                    ids.add(id);
+                }
+            }
+            
+            JSONArray jsonArray = new JSONArray();
+            for (String id : ids) {
+                jsonArray.put(id);
+            }
+            transaction.putString(KEY_TRAINING_LUTEMONS, jsonArray.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
     }
     
     /**
@@ -79,6 +128,7 @@ public class TrainingManager {
     public void addLutemonToTraining(String lutemonId) {
         if (!trainingLutemonIds.contains(lutemonId)) {
             trainingLutemonIds.add(lutemonId);
+            markDirty();
             
             StatsManager statsManager = StatsManager.getInstance();
             statsManager.incrementTotalTrainingSessions();
@@ -90,7 +140,9 @@ public class TrainingManager {
      * @param lutemonId The ID of the Lutemon to remove
      */
     public void removeLutemonFromTraining(String lutemonId) {
-        trainingLutemonIds.remove(lutemonId);
+        if (trainingLutemonIds.remove(lutemonId)) {
+            markDirty();
+        }
     }
     
     /**
@@ -115,6 +167,14 @@ public class TrainingManager {
      */
     public void updateTrainingTime() {
         lastTrainingTime = System.currentTimeMillis();
+        markDirty();
+    }
+    
+    /**
+     * Schedule a write-behind save of the training state
+     */
+    private void markDirty() {
+        PersistenceManager.getInstance().markDirty(PersistenceManager.Component.TRAINING);
     }
     
     /**
@@ -132,6 +192,17 @@ public class TrainingManager {
      * @return The amount of experience gained
      */
     public TrainingResult trainLutemon(Lutemon lutemon, int clickCount) {
+        return trainLutemon(lutemon, clickCount, random);
+    }
+    
+    /**
+     * Train the given Lutemon, drawing the experience per click from a given stream
+     * @param lutemon The Lutemon to train
+     * @param clickCount Number of training clicks
+     * @param random Random stream to draw from
+     * @return The amount of experience gained
+     */
+    public TrainingResult trainLutemon(Lutemon lutemon, int clickCount, RandomSource random) {
         if (lutemon == null) return new TrainingResult(0, 0);
         
         StatsManager statsManager = StatsManager.getInstance();
@@ -141,7 +212,7 @@ public class TrainingManager {
         int startLevel = lutemon.getLevel();
         
         for (int i = 0; i < clickCount; i++) {
-            int expPerClick = BASE_EXPERIENCE_PER_CLICK + (int)(Math.random() * (EXPERIENCE_VARIATION * 2 + 1)) - EXPERIENCE_VARIATION;
+            int expPerClick = BASE_EXPERIENCE_PER_CLICK + random.nextInt(EXPERIENCE_VARIATION * 2 + 1) - EXPERIENCE_VARIATION;
             expGained += expPerClick;
         }
         
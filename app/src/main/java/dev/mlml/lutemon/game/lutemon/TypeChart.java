@@ -0,0 +1,147 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element types and which type has the advantage over which.
+ * <p>
+ * Types are identified by a small int, looked up once per color name, and advantages are
+ * a flattened attacker x defender matrix, so a type check is a single array read. The
+ * chart is defined in type_chart.json and compiled into the species catalog together with
+ * the species, SpeciesRegistry installs it when it loads. Until then the built-in chart
+ * below is used.
+ */
+public final class TypeChart {
+    /**
+     * Type ID of colors that are not in the chart, they never have an advantage
+     */
+    public static final int UNKNOWN_TYPE = -1;
+
+    private static final TypeChart DEFAULT = createDefault();
+    private static volatile TypeChart current = DEFAULT;
+
+    private final String[] names;
+    private final int[] displayColors;
+    private final boolean[] advantages;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * @param names Type names, the index is the type ID
+     * @param displayColors ARGB color per type
+     * @param advantages Flattened matrix, [attacker * names.length + defender] is true when
+     *                   the attacker has the advantage
+     */
+    TypeChart(String[] names, int[] displayColors, boolean[] advantages) {
+        if (displayColors.length != names.length || advantages.length != names.length * names.length) {
+            throw new IllegalArgumentException("Type chart dimensions do not match");
+        }
+        this.names = names.clone();
+        this.displayColors = displayColors.clone();
+        this.advantages = advantages.clone();
+        for (int type = 0; type < names.length; type++) {
+            ids.put(names[type], type);
+        }
+    }
+
+    /**
+     * Build a chart from type names and attacker/defender name pairs
+     * @param names Type names, the index is the type ID
+     * @param displayColors ARGB color per type
+     * @param advantagePairs Attacker and defender names of each advantage
+     * @return The chart
+     * @throws IllegalArgumentException if a pair names an unknown type
+     */
+    static TypeChart of(List<String> names, int[] displayColors, List<String[]> advantagePairs) {
+        String[] typeNames = names.toArray(new String[0]);
+        int count = typeNames.length;
+        boolean[] advantages = new boolean[count * count];
+        List<String> nameList = Arrays.asList(typeNames);
+        for (String[] pair : advantagePairs) {
+            int attacker = nameList.indexOf(pair[0]);
+            int defender = nameList.indexOf(pair[1]);
+            if (attacker < 0 || defender < 0) {
+                throw new IllegalArgumentException("Unknown type in advantage " + pair[0] + " > " + pair[1]);
+            }
+            advantages[attacker * count + defender] = true;
+        }
+        return new TypeChart(typeNames, displayColors, advantages);
+    }
+
+    /**
+     * @return The chart in use
+     */
+    public static TypeChart getCurrent() {
+        return current;
+    }
+
+    static void setCurrent(TypeChart chart) {
+        current = chart != null ? chart : DEFAULT;
+    }
+
+    static TypeChart getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name Color / type name, e.g. "Red"
+     * @return The type ID, or UNKNOWN_TYPE if the chart has no such type
+     */
+    public int typeOf(String name) {
+        Integer type = name != null ? ids.get(name) : null;
+        return type != null ? type : UNKNOWN_TYPE;
+    }
+
+    /**
+     * @param attacker Attacking type ID
+     * @param defender Defending type ID
+     * @return true if the attacker has the advantage
+     */
+    public boolean hasAdvantage(int attacker, int defender) {
+        if (attacker < 0 || defender < 0) {
+            return false;
+        }
+        return advantages[attacker * names.length + defender];
+    }
+
+    /**
+     * @param type Type ID
+     * @param fallback Color for UNKNOWN_TYPE
+     * @return ARGB display color of the type
+     */
+    public int getDisplayColor(int type, int fallback) {
+        return type < 0 ? fallback : displayColors[type];
+    }
+
+    /**
+     * @param type Type ID
+     * @return Name of the type
+     */
+    public String getName(int type) {
+        return names[type];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Chart used before the catalog is loaded, matches the shipped type_chart.json
+     */
+    private static TypeChart createDefault() {
+        List<String> names = Arrays.asList("Red", "Green", "Blue", "Yellow", "Purple");
+        int[] colors = {0xFFFF5A5A, 0xFF5AFF5A, 0xFF5A5AFF, 0xFFFFFF5A, 0xFFC85AFF};
+        List<String[]> advantages = Arrays.asList(
+                new String[]{"Red", "Green"},
+                new String[]{"Green", "Blue"},
+                new String[]{"Blue", "Red"},
+                new String[]{"Yellow", "Blue"},
+                new String[]{"Purple", "Yellow"},
+                new String[]{"Green", "Purple"},
+                new String[]{"Blue", "Yellow"}
+        );
+        return of(names, colors, advantages);
+    }
+}
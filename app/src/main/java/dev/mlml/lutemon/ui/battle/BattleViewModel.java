@@ -8,11 +8,16 @@ import androidx.lifecycle.MutableLiveData;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 import dev.mlml.lutemon.game.lutemon.BattleManager;
+import dev.mlml.lutemon.game.lutemon.BattleOdds;
+import dev.mlml.lutemon.game.lutemon.BattleOddsEstimator;
+import dev.mlml.lutemon.game.lutemon.GameRepository;
 import dev.mlml.lutemon.game.lutemon.LootBoxManager;
 import dev.mlml.lutemon.game.lutemon.Lutemon;
 import dev.mlml.lutemon.game.lutemon.LutemonStorage;
+import dev.mlml.lutemon.game.lutemon.PersistenceManager;
 import dev.mlml.lutemon.game.lutemon.StatsManager;
 
 public class BattleViewModel extends AndroidViewModel {
@@ -24,11 +29,15 @@ public class BattleViewModel extends AndroidViewModel {
     private final MutableLiveData<Boolean> isPlayerTurn = new MutableLiveData<>(true);
     private final MutableLiveData<String> battleLog = new MutableLiveData<>("");
     private final MutableLiveData<String> statusMessage = new MutableLiveData<>();
+    private final MutableLiveData<BattleOdds> battleOdds = new MutableLiveData<>();
+    // Estimate of the current matchup, replaced when either side changes
+    private ForkJoinTask<BattleOdds> oddsTask;
     
     private final LutemonStorage lutemonStorage;
     private final BattleManager battleManager;
     private final StatsManager statsManager;
     private final LootBoxManager lootBoxManager;
+    private final PersistenceManager persistenceManager;
     private final Application application;
     
     public BattleViewModel(Application application) {
@@ -38,20 +47,20 @@ public class BattleViewModel extends AndroidViewModel {
         this.battleManager = BattleManager.getInstance();
         this.statsManager = StatsManager.getInstance();
         this.lootBoxManager = LootBoxManager.getInstance();
+        this.persistenceManager = PersistenceManager.getInstance();
         
         refreshData();
     }
     
     /**
-     * Refresh data from storage
+     * Refresh data from the shared game state, saves are only read when they changed
      */
     public void refreshData() {
-        lutemonStorage.loadSavedLutemons(application);
-        statsManager.loadStats(application);
+        GameRepository.getInstance().refresh(application);
         
         availableLutemons.setValue(lutemonStorage.getLutemons());
         
-        if (battleManager.loadBattleState(application)) {
+        if (battleManager.isBattleActive()) {
             setupExistingBattle();
         }
     }
@@ -82,13 +91,14 @@ public class BattleViewModel extends AndroidViewModel {
     }
     
     /**
-     * Save changes to permanent storage
+     * Schedule a write-behind save of everything a battle touches
      */
     public void saveData() {
-        lutemonStorage.saveLutemons(application);
-        statsManager.saveStats(application);
-        battleManager.saveBattleState(application);
-        lootBoxManager.savePlayerCurrency(application);
+        persistenceManager.markDirty(
+                PersistenceManager.Component.LUTEMONS,
+                PersistenceManager.Component.STATS,
+                PersistenceManager.Component.BATTLE,
+                PersistenceManager.Component.CURRENCY);
     }
     
     /**
@@ -99,6 +109,7 @@ public class BattleViewModel extends AndroidViewModel {
         List<Lutemon> lutemons = availableLutemons.getValue();
         if (lutemons != null && position >= 0 && position < lutemons.size()) {
             selectedLutemon.setValue(lutemons.get(position));
+            estimateOdds();
         }
     }
     
@@ -113,8 +124,30 @@ public class BattleViewModel extends AndroidViewModel {
                     application, playerLutemon.getLevel());
             
             aiLutemon.setValue(opponent);
+            estimateOdds();
         }
     }
+    
+    /**
+     * Estimate the odds of the selected matchup in the background, they are posted to
+     * battleOdds and the status message when ready
+     */
+    private void estimateOdds() {
+        cancelOddsEstimate();
+        battleOdds.setValue(null);
+        
+        Lutemon playerLutemon = selectedLutemon.getValue();
+        Lutemon opponent = aiLutemon.getValue();
+        if (playerLutemon == null || opponent == null || Boolean.TRUE.equals(isBattleActive.getValue())) {
+            oddsTask = null;
+            return;
+        }
+        
+        oddsTask = BattleOddsEstimator.estimateAsync(playerLutemon, opponent, odds -> {
+            battleOdds.postValue(odds);
+            statusMessage.postValue("Your odds: " + odds);
+        });
+    }
 
     /**
      * Start a battle with the selected Lutemon and AI opponent
@@ -125,6 +158,7 @@ public class BattleViewModel extends AndroidViewModel {
         
         if (playerLutemon != null && opponent != null) {
             if (battleManager.startBattle(playerLutemon, opponent)) {
+                cancelOddsEstimate();
                 isBattleActive.setValue(true);
                 isPlayerTurn.setValue(battleManager.isPlayerTurn());
                 
@@ -261,6 +295,18 @@ public class BattleViewModel extends AndroidViewModel {
         statusMessage.setValue("Battle ended.");
     }
     
+    private void cancelOddsEstimate() {
+        if (oddsTask != null) {
+            oddsTask.cancel(false);
+            oddsTask = null;
+        }
+    }
+    
+    @Override
+    protected void onCleared() {
+        cancelOddsEstimate();
+    }
+    
     public LiveData<List<Lutemon>> getAvailableLutemons() {
         return availableLutemons;
     }
@@ -289,6 +335,13 @@ public class BattleViewModel extends AndroidViewModel {
         return statusMessage;
     }
     
+    /**
+     * @return Estimated odds of the selected matchup, null until they are ready
+     */
+    public LiveData<BattleOdds> getBattleOdds() {
+        return battleOdds;
+    }
+    
     public int getTotalBattles() {
         return statsManager.getTotalBattles();
     }
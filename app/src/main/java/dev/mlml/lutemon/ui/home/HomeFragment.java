@@ -19,7 +19,6 @@ import java.util.List;
 import dev.mlml.lutemon.databinding.FragmentHomeBinding;
 import dev.mlml.lutemon.game.lutemon.LootBox;
 import dev.mlml.lutemon.game.lutemon.Lutemon;
-import dev.mlml.lutemon.game.lutemon.LootBoxEffect;
 
 public class HomeFragment extends Fragment implements LutemonAdapter.OnLutemonSoldListener {
 
@@ -120,7 +119,7 @@ public class HomeFragment extends Fragment implements LutemonAdapter.OnLutemonSo
         StringBuilder message = new StringBuilder("You got: ");
         for (int i = 0; i < rewards.size(); i++) {
             Lutemon lutemon = rewards.get(i);
-            String rarity = LootBoxEffect.calculateRarity(lutemon).name();
+            String rarity = lutemon.getRarity().name();
             
             if (i > 0) message.append(", ");
             message.append(lutemon.getName())
@@ -11,10 +11,12 @@ import androidx.lifecycle.ViewModel;
 import java.util.ArrayList;
 import java.util.List;
 
+import dev.mlml.lutemon.game.lutemon.GameRepository;
 import dev.mlml.lutemon.game.lutemon.LootBox;
 import dev.mlml.lutemon.game.lutemon.LootBoxManager;
 import dev.mlml.lutemon.game.lutemon.Lutemon;
 import dev.mlml.lutemon.game.lutemon.LutemonStorage;
+import dev.mlml.lutemon.game.lutemon.PersistenceManager;
 import dev.mlml.lutemon.game.lutemon.StatsManager;
 import dev.mlml.lutemon.game.lutemon.TrainingManager;
 
@@ -28,6 +30,7 @@ public class HomeViewModel extends AndroidViewModel {
     private final LutemonStorage lutemonStorage;
     private final LootBoxManager lootBoxManager;
     private final StatsManager statsManager;
+    private final PersistenceManager persistenceManager;
     private final Application application;
 
     public HomeViewModel(Application application) {
@@ -42,38 +45,31 @@ public class HomeViewModel extends AndroidViewModel {
         lutemonStorage = LutemonStorage.getInstance();
         lootBoxManager = LootBoxManager.getInstance();
         statsManager = StatsManager.getInstance();
-        
-        // Initialize managers
-        lootBoxManager.initialize(application);
+        persistenceManager = PersistenceManager.getInstance();
         
         // Load data
         refreshData();
     }
 
     /**
-     * Refresh all data from storage
+     * Refresh all data from the shared game state, saves are only read when they changed
      */
     public void refreshData() {
         loading.setValue(true);
         
-        // Load lutemons from storage
-        lutemonStorage.loadSavedLutemons(application);
+        GameRepository.getInstance().refresh(application);
         
-        // Make a deep copy of the lutemons list to ensure it's a new reference
-        List<Lutemon> lutemonList = new ArrayList<>(lutemonStorage.getLutemons());
-        lutemons.setValue(lutemonList);
+        // The roster hands out a new list whenever it changes, copying it would decode a mapped roster
+        lutemons.setValue(lutemonStorage.getLutemons());
         
         // Update currency display
         currency.setValue(lootBoxManager.getPlayerCurrency());
         
-        // Load statistics
-        statsManager.loadStats(application);
-        
         loading.setValue(false);
     }
 
     public void saveData() {
-        statsManager.saveStats(application);
+        persistenceManager.markDirty(PersistenceManager.Component.STATS);
     }
 
     public LiveData<List<Lutemon>> getLutemons() {
@@ -109,8 +105,6 @@ public class HomeViewModel extends AndroidViewModel {
         if (newLutemons != null) {
             currency.setValue(lootBoxManager.getPlayerCurrency());
             
-            lutemonStorage.saveLutemons(application);
-            
             lutemons.setValue(lutemonStorage.getLutemons());
         } else {
             errorMessage.setValue("Failed to open loot box!");
@@ -158,10 +152,8 @@ public class HomeViewModel extends AndroidViewModel {
      */
     public void removeLutemon(String lutemonId) {
         lutemonStorage.removeLutemonById(lutemonId);
-        lutemonStorage.saveLutemons(application);
         
-        List<Lutemon> updatedList = new ArrayList<>(lutemonStorage.getLutemons());
-        lutemons.setValue(updatedList);
+        lutemons.setValue(lutemonStorage.getLutemons());
         
         currency.setValue(lootBoxManager.getPlayerCurrency());
     }
@@ -172,7 +164,6 @@ public class HomeViewModel extends AndroidViewModel {
      */
     public void addCurrency(int amount) {
         lootBoxManager.addCurrency(amount);
-        lootBoxManager.savePlayerCurrency(application);
         currency.setValue(lootBoxManager.getPlayerCurrency());
     }
 }
\ No newline at end of file
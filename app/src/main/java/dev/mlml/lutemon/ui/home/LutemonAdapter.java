@@ -26,6 +26,7 @@ import dev.mlml.lutemon.game.lutemon.LootBoxManager;
 import dev.mlml.lutemon.game.lutemon.Lutemon;
 import dev.mlml.lutemon.game.lutemon.LootBoxEffect;
 import dev.mlml.lutemon.game.lutemon.LutemonStorage;
+import dev.mlml.lutemon.game.lutemon.TypeChart;
 
 public class LutemonAdapter extends ListAdapter<Lutemon, LutemonAdapter.LutemonViewHolder> {
 
@@ -100,11 +101,11 @@ public class LutemonAdapter extends ListAdapter<Lutemon, LutemonAdapter.LutemonV
         public void bind(Lutemon lutemon) {
             this.lutemon = lutemon;
 
-            loadLutemonImage(lutemon.getSchemaId());
+            loadLutemonImage(lutemon.getArtKey());
             
-            colorView.setBackgroundColor(getColorForLutemon(lutemon.getColor()));
+            colorView.setBackgroundColor(getColorForLutemon(lutemon));
 
-            LootBoxEffect.Rarity rarity = LootBoxEffect.calculateRarity(lutemon);
+            LootBoxEffect.Rarity rarity = lutemon.getRarity();
             int textColor = getTextColorForRarity(rarity);
             nameTextView.setTextColor(textColor);
 
@@ -120,7 +121,7 @@ public class LutemonAdapter extends ListAdapter<Lutemon, LutemonAdapter.LutemonV
          * Show a detailed dialog for the Lutemon with option to sell
          */
         private void showLutemonDetails() {
-            LootBoxEffect.Rarity rarity = LootBoxEffect.calculateRarity(lutemon);
+            LootBoxEffect.Rarity rarity = lutemon.getRarity();
             int sellValue = calculateSellValue(rarity);
             
             AlertDialog.Builder builder = new AlertDialog.Builder(context);
@@ -137,7 +138,7 @@ public class LutemonAdapter extends ListAdapter<Lutemon, LutemonAdapter.LutemonV
             TextView descriptionText = dialogView.findViewById(R.id.dialog_lutemon_description);
             Button sellButton = dialogView.findViewById(R.id.dialog_sell_button);
             
-            int imageResId = getImageResource(lutemon.getSchemaId());
+            int imageResId = getImageResource(lutemon.getArtKey());
             imageView.setImageResource(imageResId);
             
             nameText.setText(lutemon.getName());
@@ -248,21 +249,9 @@ public class LutemonAdapter extends ListAdapter<Lutemon, LutemonAdapter.LutemonV
             return imageResId;
         }
 
-        private int getColorForLutemon(String colorName) {
-            switch (colorName.toLowerCase()) {
-                case "red":
-                    return Color.rgb(255, 90, 90);
-                case "green":
-                    return Color.rgb(90, 255, 90);
-                case "blue":
-                    return Color.rgb(90, 90, 255);
-                case "yellow":
-                    return Color.rgb(255, 255, 90);
-                case "purple":
-                    return Color.rgb(200, 90, 255);
-                default:
-                    return Color.GRAY;
-            }
+        private int getColorForLutemon(Lutemon lutemon) {
+            // Type colors come from the type chart, the Lutemon caches its type ID
+            return TypeChart.getCurrent().getDisplayColor(lutemon.getTypeId(), Color.GRAY);
         }
 
         private int getTextColorForRarity(LootBoxEffect.Rarity rarity) {
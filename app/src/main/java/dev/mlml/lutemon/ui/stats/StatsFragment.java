@@ -65,6 +65,9 @@ public class StatsFragment extends Fragment {
         viewModel.getHighestLevelReached().observe(getViewLifecycleOwner(), 
             value -> binding.textHighestLevel.setText(String.valueOf(value)));
 
+        viewModel.getTopRated().observe(getViewLifecycleOwner(), 
+            value -> binding.textTopRated.setText(value));
+
         viewModel.getStatusMessage().observe(getViewLifecycleOwner(), message -> {
             if (message != null && !message.isEmpty()) {
                 Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
@@ -6,10 +6,17 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import java.util.List;
+
+import dev.mlml.lutemon.game.lutemon.GameRepository;
+import dev.mlml.lutemon.game.lutemon.Lutemon;
 import dev.mlml.lutemon.game.lutemon.LutemonStorage;
+import dev.mlml.lutemon.game.lutemon.RatingLadder;
 import dev.mlml.lutemon.game.lutemon.StatsManager;
 
 public class StatsViewModel extends AndroidViewModel {
+    // Lutemons shown from the top of the rating ladder
+    private static final int TOP_RATED_COUNT = 3;
 
     private final MutableLiveData<Integer> totalBattles = new MutableLiveData<>(0);
     private final MutableLiveData<Integer> battlesWon = new MutableLiveData<>(0);
@@ -20,6 +27,7 @@ public class StatsViewModel extends AndroidViewModel {
     private final MutableLiveData<Integer> totalLootBoxesOpened = new MutableLiveData<>(0);
     private final MutableLiveData<Integer> totalLutemonsCollected = new MutableLiveData<>(0);
     private final MutableLiveData<Integer> highestLevelReached = new MutableLiveData<>(1);
+    private final MutableLiveData<String> topRated = new MutableLiveData<>("-");
     
     private final MutableLiveData<String> statusMessage = new MutableLiveData<>();
     
@@ -35,10 +43,10 @@ public class StatsViewModel extends AndroidViewModel {
     }
     
     /**
-     * Refresh statistics data from storage
+     * Refresh statistics from the shared game state, saves are only read when they changed
      */
     public void refreshData() {
-        statsManager.loadStats(application);
+        GameRepository.getInstance().refresh(application);
         
         totalBattles.setValue(statsManager.getTotalBattles());
         battlesWon.setValue(statsManager.getBattlesWon());
@@ -49,6 +57,27 @@ public class StatsViewModel extends AndroidViewModel {
         totalLootBoxesOpened.setValue(statsManager.getTotalLootBoxesOpened());
         totalLutemonsCollected.setValue(statsManager.getTotalLutemonsCollected());
         highestLevelReached.setValue(statsManager.getHighestLevelReached());
+        topRated.setValue(formatTopRated());
+    }
+    
+    /**
+     * @return The best rated Lutemons with their ratings, one per line, "-" if none is rated
+     */
+    private String formatTopRated() {
+        RatingLadder ratingLadder = RatingLadder.getInstance();
+        List<Lutemon> top = ratingLadder.getTop(TOP_RATED_COUNT);
+        if (top.isEmpty()) {
+            return "-";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Lutemon lutemon : top) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(ratingLadder.getRank(lutemon)).append(". ").append(lutemon.getName())
+                    .append(" (").append(ratingLadder.getRating(lutemon)).append(')');
+        }
+        return text.toString();
     }
     
     /**
@@ -96,6 +125,13 @@ public class StatsViewModel extends AndroidViewModel {
         return highestLevelReached;
     }
     
+    /**
+     * @return The best rated Lutemons, see formatTopRated
+     */
+    public LiveData<String> getTopRated() {
+        return topRated;
+    }
+    
     public LiveData<String> getStatusMessage() {
         return statusMessage;
     }
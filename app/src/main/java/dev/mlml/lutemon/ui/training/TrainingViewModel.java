@@ -9,8 +9,10 @@ import androidx.lifecycle.MutableLiveData;
 import java.util.ArrayList;
 import java.util.List;
 
+import dev.mlml.lutemon.game.lutemon.GameRepository;
 import dev.mlml.lutemon.game.lutemon.Lutemon;
 import dev.mlml.lutemon.game.lutemon.LutemonStorage;
+import dev.mlml.lutemon.game.lutemon.PersistenceManager;
 import dev.mlml.lutemon.game.lutemon.StatsManager;
 import dev.mlml.lutemon.game.lutemon.TrainingManager;
 
@@ -25,6 +27,7 @@ public class TrainingViewModel extends AndroidViewModel {
     private final LutemonStorage lutemonStorage;
     private final TrainingManager trainingManager;
     private final StatsManager statsManager;
+    private final PersistenceManager persistenceManager;
     private final Application application;
 
     public TrainingViewModel(Application application) {
@@ -33,17 +36,16 @@ public class TrainingViewModel extends AndroidViewModel {
         this.lutemonStorage = LutemonStorage.getInstance();
         this.trainingManager = TrainingManager.getInstance();
         this.statsManager = StatsManager.getInstance();
+        this.persistenceManager = PersistenceManager.getInstance();
         
         refreshData();
     }
     
     /**
-     * Refresh data from storage
+     * Refresh data from the shared game state, saves are only read when they changed
      */
     public void refreshData() {
-        lutemonStorage.loadSavedLutemons(application);
-        trainingManager.loadTrainingState(application);
-        statsManager.loadStats(application);
+        GameRepository.getInstance().refresh(application);
         
         availableLutemons.setValue(lutemonStorage.getLutemons());
         
@@ -75,12 +77,13 @@ public class TrainingViewModel extends AndroidViewModel {
     }
     
     /**
-     * Save changes to permanent storage
+     * Schedule a write-behind save of everything training touches
      */
     public void saveData() {
-        lutemonStorage.saveLutemons(application);
-        trainingManager.saveTrainingState(application);
-        statsManager.saveStats(application);
+        persistenceManager.markDirty(
+                PersistenceManager.Component.LUTEMONS,
+                PersistenceManager.Component.TRAINING,
+                PersistenceManager.Component.STATS);
     }
     
     /**
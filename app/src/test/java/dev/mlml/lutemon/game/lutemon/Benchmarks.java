@@ -0,0 +1,111 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shared setup and timing for the benchmarks in this package. They are skipped unless the
+ * lutemon.benchmarks system property is true, run them with ./gradlew test -Pbenchmarks=true.
+ */
+final class Benchmarks {
+    static final String PROPERTY = "lutemon.benchmarks";
+
+    private static final String[] COLORS = {"Red", "Blue", "Green", "Yellow"};
+
+    /**
+     * Code to time
+     */
+    interface Task {
+        void run() throws Exception;
+    }
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skip the calling test unless benchmarks were requested
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks disabled, run with -Pbenchmarks=true", Boolean.getBoolean(PROPERTY));
+    }
+
+    /**
+     * Register one species per color so generated Lutemons resolve
+     */
+    static void installSpecies() {
+        List<Species> species = new ArrayList<>();
+        for (int i = 0; i < COLORS.length; i++) {
+            species.add(new Species(schemaId(i), "Species " + i, COLORS[i], 10 + i, 8, 50, 6));
+        }
+        SpeciesRegistry.install(species, TypeChart.getDefault());
+    }
+
+    /**
+     * Build a roster of installed species with storage-issued IDs and varied stats
+     * @param size Number of Lutemons
+     * @return The roster in ID order
+     */
+    static List<Lutemon> roster(int size) {
+        List<Lutemon> roster = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int species = i % COLORS.length;
+            roster.add(new Lutemon(String.valueOf(i + 1), schemaId(species), "Lutemon " + i, COLORS[species],
+                    10 + i % 23, 5 + i % 17, 25 + i % 41, 4 + i % 13, i % 100_000));
+        }
+        return roster;
+    }
+
+    /**
+     * Run a task a few times untimed, then time it
+     * @param label Printed with the result
+     * @param warmups Untimed runs
+     * @param runs Timed runs
+     * @param task Code to time
+     * @return Median time of one run in milliseconds
+     * @throws Exception if the task fails
+     */
+    static double measure(String label, int warmups, int runs, Task task) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            task.run();
+        }
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        double median = times[runs / 2] / 1e6;
+        System.out.printf(Locale.ROOT, "%s: median %.2f ms, min %.2f ms over %d runs%n",
+                label, median, times[0] / 1e6, runs);
+        return median;
+    }
+
+    /**
+     * @return A new empty directory, remove it with deleteRecursively
+     */
+    static File createTempDir() throws IOException {
+        return Files.createTempDirectory("lutemon-benchmark").toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String schemaId(int index) {
+        return COLORS[index].toLowerCase(Locale.ROOT) + "_1";
+    }
+}
@@ -0,0 +1,64 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Level lookups of high-experience Lutemons with ExperienceCurve and with the per-level
+ * Math.pow walk it replaced, kept in LoopExperienceCurve.
+ */
+public class ExperienceCurveBenchmark {
+    private static final int LUTEMON_COUNT = 1_000;
+    private static final int MIN_EXPERIENCE = 1_000_000_000;
+    private static final int LOOKUPS_PER_RUN = 200_000;
+    private static final int WARMUPS = 5;
+    private static final int RUNS = 15;
+
+    private static Lutemon[] lutemons;
+    private static int[] experience;
+
+    @BeforeClass
+    public static void createLutemons() {
+        Benchmarks.assumeEnabled();
+        Benchmarks.installSpecies();
+
+        Random random = new Random(13);
+        lutemons = new Lutemon[LUTEMON_COUNT];
+        experience = new int[LUTEMON_COUNT];
+        for (int i = 0; i < LUTEMON_COUNT; i++) {
+            experience[i] = MIN_EXPERIENCE + random.nextInt(Integer.MAX_VALUE - MIN_EXPERIENCE);
+            lutemons[i] = new Lutemon(String.valueOf(i + 1), "red_1", "Lutemon " + i, "Red",
+                    10, 8, 50, 6, experience[i]);
+        }
+    }
+
+    @Test
+    public void getLevel() throws Exception {
+        long[] levels = new long[2];
+        double curveMs = Benchmarks.measure("Lutemon.getLevel " + LOOKUPS_PER_RUN + " lookups", WARMUPS, RUNS, () -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS_PER_RUN; i++) {
+                Lutemon lutemon = lutemons[i % LUTEMON_COUNT];
+                // Clears the cached level so every call looks it up
+                lutemon.setExperience(experience[i % LUTEMON_COUNT]);
+                sum += lutemon.getLevel();
+            }
+            levels[0] = sum;
+        });
+        double loopMs = Benchmarks.measure("Loop getLevel " + LOOKUPS_PER_RUN + " lookups", WARMUPS, RUNS, () -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS_PER_RUN; i++) {
+                sum += LoopExperienceCurve.levelFor(experience[i % LUTEMON_COUNT]);
+            }
+            levels[1] = sum;
+        });
+        System.out.printf("ExperienceCurve: %.1f ns, loop: %.1f ns per lookup%n",
+                curveMs * 1e6 / LOOKUPS_PER_RUN, loopMs * 1e6 / LOOKUPS_PER_RUN);
+
+        assertEquals(levels[1], levels[0]);
+    }
+}
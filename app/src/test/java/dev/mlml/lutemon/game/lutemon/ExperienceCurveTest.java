@@ -0,0 +1,65 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ExperienceCurveTest {
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.installSpecies();
+    }
+
+    @Test
+    public void matchesLoopAroundEveryLevelBoundary() {
+        for (int level = 1; level <= ExperienceCurve.MAX_LEVEL; level++) {
+            int start = ExperienceCurve.totalExperienceForLevel(level);
+            for (long experience = (long) start - 2; experience <= (long) start + 2; experience++) {
+                if (experience >= Integer.MIN_VALUE && experience <= Integer.MAX_VALUE) {
+                    assertLevelMatches((int) experience);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesLoopForRandomExperience() {
+        Random random = new Random(13);
+        for (int i = 0; i < 20_000; i++) {
+            assertLevelMatches(random.nextInt(Integer.MAX_VALUE));
+            assertLevelMatches(random.nextInt(1_000_000));
+        }
+        assertLevelMatches(0);
+        assertLevelMatches(-1);
+        assertLevelMatches(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void matchesLoopTotalExperienceForLevel() {
+        for (int level = -1; level <= ExperienceCurve.MAX_LEVEL; level++) {
+            assertEquals("level " + level, LoopExperienceCurve.totalExperienceForLevel(level),
+                    ExperienceCurve.totalExperienceForLevel(level));
+        }
+    }
+
+    @Test
+    public void recomputesCachedLevelAfterExperienceChanges() {
+        Lutemon lutemon = new Lutemon("1", "red_1", "Lutemon", "Red", 10, 8, 50, 6, 0);
+        assertEquals(1, lutemon.getLevel());
+        lutemon.addExperience(100);
+        assertEquals(LoopExperienceCurve.levelFor(100), lutemon.getLevel());
+        lutemon.setExperience(2_000_000_000);
+        assertEquals(LoopExperienceCurve.levelFor(2_000_000_000), lutemon.getLevel());
+    }
+
+    private static void assertLevelMatches(int experience) {
+        assertEquals("experience " + experience, LoopExperienceCurve.levelFor(experience),
+                ExperienceCurve.levelFor(experience));
+        Lutemon lutemon = new Lutemon("1", "red_1", "Lutemon", "Red", 10, 8, 50, 6, experience);
+        assertEquals("experience " + experience, LoopExperienceCurve.levelProgress(experience),
+                lutemon.getLevelProgress(), 0);
+    }
+}
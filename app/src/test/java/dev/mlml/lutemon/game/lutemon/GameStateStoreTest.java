@@ -0,0 +1,108 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class GameStateStoreTest {
+    private File dir;
+    private File logFile;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Benchmarks.createTempDir();
+        logFile = new File(dir, "game_state.log");
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void commitsSurviveReload() throws IOException {
+        GameStateStore store = GameStateStore.open(dir);
+        store.edit()
+                .putInt("battles", 3)
+                .putLong("rating_7", 1234L)
+                .putBoolean("training", true)
+                .putString("name", "Sparky \u2603")
+                .putBytes("record", new byte[]{1, 2, 3})
+                .commit();
+        store.edit().putInt("battles", 4).remove("training").commit();
+        store.closeLog();
+
+        GameStateStore loaded = GameStateStore.open(dir);
+        assertEquals(4, loaded.getInt("battles", 0));
+        assertEquals(1234L, loaded.getLong("rating_7", 0));
+        assertFalse(loaded.contains("training"));
+        assertEquals("Sparky \u2603", loaded.getString("name", null));
+        assertArrayEquals(new byte[]{1, 2, 3}, loaded.getBytes("record"));
+    }
+
+    @Test
+    public void tornCommitIsDroppedOnReload() throws IOException {
+        GameStateStore store = GameStateStore.open(dir);
+        store.edit().putInt("battles", 1).commit();
+        long committed = logFile.length();
+        store.edit().putInt("battles", 2).putInt("wins", 1).commit();
+        store.closeLog();
+
+        // Cut the second commit short as a crash during the write would
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(logFile.length() - 3);
+        }
+
+        GameStateStore loaded = GameStateStore.open(dir);
+        assertEquals(1, loaded.getInt("battles", 0));
+        assertFalse(loaded.contains("wins"));
+
+        // The torn tail is gone, later commits replay
+        assertEquals(committed, logFile.length());
+        loaded.edit().putInt("wins", 5).commit();
+        loaded.closeLog();
+        assertEquals(5, GameStateStore.open(dir).getInt("wins", 0));
+    }
+
+    @Test
+    public void largeStateIsNotRewrittenOnEveryCommit() throws IOException {
+        GameStateStore store = GameStateStore.open(dir);
+        // Live state well past the minimum compaction size
+        GameStateStore.Transaction transaction = store.edit();
+        for (int i = 0; i < 20_000; i++) {
+            transaction.putLong("rating_" + i, 1000 + i);
+        }
+        transaction.commit();
+        long compacted = logFile.length();
+
+        store.edit().putLong("rating_0", 1500).commit();
+        assertTrue("small commit rewrote the log", logFile.length() > compacted);
+
+        // Rewritten once the log doubles
+        long before = logFile.length();
+        for (int batch = 0; logFile.length() >= before; batch++) {
+            before = logFile.length();
+            GameStateStore.Transaction ratings = store.edit();
+            for (int i = 0; i < 1000; i++) {
+                ratings.putLong("rating_" + i, 2000 + batch);
+            }
+            ratings.commit();
+        }
+        assertTrue(before > 2 * compacted - compacted / 10);
+        assertTrue(logFile.length() <= compacted + 1024);
+        store.closeLog();
+
+        GameStateStore loaded = GameStateStore.open(dir);
+        assertEquals(1000L + 1500, loaded.getLong("rating_1500", 0));
+        assertEquals(1000L + 19_999, loaded.getLong("rating_19999", 0));
+    }
+}
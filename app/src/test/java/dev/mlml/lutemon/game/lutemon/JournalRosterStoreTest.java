@@ -0,0 +1,118 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class JournalRosterStoreTest {
+    private File dir;
+
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.installSpecies();
+    }
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Benchmarks.createTempDir();
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void loadReplaysJournalOverSnapshot() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(3);
+        JournalRosterStore store = new JournalRosterStore(dir);
+        store.rewrite(roster);
+
+        Lutemon updated = roster.get(0);
+        updated.setExperience(321);
+        store.save(Arrays.asList(
+                new RosterStore.Change(RosterStore.OP_UPDATE, updated.getId(), updated),
+                new RosterStore.Change(RosterStore.OP_REMOVE, "2", null)));
+
+        Map<String, Lutemon> loaded = new JournalRosterStore(dir).load();
+        assertEquals(Arrays.asList("1", "3"), new ArrayList<>(loaded.keySet()));
+        assertEquals(321, loaded.get("1").getExperience());
+    }
+
+    @Test
+    public void loadFinishesInterruptedCompaction() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(3);
+        JournalRosterStore store = new JournalRosterStore(dir);
+        store.rewrite(roster);
+        Lutemon added = new Lutemon("4", "blue_1", "Added", "Blue", 11, 12, 13, 14, 0);
+        store.save(Collections.singletonList(new RosterStore.Change(RosterStore.OP_PUT, added.getId(), added)));
+
+        // The app died after rotating the journal, before the new snapshot replaced the old one
+        File journal = new File(dir, "lutemons.journal");
+        File compacting = new File(dir, "lutemons.journal.old");
+        assertTrue(journal.renameTo(compacting));
+        store = new JournalRosterStore(dir);
+        store.save(Collections.singletonList(new RosterStore.Change(RosterStore.OP_REMOVE, "1", null)));
+
+        JournalRosterStore restarted = new JournalRosterStore(dir);
+        assertNull(restarted.map());
+        Map<String, Lutemon> loaded = restarted.load();
+        assertEquals(Arrays.asList("2", "3", "4"), new ArrayList<>(loaded.keySet()));
+
+        // Both journals were folded into the snapshot
+        assertFalse(compacting.exists());
+        assertFalse(journal.exists());
+        assertEquals(loaded.keySet(), new JournalRosterStore(dir).load().keySet());
+        assertNotNull(new JournalRosterStore(dir).map());
+    }
+
+    @Test
+    public void mapReplaysJournalOntoSnapshot() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(5);
+        JournalRosterStore store = new JournalRosterStore(dir);
+        store.rewrite(roster);
+
+        Lutemon updated = roster.get(1);
+        updated.setExperience(777);
+        Lutemon added = new Lutemon("6", "red_1", "Added", "Red", 11, 12, 13, 14, 0);
+        store.save(Arrays.asList(
+                new RosterStore.Change(RosterStore.OP_UPDATE, updated.getId(), updated),
+                new RosterStore.Change(RosterStore.OP_REMOVE, "3", null),
+                new RosterStore.Change(RosterStore.OP_PUT, added.getId(), added)));
+
+        MappedRoster mapped = new JournalRosterStore(dir).map();
+        assertNotNull(mapped);
+        assertEquals(4, mapped.liveSize());
+        assertEquals(777, mapped.find("2").getExperience());
+        assertNull(mapped.find("3"));
+        assertEquals(-1, mapped.indexOf(3));
+
+        List<Lutemon> addedSince = mapped.takeAdded();
+        assertEquals(1, addedSince.size());
+        assertEquals("Added", addedSince.get(0).getName());
+
+        // Updated rows are read from the replayed Lutemon, not the file
+        RosterColumns.Builder builder = new RosterColumns.Builder(mapped.liveSize());
+        mapped.readColumns(builder);
+        RosterColumns columns = builder.build();
+        assertEquals(4, columns.size());
+        assertEquals("2", columns.getId(1));
+        assertEquals(777, columns.get(RosterColumns.Column.EXPERIENCE, 1));
+        assertEquals("4", columns.getId(2));
+    }
+}
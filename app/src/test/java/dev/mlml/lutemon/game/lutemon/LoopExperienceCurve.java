@@ -0,0 +1,55 @@
+package dev.mlml.lutemon.game.lutemon;
+
+/**
+ * The level curve as Lutemon and BattleManager walked it before ExperienceCurve, one
+ * Math.pow per level. Kept as the reference and baseline for ExperienceCurve.
+ */
+final class LoopExperienceCurve {
+    private static final int BASE_EXPERIENCE_THRESHOLD = Lutemon.BASE_EXPERIENCE_THRESHOLD;
+    private static final double EXPERIENCE_GROWTH_FACTOR = Lutemon.EXPERIENCE_GROWTH_FACTOR;
+
+    private LoopExperienceCurve() {
+    }
+
+    static int levelFor(int experience) {
+        int level = 1;
+        double threshold = BASE_EXPERIENCE_THRESHOLD;
+        int totalExp = 0;
+
+        while (totalExp + threshold <= experience) {
+            totalExp += threshold;
+            level++;
+            threshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1);
+        }
+
+        return level;
+    }
+
+    static double levelProgress(int experience) {
+        int level = levelFor(experience);
+        double currentLevelThreshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, level - 1);
+        double prevLevelTotalExp = 0;
+
+        for (int i = 1; i < level; i++) {
+            prevLevelTotalExp += BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, i - 1);
+        }
+
+        double currentLevelExp = experience - prevLevelTotalExp;
+
+        return currentLevelExp / currentLevelThreshold;
+    }
+
+    static int totalExperienceForLevel(int level) {
+        if (level <= 1) return 0;
+
+        int totalXp = 0;
+        double threshold = BASE_EXPERIENCE_THRESHOLD;
+
+        for (int i = 1; i < level; i++) {
+            totalXp += threshold;
+            threshold = BASE_EXPERIENCE_THRESHOLD * Math.pow(EXPERIENCE_GROWTH_FACTOR, i);
+        }
+
+        return totalXp;
+    }
+}
@@ -0,0 +1,71 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class LutemonStorageTest {
+    private final LutemonStorage storage = LutemonStorage.getInstance();
+    private List<Lutemon> roster;
+
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.installSpecies();
+    }
+
+    @Before
+    public void fillRoster() {
+        LutemonStorage.clearRoster();
+        roster = Benchmarks.roster(3);
+        for (Lutemon lutemon : roster) {
+            storage.addLutemon(lutemon);
+        }
+    }
+
+    @After
+    public void clearRoster() {
+        LutemonStorage.clearRoster();
+    }
+
+    @Test
+    public void saveRecordAlreadyInRosterChangesNothing() {
+        Lutemon updated = roster.get(0);
+        updated.setExperience(250);
+        byte[] record = RosterJournal.Batch.of(Arrays.asList(
+                new RosterStore.Change(RosterStore.OP_UPDATE, updated.getId(), updated),
+                new RosterStore.Change(RosterStore.OP_PUT, roster.get(1).getId(), roster.get(1)),
+                new RosterStore.Change(RosterStore.OP_REMOVE, "9", null))).toByteArray();
+
+        assertEquals(0, storage.replaySaveRecord(record));
+        assertEquals(3, storage.getLutemons().size());
+        assertEquals(250, storage.getLutemonById("1").getExperience());
+    }
+
+    @Test
+    public void saveRecordMissingFromRosterIsApplied() {
+        // Saved as in the record, then the roster store lost the changes
+        Lutemon updated = Benchmarks.roster(1).get(0);
+        updated.setExperience(250);
+        Lutemon added = new Lutemon("4", "red_1", "Added", "Red", 11, 12, 13, 14, 0);
+        byte[] record = RosterJournal.Batch.of(Arrays.asList(
+                new RosterStore.Change(RosterStore.OP_UPDATE, updated.getId(), updated),
+                new RosterStore.Change(RosterStore.OP_PUT, added.getId(), added),
+                new RosterStore.Change(RosterStore.OP_REMOVE, "2", null))).toByteArray();
+
+        assertEquals(3, storage.replaySaveRecord(record));
+        assertEquals(250, storage.getLutemonById("1").getExperience());
+        assertNotNull(storage.getLutemonById("4"));
+        assertNull(storage.getLutemonById("2"));
+
+        // Replaying it again finds everything in place
+        assertEquals(0, storage.replaySaveRecord(record));
+    }
+}
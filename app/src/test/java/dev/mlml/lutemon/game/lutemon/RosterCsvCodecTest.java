@@ -0,0 +1,134 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RosterCsvCodecTest {
+    private static final String[] NAMES = {
+            "Plain",
+            "Smith, Jr.",
+            "Bob \"The Blaze\"",
+            "\"\"",
+            "\"",
+            "Line\nbreak",
+            "Carriage\r\nreturn",
+            "Trailing\r",
+            "  padded  ",
+            " ",
+            // Non-BMP characters are surrogate pairs in Java strings
+            "Dragon \uD83D\uDC09",
+            "\uD835\uDD73ot, \"\uD83D\uDD25\"\n",
+            "Flamey",
+            "Flamey 7",
+    };
+
+    @BeforeClass
+    public static void installSpecies() {
+        SpeciesRegistry.install(Collections.singletonList(
+                new Species("fire_1", "Flamey", "Red", 10, 8, 50, 6)), TypeChart.getDefault());
+    }
+
+    @Test
+    public void roundTripsArbitraryNames() throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        List<Lutemon> written = new ArrayList<>();
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            Lutemon lutemon = new Lutemon(String.valueOf(i + 1), "fire_1", NAMES[i], "Red", 10 + i, 8, 50, 6, 1000 * i);
+            written.add(lutemon);
+            codec.write(lutemon, csv);
+        }
+
+        BufferedReader reader = new BufferedReader(new StringReader(csv.toString()));
+        for (Lutemon expected : written) {
+            CharSequence record = codec.readRecord(reader);
+            assertNotNull("Missing record for " + expected.getName(), record);
+            Lutemon actual = codec.decode(record);
+            assertNotNull("Malformed record: " + record, actual);
+            assertSameLutemon(expected, actual);
+        }
+        assertNull(codec.readRecord(reader));
+    }
+
+    @Test
+    public void roundTripsCrLfLineEndings() throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        Lutemon first = new Lutemon("1", "fire_1", "A, \"b\"", "Red", 10, 8, 50, 6, 0);
+        Lutemon second = new Lutemon("2", "fire_1", "C\r\nd", "Red", 11, 9, 51, 7, 5);
+        // encode reuses its buffer, copy each row out before the next
+        String csv = codec.encode(first).toString() + "\r\n";
+        csv += codec.encode(second).toString() + "\r\n";
+
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        assertSameLutemon(first, codec.decode(codec.readRecord(reader)));
+        assertSameLutemon(second, codec.decode(codec.readRecord(reader)));
+        assertNull(codec.readRecord(reader));
+    }
+
+    @Test
+    public void readsLegacyRow() throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        BufferedReader reader = new BufferedReader(new StringReader("fire_1,Flamey 3,Red,12,9,55,7,250\n"));
+
+        Lutemon lutemon = codec.decode(codec.readRecord(reader));
+        assertNotNull(lutemon);
+        assertEquals("fire_1", lutemon.getSchemaId());
+        assertEquals("Flamey 3", lutemon.getName());
+        assertEquals("Red", lutemon.getColor());
+        assertEquals(12, lutemon.getAttack());
+        assertEquals(9, lutemon.getDefense());
+        assertEquals(55, lutemon.getMaxHealth());
+        assertEquals(7, lutemon.getSpeed());
+        assertEquals(250, lutemon.getExperience());
+        assertNull(codec.readRecord(reader));
+    }
+
+    @Test
+    public void keepsQuotesInsideUnquotedLegacyFields() throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        BufferedReader reader = new BufferedReader(new StringReader(
+                "fire_1,Bob\"s,Red,12,9,55,7,250\nfire_1,Flamey,Red,10,8,50,6,0\n"));
+
+        Lutemon first = codec.decode(codec.readRecord(reader));
+        assertNotNull(first);
+        assertEquals("Bob\"s", first.getName());
+        // The stray quote must not swallow the next row
+        Lutemon second = codec.decode(codec.readRecord(reader));
+        assertNotNull(second);
+        assertEquals("Flamey", second.getName());
+        assertNull(codec.readRecord(reader));
+    }
+
+    @Test
+    public void rejectsMalformedRecords() {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        assertNull(codec.decode("1,fire_1,Flamey,Red,10,8,50,6"));
+        assertNull(codec.decode("1,fire_1,Flamey,Red,10,8,50,6,x"));
+        assertNull(codec.decode("1,fire_1,\"Flamey,Red,10,8,50,6,0"));
+        assertNull(codec.decode("1,fire_1,\"Flamey\"x,Red,10,8,50,6,0"));
+        assertNull(codec.decode("1,fire_1,Flamey,Red,10,8,50,6,99999999999"));
+    }
+
+    private static void assertSameLutemon(Lutemon expected, Lutemon actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getSchemaId(), actual.getSchemaId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getAttack(), actual.getAttack());
+        assertEquals(expected.getDefense(), actual.getDefense());
+        assertEquals(expected.getMaxHealth(), actual.getMaxHealth());
+        assertEquals(expected.getSpeed(), actual.getSpeed());
+        assertEquals(expected.getExperience(), actual.getExperience());
+    }
+}
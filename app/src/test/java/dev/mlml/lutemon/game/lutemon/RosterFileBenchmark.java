@@ -0,0 +1,111 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves and loads a 100k Lutemon roster with RosterFile and with the CSV format it
+ * replaced, which is still read through RosterCsvCodec to import old saves.
+ */
+public class RosterFileBenchmark {
+    private static final int ROSTER_SIZE = 100_000;
+    private static final int WARMUPS = 3;
+    private static final int RUNS = 10;
+
+    private static List<Lutemon> roster;
+    private File dir;
+
+    @BeforeClass
+    public static void createRoster() {
+        Benchmarks.assumeEnabled();
+        Benchmarks.installSpecies();
+        roster = Benchmarks.roster(ROSTER_SIZE);
+    }
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Benchmarks.createTempDir();
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void save() throws Exception {
+        File binary = new File(dir, "lutemons.bin");
+        File csv = new File(dir, "lutemons.csv");
+
+        double binaryMs = Benchmarks.measure("RosterFile.write " + ROSTER_SIZE, WARMUPS, RUNS,
+                () -> RosterFile.write(binary, roster));
+        double csvMs = Benchmarks.measure("CSV write " + ROSTER_SIZE, WARMUPS, RUNS,
+                () -> writeCsv(csv, roster));
+        System.out.printf("Binary save is %.1fx the speed of CSV%n", csvMs / binaryMs);
+
+        assertEquals(ROSTER_SIZE, RosterFile.read(binary).size());
+        assertEquals(ROSTER_SIZE, readCsv(csv).size());
+    }
+
+    @Test
+    public void load() throws Exception {
+        File binary = new File(dir, "lutemons.bin");
+        File csv = new File(dir, "lutemons.csv");
+        RosterFile.write(binary, roster);
+        writeCsv(csv, roster);
+
+        int[] loaded = new int[3];
+        double binaryMs = Benchmarks.measure("RosterFile.read " + ROSTER_SIZE, WARMUPS, RUNS,
+                () -> loaded[0] = RosterFile.read(binary).size());
+        double mappedMs = Benchmarks.measure("RosterFile.map and index " + ROSTER_SIZE, WARMUPS, RUNS,
+                () -> {
+                    ByteBuffer buffer = RosterFile.map(binary);
+                    loaded[1] = MappedRoster.create(buffer, RosterFile.MAPPED_FORMAT,
+                            RosterFile.indexRecords(buffer)).size();
+                });
+        double csvMs = Benchmarks.measure("CSV read " + ROSTER_SIZE, WARMUPS, RUNS,
+                () -> loaded[2] = readCsv(csv).size());
+        System.out.printf("Binary load is %.1fx, mapped load %.1fx the speed of CSV%n",
+                csvMs / binaryMs, csvMs / mappedMs);
+
+        assertEquals(ROSTER_SIZE, loaded[0]);
+        assertEquals(ROSTER_SIZE, loaded[1]);
+        assertEquals(ROSTER_SIZE, loaded[2]);
+    }
+
+    private static void writeCsv(File file, List<Lutemon> lutemons) throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            for (Lutemon lutemon : lutemons) {
+                codec.write(lutemon, writer);
+            }
+        }
+    }
+
+    private static List<Lutemon> readCsv(File file) throws IOException {
+        RosterCsvCodec codec = new RosterCsvCodec();
+        List<Lutemon> lutemons = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            CharSequence record;
+            while ((record = codec.readRecord(reader)) != null) {
+                lutemons.add(codec.decode(record));
+            }
+        }
+        return lutemons;
+    }
+}
@@ -0,0 +1,128 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RosterJournalTest {
+    private File dir;
+    private File file;
+    private RosterJournal journal;
+
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.installSpecies();
+    }
+
+    @Before
+    public void createJournal() throws IOException {
+        dir = Benchmarks.createTempDir();
+        file = new File(dir, "lutemons.journal");
+        journal = new RosterJournal(file);
+    }
+
+    @After
+    public void deleteDir() {
+        journal.close();
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void replaysBatchesInOrder() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(3);
+        for (Lutemon lutemon : roster) {
+            journal.append(batch(RosterStore.OP_PUT, lutemon));
+        }
+        roster.get(0).setExperience(42);
+        journal.append(batch(RosterStore.OP_UPDATE, roster.get(0)));
+        journal.append(batch(RosterStore.OP_REMOVE, roster.get(1)));
+
+        Map<String, Lutemon> replayed = new LinkedHashMap<>();
+        assertEquals(5, RosterJournal.replay(file, replayed));
+        assertEquals(2, replayed.size());
+        assertEquals(42, replayed.get("1").getExperience());
+        assertFalse(replayed.containsKey("2"));
+        assertTrue(replayed.containsKey("3"));
+    }
+
+    @Test
+    public void cutsOffTornFrame() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(2);
+        journal.append(batch(RosterStore.OP_PUT, roster.get(0)));
+        long intact = file.length();
+        journal.append(batch(RosterStore.OP_PUT, roster.get(1)));
+        journal.close();
+
+        // A crash in the middle of the second frame
+        setLength(file.length() - 5);
+
+        Map<String, Lutemon> replayed = new LinkedHashMap<>();
+        assertEquals(1, RosterJournal.replay(file, replayed));
+        assertEquals(Collections.singleton("1"), replayed.keySet());
+        assertEquals(intact, file.length());
+
+        // Appends after the cut are aligned and replay again
+        journal.append(batch(RosterStore.OP_PUT, roster.get(1)));
+        replayed.clear();
+        assertEquals(2, RosterJournal.replay(file, replayed));
+        assertTrue(replayed.containsKey("2"));
+    }
+
+    @Test
+    public void cutsOffTornFrameHeader() throws IOException {
+        journal.append(batch(RosterStore.OP_PUT, Benchmarks.roster(1).get(0)));
+        long intact = file.length();
+        journal.close();
+        setLength(intact + 3);
+
+        assertEquals(1, RosterJournal.replay(file, new LinkedHashMap<>()));
+        assertEquals(intact, file.length());
+    }
+
+    @Test
+    public void cutsOffFrameWithBadChecksumAndEverythingAfter() throws IOException {
+        List<Lutemon> roster = Benchmarks.roster(3);
+        journal.append(batch(RosterStore.OP_PUT, roster.get(0)));
+        long intact = file.length();
+        journal.append(batch(RosterStore.OP_PUT, roster.get(1)));
+        journal.append(batch(RosterStore.OP_PUT, roster.get(2)));
+        journal.close();
+
+        // Flip a payload byte of the second frame
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long position = intact + RosterJournal.FRAME_HEADER_SIZE + 2;
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+
+        Map<String, Lutemon> replayed = new LinkedHashMap<>();
+        assertEquals(1, RosterJournal.replay(file, replayed));
+        assertEquals(Collections.singleton("1"), replayed.keySet());
+        assertEquals(intact, file.length());
+    }
+
+    private static RosterJournal.Batch batch(byte op, Lutemon lutemon) {
+        return RosterJournal.Batch.of(Collections.singletonList(new RosterStore.Change(op, lutemon.getId(), lutemon)));
+    }
+
+    private void setLength(long length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a few changed Lutemons of a 100k roster in place with SlottedRosterStore and
+ * compares it with rewriting the whole roster, as every save did before.
+ */
+public class SlottedRosterStoreBenchmark {
+    private static final int ROSTER_SIZE = 100_000;
+    // Per save: updates plus one add and one remove
+    private static final int UPDATES_PER_SAVE = 8;
+    private static final int WARMUPS = 3;
+    private static final int RUNS = 20;
+
+    private static List<Lutemon> roster;
+    private File dir;
+
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.assumeEnabled();
+        Benchmarks.installSpecies();
+    }
+
+    @Before
+    public void createRoster() throws IOException {
+        dir = Benchmarks.createTempDir();
+        roster = Benchmarks.roster(ROSTER_SIZE);
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void saveChangesInPlaceVersusRewrite() throws Exception {
+        SlottedRosterStore store = new SlottedRosterStore(dir);
+        store.rewrite(roster);
+        File rosterFile = new File(dir, "lutemons.bin");
+
+        int[] saves = new int[1];
+        double inPlaceMs = Benchmarks.measure("SlottedRosterStore.save of " + (UPDATES_PER_SAVE + 2)
+                + " changes in " + ROSTER_SIZE, WARMUPS, RUNS, () -> store.save(nextChanges(saves[0]++)));
+        double slottedRewriteMs = Benchmarks.measure("SlottedRosterStore.rewrite " + ROSTER_SIZE,
+                WARMUPS, RUNS, () -> store.rewrite(roster));
+        double fileRewriteMs = Benchmarks.measure("RosterFile.write " + ROSTER_SIZE,
+                WARMUPS, RUNS, () -> RosterFile.write(rosterFile, roster));
+        System.out.printf("In-place save is %.0fx the speed of a slotted rewrite, %.0fx of RosterFile%n",
+                slottedRewriteMs / inPlaceMs, fileRewriteMs / inPlaceMs);
+
+        // The in-place saves must leave the same roster as the rewrites
+        store.save(nextChanges(saves[0]++));
+        Map<String, Lutemon> loaded = new SlottedRosterStore(dir).load();
+        assertEquals(roster.size(), loaded.size());
+        for (int i = 0; i < UPDATES_PER_SAVE; i++) {
+            Lutemon expected = roster.get(i * 997 % roster.size());
+            assertEquals(expected.getExperience(), loaded.get(expected.getId()).getExperience());
+        }
+    }
+
+    /**
+     * Change some Lutemons of the roster: several updates, one add and one remove
+     * @param save Number of the save, spreads the changes over the roster
+     * @return The changes to save
+     */
+    private static List<RosterStore.Change> nextChanges(int save) {
+        List<RosterStore.Change> changes = new ArrayList<>(UPDATES_PER_SAVE + 2);
+        for (int i = 0; i < UPDATES_PER_SAVE; i++) {
+            Lutemon lutemon = roster.get(i * 997 % roster.size());
+            lutemon.addExperience(1);
+            changes.add(new RosterStore.Change(RosterStore.OP_UPDATE, lutemon.getId(), lutemon));
+        }
+
+        Lutemon removed = roster.remove(roster.size() - 1 - save);
+        changes.add(new RosterStore.Change(RosterStore.OP_REMOVE, removed.getId(), null));
+        Lutemon added = new Lutemon(String.valueOf(ROSTER_SIZE + 1 + save), removed.getSchemaId(),
+                removed.getName(), removed.getColor(), removed.getAttack(), removed.getDefense(),
+                removed.getMaxHealth(), removed.getSpeed(), 0);
+        roster.add(added);
+        changes.add(new RosterStore.Change(RosterStore.OP_PUT, added.getId(), added));
+        return changes;
+    }
+}
@@ -0,0 +1,84 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class SlottedRosterStoreTest {
+    private static final String LONG_SCHEMA_ID = "red_with_a_very_long_species_id_1";
+
+    private File dir;
+
+    @BeforeClass
+    public static void installSpecies() {
+        Benchmarks.installSpecies();
+    }
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Benchmarks.createTempDir();
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void rejectsSchemaIdLongerThanSlotInSave() throws IOException {
+        SlottedRosterStore store = new SlottedRosterStore(dir);
+        store.rewrite(Benchmarks.roster(3));
+
+        Lutemon updated = Benchmarks.roster(3).get(0);
+        updated.setExperience(500);
+        Lutemon tooLong = new Lutemon("4", LONG_SCHEMA_ID, "Long", "Red", 10, 8, 50, 6, 0);
+        try {
+            store.save(Arrays.asList(
+                    new RosterStore.Change(RosterStore.OP_UPDATE, updated.getId(), updated),
+                    new RosterStore.Change(RosterStore.OP_PUT, tooLong.getId(), tooLong)));
+            fail("Saved a schema ID that does not fit its slot");
+        } catch (IOException expected) {
+        }
+
+        // Nothing of the rejected save was written
+        Map<String, Lutemon> loaded = new SlottedRosterStore(dir).load();
+        assertEquals(3, loaded.size());
+        assertEquals(0, loaded.get("1").getExperience());
+    }
+
+    @Test
+    public void rejectsSchemaIdLongerThanSlotInRewrite() throws IOException {
+        SlottedRosterStore store = new SlottedRosterStore(dir);
+        store.rewrite(Benchmarks.roster(3));
+
+        List<Lutemon> roster = new ArrayList<>(Benchmarks.roster(3));
+        roster.add(new Lutemon("4", LONG_SCHEMA_ID, "Long", "Red", 10, 8, 50, 6, 0));
+        try {
+            store.rewrite(roster);
+            fail("Rewrote a schema ID that does not fit its slot");
+        } catch (IOException expected) {
+        }
+        assertEquals(3, new SlottedRosterStore(dir).load().size());
+    }
+
+    @Test
+    public void keepsSchemaIdThatFillsSlot() throws IOException {
+        String schemaId = "red_with_long_id_1234_1";
+        assertEquals(23, schemaId.length());
+        SlottedRosterStore store = new SlottedRosterStore(dir);
+        store.rewrite(Collections.singletonList(new Lutemon("1", schemaId, "Full", "Red", 10, 8, 50, 6, 0)));
+        assertEquals(schemaId, new SlottedRosterStore(dir).load().get("1").getSchemaId());
+    }
+}
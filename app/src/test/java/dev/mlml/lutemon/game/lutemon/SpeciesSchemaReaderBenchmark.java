@@ -0,0 +1,110 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams a generated 10k species schema through SpeciesSchemaReader and reports the
+ * parse time and the heap used while parsing.
+ */
+public class SpeciesSchemaReaderBenchmark {
+    private static final int SPECIES_COUNT = 10_000;
+    private static final String[] COLORS = {"Red", "Blue", "Green", "Yellow"};
+    private static final int WARMUPS = 5;
+    private static final int RUNS = 20;
+
+    private File dir;
+    private File schema;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void writeSchema() throws IOException {
+        dir = Benchmarks.createTempDir();
+        schema = new File(dir, SpeciesRegistry.SCHEMA_FILENAME);
+        try (Writer writer = new BufferedWriter(new FileWriter(schema))) {
+            writer.write("[\n");
+            for (int i = 0; i < SPECIES_COUNT; i++) {
+                String color = COLORS[i % COLORS.length];
+                writer.write(String.format(Locale.ROOT,
+                        "  {\"id\": \"%s_%d\", \"name\": \"Species %d\", \"color\": \"%s\", \"attack\": %d,"
+                                + " \"defense\": %d, \"health\": %d, \"speed\": %d, \"art\": \"art_%d\"}%s\n",
+                        color.toLowerCase(Locale.ROOT), i, i, color, 5 + i % 20, 3 + i % 15, 20 + i % 60,
+                        2 + i % 12, i, i + 1 < SPECIES_COUNT ? "," : ""));
+            }
+            writer.write("]\n");
+        }
+    }
+
+    @After
+    public void deleteDir() {
+        Benchmarks.deleteRecursively(dir);
+    }
+
+    @Test
+    public void parse() throws Exception {
+        int[] parsed = new int[1];
+        Benchmarks.measure("SpeciesSchemaReader " + SPECIES_COUNT + " species, " + schema.length() / 1024 + " KiB",
+                WARMUPS, RUNS, () -> parsed[0] = readAll().size());
+        assertEquals(SPECIES_COUNT, parsed[0]);
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        long before = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            before += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+        List<Species> species = readAll();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        System.gc();
+        long retained = -before;
+        for (MemoryPoolMXBean pool : heapPools) {
+            retained += pool.getUsage().getUsed();
+        }
+        // Pool peaks may not coincide, so the peak is an upper bound
+        System.out.printf(Locale.ROOT, "Peak heap growth while parsing: at most %.1f MiB, retained species: %.1f MiB%n",
+                (peak - before) / 1048576.0, retained / 1048576.0);
+        assertEquals(SPECIES_COUNT, species.size());
+    }
+
+    private List<Species> readAll() throws IOException {
+        List<Species> species = new ArrayList<>(SPECIES_COUNT);
+        try (SpeciesSchemaReader reader = new SpeciesSchemaReader(new FileInputStream(schema))) {
+            Species next;
+            while ((next = reader.next()) != null) {
+                species.add(next);
+            }
+            assertEquals(0, reader.getErrorCount());
+        }
+        return species;
+    }
+}
@@ -0,0 +1,114 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SpeciesSchemaReaderTest {
+    private static final String VALID_1 =
+            "{\"id\": \"fire_1\", \"name\": \"Flamey\", \"color\": \"Red\", \"attack\": 10, \"defense\": 8, \"health\": 50, \"speed\": 6}";
+    private static final String BAD_NUMBER =
+            "{\"id\": \"fire_2\", \"name\": \"Ember\", \"color\": \"Red\", \"attack\": \"x\", \"defense\": 8, \"health\": 50, \"speed\": 6}";
+    private static final String NOT_AN_OBJECT = "[1, 2]";
+    private static final String MISSING_FIELDS = "{\"id\": \"water_1\", \"name\": \"Drip\", \"color\": \"Blue\"}";
+    private static final String VALID_2 =
+            "{\"id\": \"water_2\", \"name\": \"Splash\", \"color\": \"Blue\", \"attack\": \"7\", \"defense\": 9,\n"
+                    + " \"health\": 60, \"speed\": 5, \"lore\": {\"text\": \"a } in a string\", \"tags\": [1, {}]}, \"art\": \"splash\"}";
+    private static final String MISSING_COLON =
+            "{\"id\": \"grass_1\", \"name\" \"Leafy\", \"nested\": {\"a\": [\"]\"]}}";
+    private static final String EMPTY = "{}";
+    private static final String VALID_3 =
+            "{\"id\": \"grass_2\", \"name\": \"Vine \\u00e9\", \"color\": \"Green\", \"attack\": 12, \"defense\": 4, \"health\": 40, \"speed\": 9}";
+
+    @Test
+    public void reportsMalformedEntriesWithOffsetsAndLoadsValidOnes() throws IOException {
+        String[] entries = {VALID_1, BAD_NUMBER, NOT_AN_OBJECT, MISSING_FIELDS, VALID_2, MISSING_COLON, EMPTY, VALID_3};
+        boolean[] valid = {true, false, false, false, true, false, false, true};
+        StringBuilder text = new StringBuilder("[\n  ");
+        List<Integer> malformedOffsets = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (i > 0) {
+                text.append(",\n  ");
+            }
+            if (!valid[i]) {
+                malformedOffsets.add(text.length());
+            }
+            text.append(entries[i]);
+        }
+        String schema = text.append("\n]\n").toString();
+
+        SpeciesSchemaReader reader = read(schema);
+        List<Species> species = readAll(reader);
+
+        assertEquals(3, species.size());
+        assertEquals("fire_1", species.get(0).getId());
+        assertEquals("water_2", species.get(1).getId());
+        assertEquals(7, species.get(1).getAttack());
+        assertEquals("splash", species.get(1).getArtKey());
+        assertEquals("grass_2", species.get(2).getId());
+        assertEquals("Vine \u00e9", species.get(2).getName());
+
+        List<SpeciesSchemaReader.SchemaError> errors = reader.getErrors();
+        assertEquals(malformedOffsets.size(), reader.getErrorCount());
+        for (int i = 0; i < malformedOffsets.size(); i++) {
+            int offset = malformedOffsets.get(i);
+            assertEquals(errors.get(i).toString(), offset, errors.get(i).offset);
+            assertEquals(lineAt(schema, offset), errors.get(i).line);
+        }
+        assertTrue(errors.get(0).message, errors.get(0).message.contains("\"attack\" is not a number"));
+        assertTrue(errors.get(2).message, errors.get(2).message.contains("attack, defense, health, speed"));
+    }
+
+    @Test
+    public void reportsTruncatedSchemaAfterValidEntries() throws IOException {
+        String schema = "[" + VALID_1 + ", {\"id\": \"fire_2\", \"name\": \"Emb";
+
+        SpeciesSchemaReader reader = read(schema);
+        List<Species> species = readAll(reader);
+
+        assertEquals(1, species.size());
+        assertEquals(1, reader.getErrorCount());
+        assertEquals(schema.indexOf("{\"id\": \"fire_2\""), reader.getErrors().get(0).offset);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void rejectsSchemaThatIsNotAnArray() throws IOException {
+        SpeciesSchemaReader reader = read(VALID_1);
+
+        assertNull(reader.next());
+        assertEquals(1, reader.getErrorCount());
+        assertEquals(1, reader.getErrors().get(0).offset);
+    }
+
+    private static SpeciesSchemaReader read(String schema) {
+        return new SpeciesSchemaReader(new ByteArrayInputStream(schema.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<Species> readAll(SpeciesSchemaReader reader) throws IOException {
+        List<Species> species = new ArrayList<>();
+        Species next;
+        while ((next = reader.next()) != null) {
+            species.add(next);
+        }
+        return species;
+    }
+
+    private static int lineAt(String text, int offset) {
+        int line = 1;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+}
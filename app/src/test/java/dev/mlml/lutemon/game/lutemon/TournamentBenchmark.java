@@ -0,0 +1,64 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs a round robin and a species tournament on the common fork-join pool and reports
+ * their throughput in matchups and battles per second.
+ */
+public class TournamentBenchmark {
+    private static final int ENTRANTS = 200;
+    private static final int SPECIES = 50;
+    private static final int BATTLES_PER_MATCHUP = 20;
+    private static final int WARMUPS = 2;
+    private static final int RUNS = 5;
+
+    private static List<Lutemon> entrants;
+    private static List<Species> species;
+
+    @BeforeClass
+    public static void createEntrants() {
+        Benchmarks.assumeEnabled();
+        Benchmarks.installSpecies();
+        entrants = Benchmarks.roster(ENTRANTS);
+        species = new ArrayList<>(SPECIES);
+        for (int i = 0; i < SPECIES; i++) {
+            Lutemon template = entrants.get(i);
+            species.add(new Species("species_" + i, "Species " + i, template.getColor(),
+                    template.getAttack(), template.getDefense(), template.getMaxHealth(), template.getSpeed()));
+        }
+    }
+
+    @Test
+    public void roundRobin() throws Exception {
+        TournamentResult[] last = new TournamentResult[1];
+        Benchmarks.measure("Round robin of " + ENTRANTS + " x " + BATTLES_PER_MATCHUP + " battles", WARMUPS, RUNS,
+                () -> last[0] = Tournament.roundRobin(entrants, BATTLES_PER_MATCHUP, new RandomSource(24)));
+        report(last[0]);
+        assertEquals((long) ENTRANTS * (ENTRANTS - 1) / 2, last[0].getMatchups());
+    }
+
+    @Test
+    public void againstSpecies() throws Exception {
+        TournamentResult[] last = new TournamentResult[1];
+        Benchmarks.measure(ENTRANTS + " entrants against " + SPECIES + " species x " + BATTLES_PER_MATCHUP
+                + " battles", WARMUPS, RUNS,
+                () -> last[0] = Tournament.againstSpecies(entrants, species, BATTLES_PER_MATCHUP, new RandomSource(24)));
+        report(last[0]);
+        assertEquals((long) ENTRANTS * SPECIES, last[0].getMatchups());
+    }
+
+    private static void report(TournamentResult result) {
+        System.out.printf(Locale.ROOT, "%d matchups: %.0f matchups/s, %.0f battles/s, pool parallelism %d%n",
+                result.getMatchups(), result.getMatchupsPerSecond(), result.getBattlesPerSecond(),
+                ForkJoinPool.getCommonPoolParallelism());
+    }
+}
@@ -0,0 +1,122 @@
+package dev.mlml.lutemon.game.lutemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TournamentTest {
+    private static final int ENTRANTS = 12;
+    private static final int BATTLES = 40;
+
+    private static List<Lutemon> entrants;
+    private static List<Species> species;
+
+    @BeforeClass
+    public static void createEntrants() {
+        Benchmarks.installSpecies();
+        entrants = Benchmarks.roster(ENTRANTS);
+        species = new ArrayList<>();
+        species.add(new Species("red_9", "Blaze", "Red", 14, 6, 40, 9));
+        species.add(new Species("blue_9", "Wave", "Blue", 8, 12, 70, 4));
+        species.add(new Species("green_9", "Thorn", "Green", 11, 9, 55, 6));
+    }
+
+    @Test
+    public void roundRobinAccountsForEveryBattle() {
+        TournamentResult result = Tournament.roundRobin(entrants, BATTLES, new RandomSource(24));
+
+        assertEquals(ENTRANTS, result.getEntrantCount());
+        assertEquals(ENTRANTS, result.getOpponentCount());
+        assertEquals((long) ENTRANTS * (ENTRANTS - 1) / 2, result.getMatchups());
+        for (int row = 0; row < ENTRANTS; row++) {
+            assertTrue(Float.isNaN(result.getWinRate(row, row)));
+            for (int column = 0; column < ENTRANTS; column++) {
+                if (row == column) {
+                    continue;
+                }
+                int wins = count(result.getWinRate(row, column));
+                int draws = count(result.getDrawRate(row, column));
+                // The column's wins are the row's losses
+                int losses = count(result.getWinRate(column, row));
+                assertEquals(row + " vs " + column, BATTLES, wins + draws + losses);
+                assertEquals(draws, count(result.getDrawRate(column, row)));
+            }
+        }
+        assertStandingsComplete(result, ENTRANTS - 1);
+    }
+
+    @Test
+    public void againstSpeciesAccountsForEveryBattle() {
+        TournamentResult result = Tournament.againstSpecies(entrants, species, BATTLES, new RandomSource(24));
+
+        assertEquals(ENTRANTS, result.getEntrantCount());
+        assertEquals(species.size(), result.getOpponentCount());
+        assertEquals((long) ENTRANTS * species.size(), result.getMatchups());
+        for (int row = 0; row < ENTRANTS; row++) {
+            for (int column = 0; column < species.size(); column++) {
+                int wins = count(result.getWinRate(row, column));
+                int draws = count(result.getDrawRate(row, column));
+                assertTrue(row + " vs " + column, wins + draws <= BATTLES);
+            }
+        }
+        assertStandingsComplete(result, species.size());
+    }
+
+    @Test
+    public void sameSeedGivesSameResult() {
+        TournamentResult first = Tournament.roundRobin(entrants, BATTLES, new RandomSource(7));
+        TournamentResult second = Tournament.roundRobin(entrants, BATTLES, new RandomSource(7));
+        assertSameMatrix(first, second);
+
+        first = Tournament.againstSpecies(entrants, species, BATTLES, new RandomSource(7));
+        second = Tournament.againstSpecies(entrants, species, BATTLES, new RandomSource(7));
+        assertSameMatrix(first, second);
+    }
+
+    @Test
+    public void leavesEntrantsUntouched() {
+        int[] health = new int[ENTRANTS];
+        for (int i = 0; i < ENTRANTS; i++) {
+            health[i] = entrants.get(i).getCurrentHealth();
+        }
+        Tournament.roundRobin(entrants, BATTLES, new RandomSource(3));
+        for (int i = 0; i < ENTRANTS; i++) {
+            assertEquals(health[i], entrants.get(i).getCurrentHealth());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroBattles() {
+        Tournament.roundRobin(entrants, 0, new RandomSource(1));
+    }
+
+    private static void assertStandingsComplete(TournamentResult result, int opponentsPerEntrant) {
+        List<TournamentResult.Standing> standings = result.getStandings();
+        assertEquals(result.getEntrantCount(), standings.size());
+        double previousScore = Double.MAX_VALUE;
+        for (TournamentResult.Standing standing : standings) {
+            assertEquals(BATTLES * opponentsPerEntrant, standing.getWins() + standing.getDraws() + standing.getLosses());
+            assertTrue(standing.getScore() <= previousScore);
+            previousScore = standing.getScore();
+            assertEquals(entrants.get(standing.getRow()), standing.getLutemon());
+        }
+    }
+
+    private static void assertSameMatrix(TournamentResult first, TournamentResult second) {
+        for (int row = 0; row < first.getEntrantCount(); row++) {
+            for (int column = 0; column < first.getOpponentCount(); column++) {
+                assertEquals(count(first.getWinRate(row, column)), count(second.getWinRate(row, column)));
+                assertEquals(count(first.getDrawRate(row, column)), count(second.getDrawRate(row, column)));
+            }
+        }
+    }
+
+    private static int count(float rate) {
+        return Float.isNaN(rate) ? -1 : Math.round(rate * BATTLES);
+    }
+}